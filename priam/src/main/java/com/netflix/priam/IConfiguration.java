@@ -88,6 +88,13 @@ public interface IConfiguration
      */
     public List<String> getRestoreKeySpaces();
 
+    /**
+     * @return Keyspaces restored before Cassandra is started, the others are
+     *         loaded with a refresh while it runs. If none, Cassandra starts
+     *         once all keyspaces are restored.
+     */
+    public List<String> getRestorePriorityKeySpaces();
+
     /**
      * @return Location of the local data dir
      */
@@ -113,6 +120,80 @@ public interface IConfiguration
      */
     public long getBackupChunkSize();
 
+    /**
+     * @return Objects which compress to at most this many bytes are uploaded
+     *         with a single PUT instead of a multipart upload, 0 disables it
+     */
+    public long getBackupSinglePutThreshold();
+
+    /**
+     * @return Directory recording multipart uploads in progress so they can
+     *         be resumed, empty disables resuming
+     */
+    public String getBackupJournalLocation();
+
+    /**
+     * @return File listing the SSTables already uploaded, so snapshots can
+     *         point at them instead of uploading them again. Empty disables it
+     */
+    public String getBackupIndexLocation();
+
+    /**
+     * @return File recording the backup files restored so far, so an
+     *         incremental restore resumes after a restart. Empty keeps it in
+     *         memory only
+     */
+    public String getRestoreTrackerLocation();
+
+    /**
+     * @return File cataloging the objects uploaded by this node, so its
+     *         backups are listed without going to S3. Empty disables it
+     */
+    public String getBackupCatalogLocation();
+
+    /**
+     * @return Days of backups the catalog holds when no retention period is
+     *         set, older backups are listed from S3
+     */
+    public int getBackupCatalogHorizonDays();
+
+    /**
+     * @return Days an uploaded SSTable is reused by later snapshots, 0
+     *         (default) disables reuse. A snapshot pointing at an object
+     *         uploaded this many days earlier is restorable for that much
+     *         less than the retention period
+     */
+    public int getBackupDedupMaxAgeDays();
+
+    /**
+     * @return Files at least this many bytes are split into regions which are
+     *         compressed in parallel, 0 disables region split uploads
+     */
+    public long getBackupRegionSplitThreshold();
+
+    /**
+     * @return Codec (snappy, lz4, lzf or none) to compress backup files of
+     *         the given type with, empty for the bound ICompression
+     */
+    public String getBackupCompression(String fileType);
+
+    /**
+     * @return true if data of SSTables already compressed by Cassandra is
+     *         uploaded without compressing it again
+     */
+    public boolean isSkipCompressedSSTables();
+
+    /**
+     * @return Number of backup files uploaded at the same time
+     */
+    public int getBackupFileThreads();
+
+    /**
+     * @return Upper bound on the bytes of the files being uploaded at any one
+     *         time
+     */
+    public long getBackupInflightBytes();
+
     /**
      * @return true if commit log backup is enabled
      */
@@ -219,6 +300,23 @@ public interface IConfiguration
      */
     public int getMaxBackupDownloadThreads();
 
+    /**
+     * @return Number of date ranges of a backup listing fetched at the same
+     *         time
+     */
+    public int getBackupListThreads();
+
+    /**
+     * @return Number of byte ranges of one backup file downloaded at the
+     *         same time, 1 or less reads the file as a single stream
+     */
+    public int getRestoreRangeThreads();
+
+    /**
+     * @return Size in bytes of the ranges a backup file is downloaded in
+     */
+    public long getRestoreRangeSize();
+
     /**
      * @return true if restore should search for nearest token if current token
      *         is not found
@@ -250,6 +348,43 @@ public interface IConfiguration
      */
     public int getUploadThrottle();
 
+    /**
+     * @return Bytes per second backups are slowed down to at most while
+     *         Cassandra is busy, 0 keeps the upload throttle fixed. Only
+     *         applies with an upload throttle set
+     */
+    public int getUploadThrottleMin();
+
+    /**
+     * @return Recent read latency (microseconds) above which uploads slow down
+     */
+    public int getThrottleReadLatencyMicros();
+
+    /**
+     * @return Recent write latency (microseconds) above which uploads slow down
+     */
+    public int getThrottleWriteLatencyMicros();
+
+    /**
+     * @return Pending compactions above which uploads slow down
+     */
+    public int getThrottlePendingCompactions();
+
+    /**
+     * @return Pending ReadStage tasks above which uploads slow down
+     */
+    public int getThrottlePendingReads();
+
+    /**
+     * @return Bytes per second to throttle downloads of restores
+     */
+    public int getDownloadThrottle();
+
+    /**
+     * @return Bytes per second restores write to the local disk at most
+     */
+    public int getRestoreWriteThrottle();
+
     /**
      * @return true if Priam should local config file for tokens and seeds
      */
@@ -27,6 +27,7 @@ import com.netflix.priam.backup.CommitLogBackupTask;
 import com.netflix.priam.backup.IncrementalBackup;
 import com.netflix.priam.backup.Restore;
 import com.netflix.priam.backup.SnapshotBackup;
+import com.netflix.priam.backup.UploadThrottleController;
 import com.netflix.priam.identity.InstanceIdentity;
 import com.netflix.priam.scheduler.PriamScheduler;
 import com.netflix.priam.utils.CassandraMonitor;
@@ -118,6 +119,10 @@ public class PriamServer
         
         //Set cleanup
         scheduler.addTask(UpdateCleanupPolicy.JOBNAME, UpdateCleanupPolicy.class, UpdateCleanupPolicy.getTimer());
+
+        // Slow uploads down while Cassandra is busy
+        if (UploadThrottleController.isEnabled(config))
+            scheduler.addTask(UploadThrottleController.JOBNAME, UploadThrottleController.class, UploadThrottleController.getTimer());
     }
 
     public InstanceIdentity getId()
@@ -15,7 +15,9 @@
  */
 package com.netflix.priam.aws;
 
-import com.netflix.priam.utils.SystemUtils;
+import java.io.InputStream;
+
+import com.netflix.priam.compress.ChunkBuffer;
 
 /**
  * Class for holding part data of a backup file,
@@ -27,8 +29,7 @@ public class DataPart
     private final String uploadID;
     private final String s3key;
     private int partNo;
-    private byte[] partData;
-    private byte[] md5;
+    private ChunkBuffer partData;
     
     public DataPart(String bucket, String s3key, String mUploadId)
     {
@@ -37,12 +38,14 @@ public class DataPart
         this.s3key = s3key;
     }
     
-    public DataPart(int partNumber, byte[] data, String bucket, String s3key, String mUploadId)
+    /**
+     * The chunk must be sealed, its MD5 was computed while it was filled.
+     */
+    public DataPart(int partNumber, ChunkBuffer data, String bucket, String s3key, String mUploadId)
     {
         this(bucket, s3key, mUploadId);
         this.partNo = partNumber;
         this.partData = data;
-        this.md5 = SystemUtils.md5(data);
     }
 
     public String getBucketName()
@@ -65,13 +68,35 @@ public class DataPart
         return partNo;
     }
 
-    public byte[] getPartData()
+    public ChunkBuffer getPartData()
     {
         return partData;
     }
 
+    public int getPartSize()
+    {
+        return partData.length();
+    }
+
+    /**
+     * Fresh stream over the part data, one per upload attempt.
+     */
+    public InputStream newInputStream()
+    {
+        return partData.newInputStream();
+    }
+
     public byte[] getMd5()
     {
-        return md5;
+        return partData.getMd5();
+    }
+
+    /**
+     * Give the part buffer back to its pool, the data must not be used afterwards.
+     */
+    public void release()
+    {
+        if (partData != null)
+            partData.release();
     }
 }
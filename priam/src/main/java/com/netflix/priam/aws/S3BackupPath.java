@@ -36,6 +36,9 @@ public class S3BackupPath extends AbstractBackupPath
      * In Cassandra 1.1, Number of path elements = 9
      */
 	public static final int NUM_PATH_ELEMENTS_CASS_1_0 = 8;
+	public static final int NUM_PATH_ELEMENTS_CASS_1_1 = 9;
+	// Elements without keyspace and column family, META and CL.
+	private static final int NUM_PATH_ELEMENTS_FILE = 7;
 	
     @Inject
     public S3BackupPath(IConfiguration config, InstanceIdentity factory)
@@ -51,9 +54,9 @@ public class S3BackupPath extends AbstractBackupPath
      * BASE/REGION/CLUSTER/TOKEN/[SNAPSHOTTIME]/[SST|SNP|META]/KEYSPACE/COLUMNFAMILY/FILE
      */
     @Override
-    public String getRemotePath()
+    protected String buildRemotePath()
     {
-        StringBuffer buff = new StringBuffer();
+        StringBuilder buff = new StringBuilder();
         buff.append(baseDir).append(S3BackupPath.PATH_SEP); // Base dir
         buff.append(region).append(S3BackupPath.PATH_SEP);
         buff.append(clusterName).append(S3BackupPath.PATH_SEP);// Cluster name
@@ -74,32 +77,54 @@ public class S3BackupPath extends AbstractBackupPath
     @Override
     public void parseRemote(String remoteFilePath)
     {
-        String[] elements = remoteFilePath.split(String.valueOf(S3BackupPath.PATH_SEP));
-        // parse out things which are empty
-        List<String> pieces = Lists.newArrayList();
-        for (String ele : elements)
+        // One pass over the key, empty elements are skipped. Only the first
+        // eight elements and the last one are used.
+        String[] pieces = new String[NUM_PATH_ELEMENTS_CASS_1_0];
+        String last = null;
+        int count = 0;
+        boolean empty = false;
+        int length = remoteFilePath.length();
+        for (int start = 0; start <= length;)
         {
-            if (ele.equals(""))
-                continue;
-            pieces.add(ele);
+            int end = remoteFilePath.indexOf(S3BackupPath.PATH_SEP, start);
+            if (end < 0)
+                end = length;
+            if (end == start)
+                empty = true;
+            else
+            {
+                last = remoteFilePath.substring(start, end);
+                if (count < pieces.length)
+                    pieces[count] = last;
+                count++;
+            }
+            start = end + 1;
         }
-        assert pieces.size() >= 7 : "Too few elements in path " + remoteFilePath;
-        if(pieces.size() == NUM_PATH_ELEMENTS_CASS_1_0)
+        assert count >= NUM_PATH_ELEMENTS_FILE : "Too few elements in path " + remoteFilePath;
+        if(count == NUM_PATH_ELEMENTS_CASS_1_0)
                 setCassandra1_0(true);
-        baseDir = pieces.get(0);
-        region = pieces.get(1);
-        clusterName = pieces.get(2);
-        token = pieces.get(3);
-        time = parseDate(pieces.get(4));
-        type = BackupFileType.valueOf(pieces.get(5));
+        baseDir = pieces[0];
+        region = pieces[1];
+        clusterName = pieces[2];
+        token = pieces[3];
+        time = parseDate(pieces[4]);
+        type = BackupFileType.valueOf(pieces[5]);
+        int expected = NUM_PATH_ELEMENTS_FILE;
         if (type != BackupFileType.META && type != BackupFileType.CL)
         {
-            keyspace = pieces.get(6);
+            keyspace = pieces[6];
+            expected = NUM_PATH_ELEMENTS_CASS_1_0;
             if(!isCassandra1_0)
-                    columnFamily = pieces.get(7);
+            {
+                    columnFamily = pieces[7];
+                    expected = NUM_PATH_ELEMENTS_CASS_1_1;
+            }
         }
         // append the rest
-        fileName = pieces.get(pieces.size() - 1);
+        fileName = last;
+        // The key is what getRemotePath() builds, unless elements were dropped.
+        if (!empty && count == expected && isFormattedDate(pieces[4]))
+            setRemotePath(remoteFilePath);
     }
 
     @Override
@@ -121,6 +146,12 @@ public class S3BackupPath extends AbstractBackupPath
         token = pieces.get(3);
     }
 
+    @Override
+    public AbstractBackupPath newPath()
+    {
+        return new S3BackupPath(config, factory);
+    }
+
     @Override
     public String remotePrefix(Date start, Date end, String location)
     {
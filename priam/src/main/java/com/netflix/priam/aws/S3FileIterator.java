@@ -15,9 +15,16 @@
  */
 package com.netflix.priam.aws;
 
+import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,66 +34,175 @@ import com.amazonaws.services.s3.model.ListObjectsRequest;
 import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.inject.Provider;
 import com.netflix.priam.backup.AbstractBackupPath;
+import com.netflix.priam.utils.RetryableCallable;
 
 /**
  * Iterator representing list of backup files available on S3
+ *
+ * The time range is split into year, month and day prefixes, so a range
+ * across a month or year boundary doesn't list everything under the token.
+ * A window of prefixes is listed at the same time, files are returned in time
+ * order as their pages come in.
  */
 public class S3FileIterator implements Iterator<AbstractBackupPath>
 {   
     private static final Logger logger = LoggerFactory.getLogger(S3FileIterator.class);
-    private final Provider<AbstractBackupPath> pathProvider;
+    // Creates the path of each listed key.
+    private final AbstractBackupPath pathFactory;
     private final AmazonS3 s3Client;
     private final Date start;
     private final Date till;
-    private Iterator<AbstractBackupPath> iterator;
-    private ObjectListing objectListing;    
+    private final String bucket;
+    private final ExecutorService executor;
+    private final int window;
+    // Prefixes not listed yet, in time order.
+    private final LinkedList<String> prefixes = Lists.newLinkedList();
+    // Next page of each prefix being listed, the first one is returned from.
+    private final LinkedList<Future<ObjectListing>> listings = Lists.newLinkedList();
+    private Iterator<AbstractBackupPath> iterator = Collections.<AbstractBackupPath> emptyList().iterator();
 
     public S3FileIterator(Provider<AbstractBackupPath> pathProvider, AmazonS3 s3Client, String path, Date start, Date till)
+    {
+        this(pathProvider, s3Client, path, start, till, MoreExecutors.sameThreadExecutor(), 1);
+    }
+
+    public S3FileIterator(Provider<AbstractBackupPath> pathProvider, AmazonS3 s3Client, String path, Date start, Date till, ExecutorService executor, int window)
     {
         this.start = start;
         this.till = till;
-        this.pathProvider = pathProvider;
-        ListObjectsRequest listReq = new ListObjectsRequest();
-        String[] paths = path.split(String.valueOf(S3BackupPath.PATH_SEP));
-        listReq.setBucketName(paths[0]);
-        listReq.setPrefix(pathProvider.get().remotePrefix(start, till, path));
+        this.pathFactory = pathProvider.get();
         this.s3Client = s3Client;
-        objectListing = s3Client.listObjects(listReq);
-        iterator = createIterator();
+        this.executor = executor;
+        this.window = Math.max(1, window);
+        String[] paths = path.split(String.valueOf(S3BackupPath.PATH_SEP));
+        this.bucket = paths[0];
+        for (Date[] range : ranges(start, till))
+            prefixes.add(pathFactory.remotePrefix(range[0], range[1], path));
+        fill();
+    }
+
+    /**
+     * Split the time range in whole years and months where possible and days
+     * otherwise, the first and last range are cut to the start and end.
+     */
+    static List<Date[]> ranges(Date start, Date till)
+    {
+        List<Date[]> ranges = Lists.newArrayList();
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(start);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        while (!cal.getTime().after(till))
+        {
+            Date from = cal.getTime();
+            Calendar next = (Calendar) cal.clone();
+            next.add(Calendar.DAY_OF_MONTH, 1);
+            if (!from.before(start))
+            {
+                Calendar year = (Calendar) cal.clone();
+                year.add(Calendar.YEAR, 1);
+                Calendar month = (Calendar) cal.clone();
+                month.add(Calendar.MONTH, 1);
+                if (cal.get(Calendar.DAY_OF_YEAR) == 1 && !year.getTime().after(till))
+                    next = year;
+                else if (cal.get(Calendar.DAY_OF_MONTH) == 1 && !month.getTime().after(till))
+                    next = month;
+            }
+            // Prefixes cover minutes, the range ends the minute before the next one.
+            Date to = new Date(next.getTimeInMillis() - 60 * 1000L);
+            ranges.add(new Date[] { from.before(start) ? start : from, to.after(till) ? till : to });
+            cal = next;
+        }
+        return ranges;
     }
 
     @Override
     public boolean hasNext()
     {
-        if (iterator.hasNext())
+        while (!iterator.hasNext() && !listings.isEmpty())
         {
-            return true;
+            ObjectListing listing = get(listings.removeFirst());
+            // Ask for the next page before going through this one.
+            if (listing.isTruncated())
+                listings.addFirst(submitNextBatch(listing));
+            fill();
+            iterator = createIterator(listing);
         }
-        else
+        return iterator.hasNext();
+    }
+
+    private void fill()
+    {
+        while (listings.size() < window && !prefixes.isEmpty())
+            listings.add(submitList(prefixes.removeFirst()));
+    }
+
+    private Future<ObjectListing> submitList(final String prefix)
+    {
+        logger.debug("Listing {}", prefix);
+        return executor.submit(new RetryableCallable<ObjectListing>()
         {
-            while(objectListing.isTruncated() && !iterator.hasNext()) 
+            @Override
+            public ObjectListing retriableCall() throws Exception
             {
-                objectListing = s3Client.listNextBatchOfObjects(objectListing);
-                iterator = createIterator();
+                ListObjectsRequest listReq = new ListObjectsRequest();
+                listReq.setBucketName(bucket);
+                listReq.setPrefix(prefix);
+                return s3Client.listObjects(listReq);
             }
+        });
+    }
 
+    private Future<ObjectListing> submitNextBatch(final ObjectListing listing)
+    {
+        return executor.submit(new RetryableCallable<ObjectListing>()
+        {
+            @Override
+            public ObjectListing retriableCall() throws Exception
+            {
+                return s3Client.listNextBatchOfObjects(listing);
+            }
+        });
+    }
+
+    private ObjectListing get(Future<ObjectListing> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while listing backup files", e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
         }
-        return iterator.hasNext();
     }
 
-    private Iterator<AbstractBackupPath> createIterator()
+    private Iterator<AbstractBackupPath> createIterator(ObjectListing objectListing)
     {
         List<AbstractBackupPath> temp = Lists.newArrayList();
         for (S3ObjectSummary summary : objectListing.getObjectSummaries())
         {
-            AbstractBackupPath path = pathProvider.get();
+            AbstractBackupPath path = pathFactory.newPath();
             path.parseRemote(summary.getKey());
-            logger.debug("New key " + summary.getKey() + " path = " + path.getRemotePath() + " " + start + " end: " + till + " my " + path.getTime() );
+            // Size of the object as stored, the restore plans with it.
+            path.setSize(summary.getSize());
+            if (logger.isDebugEnabled())
+                logger.debug("New key " + summary.getKey() + " path = " + path.getRemotePath() + " " + start + " end: " + till + " my " + path.getTime() );
             if ((path.getTime().after(start) && path.getTime().before(till)) || path.getTime().equals(start)){
                 temp.add(path);
-                logger.debug("Added key " + summary.getKey() );
+                logger.debug("Added key {}", summary.getKey());
             }
         }
         return temp.iterator();
@@ -95,6 +211,8 @@ public class S3FileIterator implements Iterator<AbstractBackupPath>
     @Override
     public AbstractBackupPath next()
     {
+        if (!hasNext())
+            throw new NoSuchElementException();
         return iterator.next();
     }
 
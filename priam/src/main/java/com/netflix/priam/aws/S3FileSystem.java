@@ -15,14 +15,30 @@
  */
 package com.netflix.priam.aws;
 
-import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -31,32 +47,55 @@ import javax.management.ObjectName;
 
 import org.apache.commons.io.IOUtils;
 import com.google.common.collect.Lists;
-import com.google.common.util.concurrent.RateLimiter;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.S3ResponseMetadata;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
 import com.amazonaws.services.s3.model.BucketLifecycleConfiguration;
 import com.amazonaws.services.s3.model.BucketLifecycleConfiguration.Rule;
 import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
 import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartSummary;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.Singleton;
 import com.netflix.priam.IConfiguration;
 import com.netflix.priam.ICredential;
 import com.netflix.priam.backup.AbstractBackupPath;
+import com.netflix.priam.backup.BackupCatalog;
 import com.netflix.priam.backup.BackupRestoreException;
 import com.netflix.priam.backup.IBackupFileSystem;
+import com.netflix.priam.backup.ParallelRangeInputStream;
 import com.netflix.priam.backup.RangeReadInputStream;
+import com.netflix.priam.backup.ReadAheadInputStream;
+import com.netflix.priam.backup.ThrottledInputStream;
+import com.netflix.priam.backup.ThrottledOutputStream;
+import com.netflix.priam.backup.UploadThrottle;
+import com.netflix.priam.backup.WriteBehindOutputStream;
+import com.netflix.priam.compress.ChunkBuffer;
+import com.netflix.priam.compress.ChunkBufferPool;
+import com.netflix.priam.compress.CompressionCodecs;
 import com.netflix.priam.compress.ICompression;
+import com.netflix.priam.compress.RegionCompression;
 import com.netflix.priam.scheduler.BlockingSubmitThreadPoolExecutor;
+import com.netflix.priam.scheduler.NamedThreadPoolExecutor;
+import com.netflix.priam.utils.RetryableCallable;
+import com.netflix.priam.utils.SystemUtils;
 
 /**
  * Implementation of IBackupFileSystem for S3
@@ -67,14 +106,48 @@ public class S3FileSystem implements IBackupFileSystem, S3FileSystemMBean
     private static final Logger logger = LoggerFactory.getLogger(S3FileSystem.class);
     private static final int MAX_CHUNKS = 10000;
     private static final long UPLOAD_TIMEOUT = (2 * 60 * 60 * 1000L);
-    private static final long MAX_BUFFERED_IN_STREAM_SIZE = 5 * 1024 * 1024;
+    // Restores read ahead of and write behind decompression in this many buffers of this size.
+    private static final int PIPELINE_BUFFER_SIZE = 4 * 1024 * 1024;
+    private static final int PIPELINE_BUFFERS = 2;
+    private static final int MAX_PUT_RETRIES = 5;
+    private static final long JOURNAL_EXPIRY = 3 * 24 * 60 * 60 * 1000L;
+    // Abandoned uploads are looked for at most this often as files are uploaded.
+    private static final long JOURNAL_SWEEP_INTERVAL = 60 * 60 * 1000L;
+    // Parts complete in any order, S3 wants them sorted.
+    private static final Comparator<PartETag> PART_ORDER = new Comparator<PartETag>()
+    {
+        @Override
+        public int compare(PartETag p1, PartETag p2)
+        {
+            return p1.getPartNumber() - p2.getPartNumber();
+        }
+    };
+    // User metadata naming the codec an object was compressed with, plain snappy if missing.
+    private static final String COMPRESSION_META = "compression";
     	
     
     private final Provider<AbstractBackupPath> pathProvider;
-    private final ICompression compress;
+    private final CompressionCodecs codecs;
+    private final UploadJournal journal;
+    private final BackupCatalog catalog;
     private final IConfiguration config;
     private BlockingSubmitThreadPoolExecutor executor;
-    private RateLimiter rateLimiter;
+    private final UploadThrottle throttle;
+    private final ChunkBufferPool chunkPool;
+    private final ThreadPoolExecutor compressExecutor;
+    private final RegionCompression regionCompression;
+    private final ThreadPoolExecutor rangeExecutor;
+    private final ExecutorService pipelineExecutor;
+    private final ThreadPoolExecutor listExecutor;
+    private final RateLimiter downloadLimiter;
+    private final RateLimiter writeLimiter;
+    // Region split files keep several buffers compressing ahead, two of them at once could starve each other of buffers.
+    private final Semaphore regionSplitLock = new Semaphore(1);
+    // Bucket and node prefix of the last upload, the only node the catalog is kept current for.
+    private volatile String uploadNode;
+    private final ThreadPoolExecutor catalogExecutor;
+    private final AtomicBoolean catalogRebuilding = new AtomicBoolean();
+    private final AtomicLong lastJournalSweep = new AtomicLong();
 
     private AtomicLong bytesDownloaded = new AtomicLong();
     private AtomicLong bytesUploaded = new AtomicLong();
@@ -84,16 +157,33 @@ public class S3FileSystem implements IBackupFileSystem, S3FileSystemMBean
     private final AmazonS3Client s3Client;
 
     @Inject
-    public S3FileSystem(Provider<AbstractBackupPath> pathProvider, ICompression compress, final IConfiguration config, ICredential cred)
+    public S3FileSystem(Provider<AbstractBackupPath> pathProvider, CompressionCodecs codecs, UploadJournal journal, UploadThrottle throttle, BackupCatalog catalog, final IConfiguration config, ICredential cred)
     {
         this.pathProvider = pathProvider;
-        this.compress = compress;
+        this.codecs = codecs;
+        this.journal = journal;
+        this.catalog = catalog;
+        this.throttle = throttle;
         this.config = config;
         int threads = config.getMaxBackupUploadThreads();
         LinkedBlockingQueue<Runnable> queue = new LinkedBlockingQueue<Runnable>(threads);
         this.executor = new BlockingSubmitThreadPoolExecutor(threads, queue, UPLOAD_TIMEOUT);
-        double throttleLimit = config.getUploadThrottle();
-        rateLimiter = RateLimiter.create(throttleLimit < 1 ? Double.MAX_VALUE : throttleLimit);
+        // Enough part buffers for every queued and running upload, plus one being filled per file transfer.
+        this.chunkPool = new ChunkBufferPool(2 * threads + Math.max(1, config.getBackupFileThreads()));
+        this.compressExecutor = new NamedThreadPoolExecutor(threads, "RegionCompressor");
+        this.compressExecutor.allowCoreThreadTimeOut(true);
+        this.regionCompression = new RegionCompression(compressExecutor, chunkPool, threads);
+        // Every restore thread may have a full window of ranges in flight.
+        this.rangeExecutor = new NamedThreadPoolExecutor(Math.max(1, config.getRestoreRangeThreads()) * config.getMaxBackupDownloadThreads(), "RangeDownload");
+        this.rangeExecutor.allowCoreThreadTimeOut(true);
+        // Stages of a restore wait on each other, a bounded pool could leave one without a thread.
+        this.pipelineExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("RestorePipeline-%d").build());
+        this.listExecutor = new NamedThreadPoolExecutor(Math.max(1, config.getBackupListThreads()), "S3List");
+        this.listExecutor.allowCoreThreadTimeOut(true);
+        this.catalogExecutor = new NamedThreadPoolExecutor(1, "CatalogRebuild");
+        this.catalogExecutor.allowCoreThreadTimeOut(true);
+        this.downloadLimiter = RateLimiter.create(toRate(config.getDownloadThrottle()));
+        this.writeLimiter = RateLimiter.create(toRate(config.getRestoreWriteThrottle()));
 
         MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
         String mbeanName = MBEAN_NAME;
@@ -135,11 +225,41 @@ public class S3FileSystem implements IBackupFileSystem, S3FileSystemMBean
             logger.info("Downloading " + path.getRemotePath());
             downloadCount.incrementAndGet();
             final AmazonS3 client = getS3Client();
-            long contentLen = client.getObjectMetadata(getPrefix(), path.getRemotePath()).getContentLength();
-            path.setSize(contentLen);
-            RangeReadInputStream rris = new RangeReadInputStream(client, getPrefix(), path);
-            final long bufSize = MAX_BUFFERED_IN_STREAM_SIZE > contentLen ? contentLen : MAX_BUFFERED_IN_STREAM_SIZE;
-            compress.decompressAndClose(new BufferedInputStream(rris, (int)bufSize), os);
+            long contentLen = path.getStoredSize();
+            String tag = path.getCompression();
+            // Known if listed in a meta file, no need to ask S3.
+            if (contentLen < 0 || tag == null)
+            {
+                ObjectMetadata metadata = client.getObjectMetadata(getPrefix(), path.getRemotePath());
+                contentLen = metadata.getContentLength();
+                tag = metadata.getUserMetadata().get(COMPRESSION_META);
+            }
+            path.setStored(contentLen, tag, path.getChecksum());
+            // The object is all that is known of the size of files listed without it.
+            if (path.getSize() <= 0)
+                path.setSize(contentLen);
+            InputStream in;
+            if (config.getRestoreRangeThreads() > 1 && contentLen > config.getRestoreRangeSize())
+            {
+                // Ranges are fetched at most a window ahead of what is read.
+                in = new ParallelRangeInputStream(client, getPrefix(), path, rangeExecutor, config.getRestoreRangeThreads(), config.getRestoreRangeSize());
+                in = new ThrottledInputStream(in, downloadLimiter);
+            }
+            else
+            {
+                RangeReadInputStream rris = new RangeReadInputStream(client, getPrefix(), path);
+                int bufSize = (int) Math.max(1, Math.min(contentLen, PIPELINE_BUFFER_SIZE));
+                in = new ReadAheadInputStream(new ThrottledInputStream(rris, downloadLimiter), pipelineExecutor, bufSize, PIPELINE_BUFFERS);
+            }
+            OutputStream out = new WriteBehindOutputStream(os, pipelineExecutor, PIPELINE_BUFFER_SIZE, PIPELINE_BUFFERS);
+            out = new ThrottledOutputStream(out, writeLimiter);
+            if (tag != null && tag.endsWith(RegionCompression.TAG_SUFFIX))
+            {
+                ICompression codec = codecs.forTag(tag.substring(0, tag.length() - RegionCompression.TAG_SUFFIX.length()));
+                RegionCompression.decompressAndClose(codec, in, out);
+            }
+            else
+                codecs.forTag(tag).decompressAndClose(in, out);
             bytesDownloaded.addAndGet(contentLen);
         }
         catch (Exception e)
@@ -153,48 +273,367 @@ public class S3FileSystem implements IBackupFileSystem, S3FileSystemMBean
     {
         uploadCount.incrementAndGet();
         AmazonS3 s3Client = getS3Client();
-        InitiateMultipartUploadRequest initRequest = new InitiateMultipartUploadRequest(config.getBackupPrefix(), path.getRemotePath());
-        InitiateMultipartUploadResult initResponse = s3Client.initiateMultipartUpload(initRequest);
-        DataPart part = new DataPart(config.getBackupPrefix(), path.getRemotePath(), initResponse.getUploadId());
-        List<PartETag> partETags = Lists.newArrayList();
+        abortAbandonedUploads(s3Client, JOURNAL_SWEEP_INTERVAL);
+        boolean splitRegions = isRegionSplit(path);
+        ICompression codec = codecs.forPath(path);
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.addUserMetadata(COMPRESSION_META, splitRegions ? RegionCompression.tag(codec) : codec.getType().tag());
         long chunkSize = config.getBackupChunkSize();
         if (path.getSize() > 0)
             chunkSize = (path.getSize() / chunkSize >= MAX_CHUNKS) ? (path.getSize() / (MAX_CHUNKS - 1)) : chunkSize;
-        logger.info(String.format("Uploading to %s/%s with chunk size %d", config.getBackupPrefix(), path.getRemotePath(), chunkSize));
+        logger.info(String.format("Uploading to %s/%s with chunk size %d and %s compression", config.getBackupPrefix(), path.getRemotePath(), chunkSize, codec.getType().tag()));
+        Iterator<ChunkBuffer> chunks = null;
+        ChunkBuffer first = null;
+        boolean regionSplitLocked = false;
         try
         {
-            Iterator<byte[]> chunks = compress.compress(in, chunkSize);
+            if (splitRegions)
+            {
+                regionSplitLock.acquire();
+                regionSplitLocked = true;
+                chunks = regionCompression.compress(path.getBackupFile(), chunkSize, codec);
+            }
+            else
+                chunks = codec.compress(in, chunkPool, chunkSize);
+            first = chunks.next();
+            String etag;
+            if (isSinglePut(first, chunks))
+                etag = putObject(s3Client, path, metadata, first);
+            else
+            {
+                ChunkBuffer part = first;
+                first = null;
+                etag = multipartUpload(s3Client, path, metadata, part, chunks, chunkSize);
+            }
+            path.setStored(metadata.getContentLength(), metadata.getUserMetadata().get(COMPRESSION_META), etag);
+            uploadNode = nodePrefix(path);
+            catalog.add(config.getBackupPrefix(), path, path.getStoredSize(), path.getCompression(), etag);
+        }
+        catch (Exception e)
+        {
+            throw new BackupRestoreException("Error uploading file " + path.getFileName(), e);
+        } finally {
+            if (first != null)
+                first.release();
+            // Hands back the buffer of a partially consumed stream.
+            if (chunks instanceof Closeable)
+                IOUtils.closeQuietly((Closeable) chunks);
+            if (regionSplitLocked)
+                regionSplitLock.release();
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    private boolean isSinglePut(ChunkBuffer first, Iterator<ChunkBuffer> chunks)
+    {
+        long threshold = config.getBackupSinglePutThreshold();
+        return threshold > 0 && first.length() <= threshold && !chunks.hasNext();
+    }
+
+    /**
+     * Small objects go up in one request, saving the initiate and complete
+     * round trips of a multipart upload.
+     * 
+     * @return ETag of the object
+     */
+    private String putObject(final AmazonS3 s3Client, final AbstractBackupPath path, final ObjectMetadata metadata, final ChunkBuffer chunk) throws Exception
+    {
+        throttle.acquire(chunk.length());
+        final String md5 = SystemUtils.toHex(chunk.getMd5());
+        metadata.setContentLength(chunk.length());
+        metadata.setContentMD5(SystemUtils.toBase64(chunk.getMd5()));
+        new RetryableCallable<Void>(MAX_PUT_RETRIES, RetryableCallable.DEFAULT_WAIT_TIME)
+        {
+            @Override
+            public Void retriableCall() throws Exception
+            {
+                PutObjectRequest request = new PutObjectRequest(config.getBackupPrefix(), path.getRemotePath(), chunk.newInputStream(), metadata);
+                PutObjectResult result = s3Client.putObject(request);
+                if (!md5.equals(result.getETag()))
+                    throw new BackupRestoreException("Unable to match MD5 for " + path.getRemotePath());
+                return null;
+            }
+        }.call();
+        bytesUploaded.addAndGet(chunk.length());
+        return md5;
+    }
+
+    /**
+     * Uploads the first chunk and the rest of the stream as parts, the first
+     * chunk is owned (and released) by this method. With the upload journal
+     * enabled a failed upload is left open while its source file exists, the
+     * next attempt for the same file only uploads the parts S3 does not have
+     * yet.
+     * 
+     * @return ETag of the object, the size of the object is set on the
+     *         metadata
+     */
+    private String multipartUpload(AmazonS3 s3Client, AbstractBackupPath path, ObjectMetadata metadata, ChunkBuffer first, Iterator<ChunkBuffer> chunks, long chunkSize) throws Exception
+    {
+        ChunkBuffer chunk = first;
+        List<PartETag> partETags = Collections.synchronizedList(new ArrayList<PartETag>());
+        List<Future<Void>> parts = Lists.newArrayList();
+        DataPart part = null;
+        UploadJournal.Entry entry = null;
+        try
+        {
+            String signature = journalSignature(path, metadata, chunkSize);
+            entry = resumableUpload(s3Client, path.getRemotePath(), signature);
+            Map<Integer, String> uploaded = Collections.emptyMap();
+            if (entry != null)
+            {
+                try
+                {
+                    uploaded = listParts(s3Client, entry);
+                }
+                catch (AmazonServiceException e)
+                {
+                    if (e.getStatusCode() != 404)
+                        throw e;
+                    logger.info("Journaled upload of " + path.getRemotePath() + " no longer exists, starting over");
+                    journal.remove(entry);
+                    entry = null;
+                }
+            }
+            InitiateMultipartUploadRequest initRequest = null;
+            String uploadId;
+            if (entry != null)
+            {
+                uploadId = entry.getUploadId();
+                logger.info(String.format("Resuming upload of %s, %d parts already uploaded", path.getRemotePath(), uploaded.size()));
+            }
+            else
+            {
+                initRequest = new InitiateMultipartUploadRequest(config.getBackupPrefix(), path.getRemotePath(), metadata);
+                InitiateMultipartUploadResult initResponse = s3Client.initiateMultipartUpload(initRequest);
+                uploadId = initResponse.getUploadId();
+                if (signature != null)
+                    entry = journal.create(path.getRemotePath(), uploadId, signature, path.getBackupFile());
+            }
+            part = new DataPart(config.getBackupPrefix(), path.getRemotePath(), uploadId);
             // Upload parts.
             int partNum = 0;
-            while (chunks.hasNext())
+            long stored = 0;
+            while (chunk != null)
             {
-                byte[] chunk = chunks.next();
-                rateLimiter.acquire(chunk.length);
-                DataPart dp = new DataPart(++partNum, chunk, config.getBackupPrefix(), path.getRemotePath(), initResponse.getUploadId());
-                S3PartUploader partUploader = new S3PartUploader(s3Client, dp, partETags);
-                executor.submit(partUploader);
-                bytesUploaded.addAndGet(chunk.length);
+                stored += chunk.length();
+                String etag = uploaded.get(++partNum);
+                if (etag != null && etag.equals(SystemUtils.toHex(chunk.getMd5())))
+                {
+                    // Same bytes as the part already on S3.
+                    partETags.add(new PartETag(partNum, etag));
+                    chunk.release();
+                    chunk = null;
+                }
+                else
+                {
+                    throttle.acquire(chunk.length());
+                    DataPart dp = new DataPart(partNum, chunk, config.getBackupPrefix(), path.getRemotePath(), uploadId);
+                    bytesUploaded.addAndGet(chunk.length());
+                    // The part releases the chunk from here on.
+                    chunk = null;
+                    parts.add(submitPart(new S3PartUploader(s3Client, dp, partETags), dp, entry));
+                }
+                chunk = chunks.hasNext() ? chunks.next() : null;
             }
-            executor.sleepTillEmpty();
+            waitForParts(parts);
             if (partNum != partETags.size())
                 throw new BackupRestoreException("Number of parts(" + partNum + ")  does not match the uploaded parts(" + partETags.size() + ")");
-            new S3PartUploader(s3Client, part, partETags).completeUpload();
+            Collections.sort(partETags, PART_ORDER);
+            String etag = new S3PartUploader(s3Client, part, partETags).completeUpload();
+            if (entry != null)
+                journal.remove(entry);
+            metadata.setContentLength(stored);
             
-            if (logger.isDebugEnabled())
+            if (logger.isDebugEnabled() && initRequest != null)
             {	
                final S3ResponseMetadata responseMetadata = s3Client.getCachedResponseMetadata(initRequest);
                final String requestId = responseMetadata.getRequestId(); // "x-amz-request-id" header
                final String hostId = responseMetadata.getHostId(); // "x-amz-id-2" header
                logger.debug("S3 AWS x-amz-request-id[" + requestId + "], and x-amz-id-2[" + hostId + "]");
             }  
-            
+            return etag;
         }
         catch (Exception e)
         {
-            new S3PartUploader(s3Client, part, partETags).abortUpload();
-            throw new BackupRestoreException("Error uploading file " + path.getFileName(), e);
-        } finally {
-            IOUtils.closeQuietly(in);
+            if (chunk != null)
+                chunk.release();
+            if (part != null)
+            {
+                // Let the parts in flight settle first, a part finishing after the abort would be kept (and billed).
+                waitQuietly(parts);
+                if (entry == null)
+                    new S3PartUploader(s3Client, part, partETags).abortUpload();
+                else if (!entry.isResumable())
+                    abortJournaled(s3Client, entry);
+                else
+                    logger.info("Upload of " + path.getRemotePath() + " failed, keeping its parts to resume from");
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Identifies the source file and the way it is chunked, null if the
+     * upload can't be resumed (nothing to compare a stream with).
+     */
+    private String journalSignature(AbstractBackupPath path, ObjectMetadata metadata, long chunkSize)
+    {
+        File file = path.getBackupFile();
+        if (!journal.isEnabled() || file == null)
+            return null;
+        return file.length() + ":" + file.lastModified() + ":" + chunkSize + ":" + metadata.getUserMetadata().get(COMPRESSION_META);
+    }
+
+    /**
+     * @return the journaled upload of the key if it can be resumed, an
+     *         upload for an older version of the file is aborted
+     */
+    private UploadJournal.Entry resumableUpload(AmazonS3 s3Client, String key, String signature)
+    {
+        if (signature == null)
+            return null;
+        UploadJournal.Entry entry = journal.find(key);
+        if (entry == null || entry.getSignature().equals(signature))
+            return entry;
+        abortJournaled(s3Client, entry);
+        return null;
+    }
+
+    /**
+     * Parts S3 has for the upload, the journal only tells which were
+     * acknowledged before the last attempt stopped.
+     */
+    private Map<Integer, String> listParts(AmazonS3 s3Client, UploadJournal.Entry entry)
+    {
+        Map<Integer, String> parts = new HashMap<Integer, String>();
+        ListPartsRequest request = new ListPartsRequest(config.getBackupPrefix(), entry.getKey(), entry.getUploadId());
+        PartListing listing;
+        do
+        {
+            listing = s3Client.listParts(request);
+            for (PartSummary summary : listing.getParts())
+                parts.put(summary.getPartNumber(), StringUtils.remove(summary.getETag(), '"'));
+            request.setPartNumberMarker(listing.getNextPartNumberMarker());
+        }
+        while (listing.isTruncated());
+        return parts;
+    }
+
+    /**
+     * Abort the journaled uploads nobody will come back to, such as those of
+     * a snapshot which was cleared, so their parts are not kept (and billed).
+     * Runs at most once per interval.
+     */
+    private void abortAbandonedUploads(AmazonS3 s3Client, long interval)
+    {
+        long last = lastJournalSweep.get();
+        long now = System.currentTimeMillis();
+        if (now - last < interval || !lastJournalSweep.compareAndSet(last, now))
+            return;
+        try
+        {
+            for (UploadJournal.Entry entry : journal.listAbandoned(JOURNAL_EXPIRY))
+                abortJournaled(s3Client, entry);
+        }
+        catch (AmazonClientException e)
+        {
+            // The entries are kept, the next sweep tries again.
+            logger.warn("Unable to abort abandoned uploads", e);
+        }
+    }
+
+    private void abortJournaled(AmazonS3 s3Client, UploadJournal.Entry entry)
+    {
+        logger.info("Aborting journaled upload of " + entry.getKey());
+        try
+        {
+            s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(config.getBackupPrefix(), entry.getKey(), entry.getUploadId()));
+        }
+        catch (AmazonServiceException e)
+        {
+            // Already gone (completed or aborted), nothing left to clean up.
+            logger.debug("Unable to abort upload of " + entry.getKey(), e);
+        }
+        journal.remove(entry);
+    }
+
+    /**
+     * Large local files are compressed region by region on several cores
+     * instead of as one stream.
+     */
+    private boolean isRegionSplit(AbstractBackupPath path)
+    {
+        long threshold = config.getBackupRegionSplitThreshold();
+        return threshold > 0 && path.getBackupFile() != null && path.getSize() >= threshold;
+    }
+
+    /**
+     * Queue the part for upload, its buffer goes back to the pool once the
+     * uploader is done with it (successfully or not). Uploaded parts are
+     * recorded in the journal entry, if there is one.
+     */
+    private Future<Void> submitPart(final S3PartUploader partUploader, final DataPart dp, final UploadJournal.Entry entry)
+    {
+        try
+        {
+            return executor.submit(new Callable<Void>()
+            {
+                @Override
+                public Void call() throws Exception
+                {
+                    try
+                    {
+                        partUploader.call();
+                        if (entry != null)
+                            entry.partDone(dp.getPartNo(), SystemUtils.toHex(dp.getMd5()));
+                        return null;
+                    }
+                    finally
+                    {
+                        dp.release();
+                    }
+                }
+            });
+        }
+        catch (RuntimeException e)
+        {
+            dp.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Wait for the parts of one file, fails on the first part which failed.
+     */
+    private void waitForParts(List<Future<Void>> parts) throws Exception
+    {
+        long deadline = System.currentTimeMillis() + UPLOAD_TIMEOUT;
+        for (Future<Void> future : parts)
+        {
+            try
+            {
+                future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            }
+            catch (ExecutionException e)
+            {
+                throw new BackupRestoreException("Part upload failed", e);
+            }
+        }
+    }
+
+    private void waitQuietly(List<Future<Void>> parts)
+    {
+        for (Future<Void> future : parts)
+        {
+            try
+            {
+                future.get(UPLOAD_TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+            catch (Exception e)
+            {
+                logger.debug("Part failed while aborting upload", e);
+            }
         }
     }
 
@@ -204,16 +643,148 @@ public class S3FileSystem implements IBackupFileSystem, S3FileSystemMBean
         return executor.getActiveCount();
     }
 
+    @Override
+    public double getUploadRate()
+    {
+        return throttle.getRate();
+    }
+
+    @Override
+    public String getUploadRateReason()
+    {
+        return throttle.getReason();
+    }
+
+    @Override
+    public double getDownloadRate()
+    {
+        return downloadLimiter.getRate();
+    }
+
+    @Override
+    public void setDownloadRate(double rate)
+    {
+        logger.info("Setting download rate to " + rate + " bytes/sec");
+        downloadLimiter.setRate(toRate(rate));
+    }
+
+    @Override
+    public double getRestoreWriteRate()
+    {
+        return writeLimiter.getRate();
+    }
+
+    @Override
+    public void setRestoreWriteRate(double rate)
+    {
+        logger.info("Setting restore write rate to " + rate + " bytes/sec");
+        writeLimiter.setRate(toRate(rate));
+    }
+
+    /**
+     * Anything below a byte per second means no limit.
+     */
+    private static double toRate(double throttle)
+    {
+        return throttle < 1 ? Double.MAX_VALUE : throttle;
+    }
+
     @Override
     public Iterator<AbstractBackupPath> list(String path, Date start, Date till)
     {
-        return new S3FileIterator(pathProvider, getS3Client(), path, start, till);
+        String node = nodePrefix(path, start, till);
+        // Only the node uploaded to is kept current, the catalog of any other would go stale.
+        if (catalog.isEnabled() && node.equals(uploadNode))
+        {
+            try
+            {
+                if (catalog.isComplete(node, start))
+                    return catalog.list(node, start, till).iterator();
+                // Listed from S3 until the catalog is rebuilt.
+                if (!catalog.isComplete(node, catalog.getHorizon()))
+                    rebuildCatalog(path, node);
+            }
+            catch (IOException e)
+            {
+                logger.warn("Unable to use the backup catalog, listing " + node + " from S3", e);
+            }
+        }
+        return new S3FileIterator(pathProvider, getS3Client(), path, start, till, listExecutor, listExecutor.getMaximumPoolSize());
+    }
+
+    @Override
+    public void rebuildCatalog()
+    {
+        String path = config.getBackupPrefix();
+        Date now = new Date();
+        rebuildCatalog(path, nodePrefix(path, now, now));
+    }
+
+    /**
+     * Catalog the objects of the node up to the catalog's horizon from a
+     * listing of the bucket, in the background. Does nothing while a rebuild
+     * is running.
+     */
+    private void rebuildCatalog(final String path, final String node)
+    {
+        if (!catalogRebuilding.compareAndSet(false, true))
+            return;
+        try
+        {
+            catalogExecutor.submit(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        Date till = new Date();
+                        Date from = catalog.getHorizon();
+                        catalog.rebuild(node, from, new S3FileIterator(pathProvider, getS3Client(), path, from, till, listExecutor, listExecutor.getMaximumPoolSize()));
+                    }
+                    catch (Exception e)
+                    {
+                        logger.error("Unable to rebuild the backup catalog of " + node, e);
+                    }
+                    finally
+                    {
+                        catalogRebuilding.set(false);
+                    }
+                }
+            });
+        }
+        catch (RuntimeException e)
+        {
+            catalogRebuilding.set(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Bucket and remote path up to the token of the listed location.
+     */
+    private String nodePrefix(String path, Date start, Date till)
+    {
+        AbstractBackupPath factory = pathProvider.get();
+        String prefix = factory.remotePrefix(start, till, path);
+        prefix = prefix.substring(0, prefix.length() - factory.match(start, till).length());
+        return path.split(String.valueOf(AbstractBackupPath.PATH_SEP))[0] + AbstractBackupPath.PATH_SEP + prefix;
+    }
+
+    private String nodePrefix(AbstractBackupPath path)
+    {
+        StringBuilder buff = new StringBuilder(config.getBackupPrefix()).append(AbstractBackupPath.PATH_SEP);
+        buff.append(path.getBaseDir()).append(AbstractBackupPath.PATH_SEP);
+        buff.append(path.getRegion()).append(AbstractBackupPath.PATH_SEP);
+        buff.append(path.getClusterName()).append(AbstractBackupPath.PATH_SEP);
+        buff.append(path.getToken()).append(AbstractBackupPath.PATH_SEP);
+        return buff.toString();
     }
 
     @Override
     public Iterator<AbstractBackupPath> listPrefixes(Date date)
     {
-        return new S3PrefixIterator(config, pathProvider, getS3Client(), date);
+        return new S3PrefixIterator(config, pathProvider, getS3Client(), date, listExecutor);
     }
 
     /**
@@ -224,6 +795,7 @@ public class S3FileSystem implements IBackupFileSystem, S3FileSystemMBean
     public void cleanup()
     {
         AmazonS3 s3Client = getS3Client();
+        abortAbandonedUploads(s3Client, 0);
         String clusterPath = pathProvider.get().clusterPrefix("");
         BucketLifecycleConfiguration lifeConfig = s3Client.getBucketLifecycleConfiguration(config.getBackupPrefix());
         if (lifeConfig == null)
@@ -308,6 +880,8 @@ public class S3FileSystem implements IBackupFileSystem, S3FileSystemMBean
     {
         if (executor != null)
             executor.shutdown();
+        compressExecutor.shutdown();
+        catalogExecutor.shutdown();
     }
 
     @Override
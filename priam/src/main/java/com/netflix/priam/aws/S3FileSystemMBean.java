@@ -28,4 +28,31 @@ public interface S3FileSystemMBean
     public long bytesUploaded();
 
     public long bytesDownloaded();
+
+    public double getUploadRate();
+
+    public String getUploadRateReason();
+
+    public double getDownloadRate();
+
+    /**
+     * @param rate
+     *            bytes per second restores download at most, 0 for no limit
+     */
+    public void setDownloadRate(double rate);
+
+    public double getRestoreWriteRate();
+
+    /**
+     * @param rate
+     *            bytes per second restores write to disk at most, 0 for no
+     *            limit
+     */
+    public void setRestoreWriteRate(double rate);
+
+    /**
+     * Catalog the objects of this node from a listing of the bucket in the
+     * background, its backups are listed from the catalog once done.
+     */
+    public void rebuildCatalog();
 }
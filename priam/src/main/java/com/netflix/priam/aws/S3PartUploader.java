@@ -15,7 +15,6 @@
  */
 package com.netflix.priam.aws;
 
-import java.io.ByteArrayInputStream;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -56,9 +55,9 @@ public class S3PartUploader extends RetryableCallable<Void>
         req.setKey(dataPart.getS3key());
         req.setUploadId(dataPart.getUploadID());
         req.setPartNumber(dataPart.getPartNo());
-        req.setPartSize(dataPart.getPartData().length);
+        req.setPartSize(dataPart.getPartSize());
         req.setMd5Digest(SystemUtils.toBase64(dataPart.getMd5()));
-        req.setInputStream(new ByteArrayInputStream(dataPart.getPartData()));
+        req.setInputStream(dataPart.newInputStream());
         UploadPartResult res = client.uploadPart(req);
         PartETag partETag = res.getPartETag();
         if (!partETag.getETag().equals(SystemUtils.toHex(dataPart.getMd5())))
@@ -67,10 +66,13 @@ public class S3PartUploader extends RetryableCallable<Void>
         return null;
     }
 
-    public void completeUpload() throws BackupRestoreException
+    /**
+     * @return ETag of the object
+     */
+    public String completeUpload() throws BackupRestoreException
     {
         CompleteMultipartUploadRequest compRequest = new CompleteMultipartUploadRequest(dataPart.getBucketName(), dataPart.getS3key(), dataPart.getUploadID(), partETags);
-        client.completeMultipartUpload(compRequest);
+        return client.completeMultipartUpload(compRequest).getETag();
     }
 
     // Abort
@@ -83,7 +85,7 @@ public class S3PartUploader extends RetryableCallable<Void>
     @Override
     public Void retriableCall() throws AmazonClientException, BackupRestoreException
     {
-        logger.debug("Picked up part " + dataPart.getPartNo() + " size " + dataPart.getPartData().length);
+        logger.debug("Picked up part " + dataPart.getPartNo() + " size " + dataPart.getPartSize());
         return uploadPart();
     }
 }
@@ -19,6 +19,9 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
@@ -28,15 +31,20 @@ import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.ListObjectsRequest;
 import com.amazonaws.services.s3.model.ObjectListing;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.netflix.priam.IConfiguration;
 import com.netflix.priam.backup.AbstractBackupPath;
+import com.netflix.priam.utils.RetryableCallable;
 
 /**
  * Class to iterate over prefixes (S3 Common prefixes) upto 
  * the token element in the path. The abstract path generated by this class
  * is partial (does not have all data). 
+ *
+ * Only tokens with backups on the date are returned, the tokens of a listed
+ * page are checked at the same time on the given executor.
  */
 public class S3PrefixIterator implements Iterator<AbstractBackupPath>
 {
@@ -44,6 +52,7 @@ public class S3PrefixIterator implements Iterator<AbstractBackupPath>
     private final IConfiguration config;
     private final AmazonS3 s3Client;
     private final Provider<AbstractBackupPath> pathProvider;
+    private final ExecutorService executor;
     private Iterator<AbstractBackupPath> iterator;
     
     private String bucket = "";
@@ -54,11 +63,17 @@ public class S3PrefixIterator implements Iterator<AbstractBackupPath>
 
     @Inject
     public S3PrefixIterator(IConfiguration config, Provider<AbstractBackupPath> pathProvider, AmazonS3 s3Client, Date date)
+    {
+        this(config, pathProvider, s3Client, date, MoreExecutors.sameThreadExecutor());
+    }
+
+    public S3PrefixIterator(IConfiguration config, Provider<AbstractBackupPath> pathProvider, AmazonS3 s3Client, Date date, ExecutorService executor)
     {
         this.config = config;
         this.pathProvider = pathProvider;
         this.s3Client = s3Client;
         this.date = date;
+        this.executor = executor;
         String path = "";
         if (StringUtils.isNotBlank(config.getRestorePrefix()))
             path = config.getRestorePrefix();
@@ -88,19 +103,55 @@ public class S3PrefixIterator implements Iterator<AbstractBackupPath>
     {
         if (objectListing == null)
             initListing();
+        String datestr = datefmt.format(date);
+        List<String> tokens = objectListing.getCommonPrefixes();
+        List<Future<Boolean>> exists = Lists.newArrayList();
+        for (String summary : tokens)
+            exists.add(submitExists(summary, datestr));
         List<AbstractBackupPath> temp = Lists.newArrayList();
-        for (String summary : objectListing.getCommonPrefixes())
+        for (int i = 0; i < tokens.size(); i++)
         {
-            if (pathExistsForDate(summary, datefmt.format(date)))
+            if (get(exists.get(i)))
             {
                 AbstractBackupPath path = pathProvider.get();
-                path.parsePartialPrefix(summary);
+                path.parsePartialPrefix(tokens.get(i));
                 temp.add(path);
             }
         }
         return temp.iterator();
     }
 
+    private Future<Boolean> submitExists(final String tprefix, final String datestr)
+    {
+        return executor.submit(new RetryableCallable<Boolean>()
+        {
+            @Override
+            public Boolean retriableCall() throws Exception
+            {
+                return pathExistsForDate(tprefix, datestr);
+            }
+        });
+    }
+
+    private boolean get(Future<Boolean> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while listing tokens", e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
     @Override
     public boolean hasNext()
     {
@@ -162,6 +213,8 @@ public class S3PrefixIterator implements Iterator<AbstractBackupPath>
         // Get list of tokens
         listReq.setBucketName(bucket);
         listReq.setPrefix(tprefix + datestr);
+        // One key is enough to know there is a backup.
+        listReq.setMaxKeys(1);
         ObjectListing listing;
         listing = s3Client.listObjects(listReq);
         if (listing.getObjectSummaries().size() > 0)
@@ -0,0 +1,257 @@
+/**
+ * Copyright 2013 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.priam.aws;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.priam.IConfiguration;
+import com.netflix.priam.utils.SystemUtils;
+
+/**
+ * Local record of the multipart uploads in progress, so that an upload which
+ * failed (or was cut short by a restart) can carry on with the parts already
+ * on S3. One file per upload:
+ *
+ * <pre>
+ * key    uploadId    signature    source
+ * partNo etag
+ * ...
+ * </pre>
+ *
+ * The signature describes the source file and how it was chunked, an upload
+ * is only resumed when it still matches. Once the source file is gone the
+ * upload can't be resumed any more.
+ */
+@Singleton
+public class UploadJournal
+{
+    private static final Logger logger = LoggerFactory.getLogger(UploadJournal.class);
+    private static final String SUFFIX = ".upload";
+    private static final String SEP = "\t";
+
+    private final IConfiguration config;
+
+    @Inject
+    public UploadJournal(IConfiguration config)
+    {
+        this.config = config;
+    }
+
+    public boolean isEnabled()
+    {
+        return StringUtils.isNotBlank(config.getBackupJournalLocation());
+    }
+
+    /**
+     * @return the upload recorded for the key, null if there is none
+     */
+    public Entry find(String key)
+    {
+        if (!isEnabled())
+            return null;
+        File file = fileFor(key);
+        if (!file.exists())
+            return null;
+        try
+        {
+            Entry entry = load(file);
+            return entry != null && entry.key.equals(key) ? entry : null;
+        }
+        catch (IOException e)
+        {
+            logger.warn("Unable to read upload journal " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Record a new upload of the source file, replacing any earlier one for
+     * the same key.
+     */
+    public Entry create(String key, String uploadId, String signature, File source) throws IOException
+    {
+        File dir = new File(config.getBackupJournalLocation());
+        if (!dir.exists() && !dir.mkdirs())
+            throw new IOException("Unable to create upload journal directory " + dir);
+        Entry entry = new Entry(fileFor(key), key, uploadId, signature, source);
+        Writer writer = new FileWriter(entry.file);
+        try
+        {
+            writer.write(key + SEP + uploadId + SEP + signature + SEP + source.getAbsolutePath() + "\n");
+        }
+        finally
+        {
+            IOUtils.closeQuietly(writer);
+        }
+        return entry;
+    }
+
+    public void remove(Entry entry)
+    {
+        if (!entry.file.delete() && entry.file.exists())
+            logger.warn("Unable to delete upload journal " + entry.file);
+    }
+
+    /**
+     * @return uploads nobody will come back to, their source file is gone or
+     *         they have not been touched for maxAgeMs
+     */
+    public List<Entry> listAbandoned(long maxAgeMs)
+    {
+        List<Entry> entries = Lists.newArrayList();
+        if (!isEnabled())
+            return entries;
+        File[] files = new File(config.getBackupJournalLocation()).listFiles();
+        if (files == null)
+            return entries;
+        long cutoff = System.currentTimeMillis() - maxAgeMs;
+        for (File file : files)
+        {
+            if (!file.getName().endsWith(SUFFIX))
+                continue;
+            try
+            {
+                Entry entry = load(file);
+                if (entry == null)
+                    file.delete();
+                else if (file.lastModified() <= cutoff || !entry.isResumable())
+                    entries.add(entry);
+            }
+            catch (IOException e)
+            {
+                logger.warn("Unable to read upload journal " + file, e);
+            }
+        }
+        return entries;
+    }
+
+    private File fileFor(String key)
+    {
+        return new File(config.getBackupJournalLocation(), SystemUtils.toHex(SystemUtils.md5(key.getBytes())) + SUFFIX);
+    }
+
+    private Entry load(File file) throws IOException
+    {
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try
+        {
+            String line = reader.readLine();
+            String[] header = line == null ? null : line.split(SEP);
+            // Entries written before the source was recorded have three fields.
+            if (header == null || header.length < 3 || header.length > 4)
+                return null;
+            Entry entry = new Entry(file, header[0], header[1], header[2], header.length == 4 ? new File(header[3]) : null);
+            while ((line = reader.readLine()) != null)
+            {
+                String[] part = line.split(SEP);
+                // A line cut short by a crash is simply not counted.
+                if (part.length != 2 || !StringUtils.isNumeric(part[0]) || part[0].length() == 0)
+                    continue;
+                entry.parts.put(Integer.parseInt(part[0]), part[1]);
+            }
+            return entry;
+        }
+        finally
+        {
+            IOUtils.closeQuietly(reader);
+        }
+    }
+
+    public static class Entry
+    {
+        private final File file;
+        private final String key;
+        private final String uploadId;
+        private final String signature;
+        private final File source;
+        private final Map<Integer, String> parts = new HashMap<Integer, String>();
+
+        private Entry(File file, String key, String uploadId, String signature, File source)
+        {
+            this.file = file;
+            this.key = key;
+            this.uploadId = uploadId;
+            this.signature = signature;
+            this.source = source;
+        }
+
+        public String getKey()
+        {
+            return key;
+        }
+
+        public String getUploadId()
+        {
+            return uploadId;
+        }
+
+        public String getSignature()
+        {
+            return signature;
+        }
+
+        /**
+         * @return false once the source file is gone, the upload can't be
+         *         finished then
+         */
+        public boolean isResumable()
+        {
+            return source == null || source.exists();
+        }
+
+        /**
+         * @return part numbers and ETags recorded as uploaded
+         */
+        public synchronized Map<Integer, String> getParts()
+        {
+            return Collections.unmodifiableMap(new HashMap<Integer, String>(parts));
+        }
+
+        /**
+         * Record an uploaded part, called from the part upload threads.
+         */
+        public synchronized void partDone(int partNo, String etag) throws IOException
+        {
+            Writer writer = new FileWriter(file, true);
+            try
+            {
+                writer.write(partNo + SEP + etag + "\n");
+            }
+            finally
+            {
+                IOUtils.closeQuietly(writer);
+            }
+            parts.put(partNo, etag);
+        }
+    }
+}
@@ -17,8 +17,14 @@ package com.netflix.priam.backup;
 
 import java.io.File;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
@@ -30,6 +36,7 @@ import com.google.inject.Provider;
 import com.google.inject.name.Named;
 import com.netflix.priam.IConfiguration;
 import com.netflix.priam.backup.AbstractBackupPath.BackupFileType;
+import com.netflix.priam.compress.CompressionCodecs;
 import com.netflix.priam.scheduler.Task;
 import com.netflix.priam.utils.RetryableCallable;
 
@@ -43,13 +50,28 @@ public abstract class AbstractBackup extends Task
     protected final Map<String, List<String>> FILTER_COLUMN_FAMILY = ImmutableMap.of("system", Arrays.asList("local", "peers", "LocationInfo")); 
     protected final Provider<AbstractBackupPath> pathFactory;
     protected final IBackupFileSystem fs;
+    protected static final Comparator<File> LARGEST_FIRST = new Comparator<File>()
+    {
+        @Override
+        public int compare(File f1, File f2)
+        {
+            long l1 = f1.length(), l2 = f2.length();
+            return l1 < l2 ? 1 : (l1 == l2 ? 0 : -1);
+        }
+    };
+
+    protected final TransferScheduler scheduler;
+    protected final UploadedFileIndex uploadedFiles;
 
     @Inject
-    public AbstractBackup(IConfiguration config,IBackupFileSystem fs,Provider<AbstractBackupPath> pathFactory)
+    public AbstractBackup(IConfiguration config,IBackupFileSystem fs,Provider<AbstractBackupPath> pathFactory, TransferScheduler scheduler,
+                          UploadedFileIndex uploadedFiles)
     {
         super(config);
         this.pathFactory = pathFactory;
         this.fs = fs;
+        this.scheduler = scheduler;
+        this.uploadedFiles = uploadedFiles;
     }
    
     /**
@@ -64,33 +86,102 @@ public abstract class AbstractBackup extends Task
      * @throws Exception
      */
     protected List<AbstractBackupPath> upload(File parent, final BackupFileType type) throws Exception
+    {
+        return upload(Arrays.asList(parent.listFiles()), type);
+    }
+
+    /**
+     * Upload the files concurrently through the transfer scheduler. Snapshot
+     * files go largest first, so one big SSTable does not start last and
+     * stretch the backup window on its own. Does not delete the file in case
+     * of error
+     */
+    protected List<AbstractBackupPath> upload(List<File> files, final BackupFileType type) throws Exception
+    {
+        List<File> ordered = Lists.newArrayList(files);
+        if (type == BackupFileType.SNAP)
+            Collections.sort(ordered, LARGEST_FIRST);
+
+        Set<File> compressed = CompressionCodecs.compressedDataFiles(ordered);
+        List<Future<AbstractBackupPath>> futures = Lists.newArrayList();
+        for (File file : ordered)
+            futures.add(submit(file, type, compressed.contains(file), null));
+        return await(ordered, futures);
+    }
+
+    /**
+     * Queue the upload of a file, blocks while the transfer scheduler is
+     * full. A snapshot file which was uploaded before is not uploaded again,
+     * the path is the one of the existing object. The path is added to
+     * completed, if given, as soon as the upload is done.
+     * 
+     * @param cassandraCompressed
+     *            Data file of an SSTable Cassandra compressed, see
+     *            {@link CompressionCodecs#compressedDataFiles(Collection)}
+     */
+    protected Future<AbstractBackupPath> submit(final File file, final BackupFileType type, final boolean cassandraCompressed,
+            final Collection<AbstractBackupPath> completed) throws Exception
+    {
+        logger.debug(String.format("Uploading file %s for backup", file.getCanonicalFile()));
+        return scheduler.submit(file.length(), new RetryableCallable<AbstractBackupPath>(3, RetryableCallable.DEFAULT_WAIT_TIME)
+        {
+            public AbstractBackupPath retriableCall() throws Exception
+            {
+                AbstractBackupPath bp = uploadFile(file, type, cassandraCompressed);
+                if (completed != null)
+                    completed.add(bp);
+                return bp;
+            }
+        });
+    }
+
+    private AbstractBackupPath uploadFile(File file, BackupFileType type, boolean cassandraCompressed) throws Exception
+    {
+        final AbstractBackupPath bp = pathFactory.get();
+        bp.parseLocal(file, type);
+        bp.setCassandraCompressed(cassandraCompressed);
+        String digest = uploadedFiles.digest(bp);
+        if (type == BackupFileType.SNAP)
+        {
+            String uploaded = uploadedFiles.find(bp, digest);
+            if (uploaded != null)
+            {
+                // Same SSTable as an object already uploaded, point at that one.
+                logger.debug("{} is already uploaded as {}", file, uploaded);
+                AbstractBackupPath existing = pathFactory.get();
+                existing.parseRemote(uploaded);
+                existing.setSize(bp.getSize());
+                existing.setStored(bp.getStoredSize(), bp.getCompression(), bp.getChecksum());
+                file.delete();
+                return existing;
+            }
+        }
+        upload(bp);
+        uploadedFiles.add(bp, digest);
+        file.delete();
+        return bp;
+    }
+
+    /**
+     * Wait for the uploads of the files, a failed upload is logged and left
+     * out of the returned paths.
+     */
+    protected List<AbstractBackupPath> await(List<File> files, List<Future<AbstractBackupPath>> futures) throws InterruptedException
     {
         final List<AbstractBackupPath> bps = Lists.newArrayList();
-        for (final File file : parent.listFiles())
+        for (int i = 0; i < futures.size(); i++)
         {
-            logger.debug(String.format("Uploading file %s for backup", file.getCanonicalFile()));
             try
             {
-                AbstractBackupPath abp = new RetryableCallable<AbstractBackupPath>(3, RetryableCallable.DEFAULT_WAIT_TIME)
-                {
-                    public AbstractBackupPath retriableCall() throws Exception
-                    {
-                        final AbstractBackupPath bp = pathFactory.get();
-                        bp.parseLocal(file, type);
-                        upload(bp);
-                        file.delete();
-                        return bp;
-                    }
-                }.call();
-
+                AbstractBackupPath abp = futures.get(i).get();
                 if(abp != null)
                     bps.add(abp);
                 
                 addToRemotePath(abp.getRemotePath());
             }
-            catch(Exception e)
+            catch(ExecutionException e)
             {
-                logger.error(String.format("Failed to upload local file %s. Ignoring to continue with rest of backup.", file), e);
+                logger.error(String.format("Failed to upload local file %s. Ignoring to continue with rest of backup.", files.get(i)), e.getCause());
             }
         }
         return bps;
@@ -21,6 +21,8 @@ import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.text.ParseException;
 import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Pattern;
 
 import com.google.inject.ImplementedBy;
@@ -31,7 +33,6 @@ import org.apache.commons.lang.StringUtils;
 
 import com.netflix.priam.IConfiguration;
 import com.netflix.priam.identity.InstanceIdentity;
-import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
@@ -42,6 +43,9 @@ public abstract class AbstractBackupPath implements Comparable<AbstractBackupPat
     private static final DateTimeFormatter DATE_FORMAT = DateTimeFormat.forPattern(FMT);
     public static final char PATH_SEP = File.separatorChar;
     public static final Pattern clPattern = Pattern.compile(".*CommitLog-(\\d{13}).log");
+    // Listings parse the same few dates over and over.
+    private static final ConcurrentMap<String, Long> DATES = new ConcurrentHashMap<String, Long>();
+    private static final int MAX_CACHED_DATES = 10000;
 
     public static enum BackupFileType
     {
@@ -58,12 +62,19 @@ public abstract class AbstractBackupPath implements Comparable<AbstractBackupPat
     protected String region;
     protected Date time;
     protected long size;
+    // Of the object as stored, known once uploaded or when read from a meta file.
+    protected long storedSize = -1;
+    protected String compression;
+    protected String checksum;
     protected boolean isCassandra1_0;
+    // Data of an SSTable Cassandra compressed, decided from its directory listing.
+    protected boolean cassandraCompressed;
 
 	protected final InstanceIdentity factory;
     protected final IConfiguration config;
     protected File backupFile;
     protected Date uploadedTs;
+    private RemoteKey remoteKey;
     
     public AbstractBackupPath(IConfiguration config, InstanceIdentity factory)
     {
@@ -73,12 +84,28 @@ public abstract class AbstractBackupPath implements Comparable<AbstractBackupPat
 
     public String formatDate(Date d)
     {
-        return new DateTime(d).toString(FMT);
+        return DATE_FORMAT.print(d.getTime());
     }
 
     public Date parseDate(String s)
     {
-        return DATE_FORMAT.parseDateTime(s).toDate();
+        Long millis = DATES.get(s);
+        if (millis == null)
+        {
+            millis = DATE_FORMAT.parseDateTime(s).getMillis();
+            if (DATES.size() >= MAX_CACHED_DATES)
+                DATES.clear();
+            DATES.put(s, millis);
+        }
+        return new Date(millis);
+    }
+
+    /**
+     * True if a parsed date string is what formatDate() returns for it.
+     */
+    protected static boolean isFormattedDate(String s)
+    {
+        return s.length() == FMT.length();
     }
 
     public InputStream localReader() throws IOException
@@ -167,15 +194,51 @@ public abstract class AbstractBackupPath implements Comparable<AbstractBackupPat
     @Override
     public boolean equals(Object obj)
     {
-        if (!obj.getClass().equals(this.getClass()))
+        if (obj == null || !obj.getClass().equals(this.getClass()))
             return false;
         return getRemotePath().equals(((AbstractBackupPath)obj).getRemotePath());
     }
 
+    @Override
+    public int hashCode()
+    {
+        return getRemotePath().hashCode();
+    }
+
+    /**
+     * Get remote prefix for this path object. It is built once, and again
+     * only after a field it is made of was changed.
+     */
+    public String getRemotePath()
+    {
+        RemoteKey key = remoteKey;
+        if (key == null || !key.isFor(this))
+        {
+            key = new RemoteKey(this, buildRemotePath());
+            remoteKey = key;
+        }
+        return key.path;
+    }
+
+    /**
+     * Remote path of the current fields.
+     */
+    protected abstract String buildRemotePath();
+
     /**
-     * Get remote prefix for this path object
+     * Use the parsed remote path, which is what buildRemotePath() would
+     * return for the fields it was parsed into.
      */
-    public abstract String getRemotePath();
+    protected void setRemotePath(String remotePath)
+    {
+        remoteKey = new RemoteKey(this, remotePath);
+    }
+
+    /**
+     * New path of the same kind, cheaper than a Provider when creating one
+     * per listed object.
+     */
+    public abstract AbstractBackupPath newPath();
 
     /**
      * Parses a fully constructed remote path
@@ -253,11 +316,52 @@ public abstract class AbstractBackupPath implements Comparable<AbstractBackupPat
         this.size = size;
     }
 
+    /**
+     * Size of the object as stored, -1 if not known
+     */
+    public long getStoredSize()
+    {
+        return storedSize;
+    }
+
+    /**
+     * Compression tag of the object as stored, null if not known
+     */
+    public String getCompression()
+    {
+        return compression;
+    }
+
+    /**
+     * ETag of the object, null if not known
+     */
+    public String getChecksum()
+    {
+        return checksum;
+    }
+
+    public void setStored(long storedSize, String compression, String checksum)
+    {
+        this.storedSize = storedSize;
+        this.compression = compression;
+        this.checksum = checksum;
+    }
+
     public File getBackupFile()
     {
         return backupFile;
     }
 
+    public boolean isCassandraCompressed()
+    {
+        return cassandraCompressed;
+    }
+
+    public void setCassandraCompressed(boolean cassandraCompressed)
+    {
+        this.cassandraCompressed = cassandraCompressed;
+    }
+
     public boolean isCassandra1_0() {
 		return isCassandra1_0;
 	}
@@ -286,6 +390,47 @@ public abstract class AbstractBackupPath implements Comparable<AbstractBackupPat
     		return this.uploadedTs;
     }
 
+    /**
+     * Remote path and the field values it was built from, fields are compared
+     * by reference.
+     */
+    private static class RemoteKey
+    {
+        private final String path;
+        private final String baseDir;
+        private final String region;
+        private final String clusterName;
+        private final String token;
+        private final long time;
+        private final BackupFileType type;
+        private final String keyspace;
+        private final String columnFamily;
+        private final String fileName;
+        private final boolean isCassandra1_0;
+
+        RemoteKey(AbstractBackupPath bp, String path)
+        {
+            this.path = path;
+            this.baseDir = bp.baseDir;
+            this.region = bp.region;
+            this.clusterName = bp.clusterName;
+            this.token = bp.token;
+            this.time = bp.time == null ? Long.MIN_VALUE : bp.time.getTime();
+            this.type = bp.type;
+            this.keyspace = bp.keyspace;
+            this.columnFamily = bp.columnFamily;
+            this.fileName = bp.fileName;
+            this.isCassandra1_0 = bp.isCassandra1_0;
+        }
+
+        boolean isFor(AbstractBackupPath bp)
+        {
+            return baseDir == bp.baseDir && region == bp.region && clusterName == bp.clusterName && token == bp.token
+                    && time == (bp.time == null ? Long.MIN_VALUE : bp.time.getTime()) && type == bp.type && keyspace == bp.keyspace
+                    && columnFamily == bp.columnFamily && fileName == bp.fileName && isCassandra1_0 == bp.isCassandra1_0;
+        }
+    }
+
     public static class RafInputStream extends InputStream
     {
         private RandomAccessFile raf;
@@ -17,50 +17,89 @@ package com.netflix.priam.backup;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.lang.management.ManagementFactory;
 import java.math.BigInteger;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.management.ObjectName;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
 import com.netflix.priam.IConfiguration;
 import com.netflix.priam.backup.AbstractBackupPath.BackupFileType;
 import com.netflix.priam.scheduler.NamedThreadPoolExecutor;
 import com.netflix.priam.scheduler.Task;
-import com.netflix.priam.utils.FifoQueue;
 import com.netflix.priam.utils.RetryableCallable;
 import com.netflix.priam.utils.Sleeper;
 
 public abstract class AbstractRestore extends Task
 {
     private static final Logger logger = LoggerFactory.getLogger(AbstractRestore.class);
-    private static final String SYSTEM_KEYSPACE = "system";
-    // keeps track of the last few download which was executed.
-    // TODO fix the magic number of 1000 => the idea of 80% of 1000 files limit per s3 query
-    protected static final FifoQueue<AbstractBackupPath> tracker = new FifoQueue<AbstractBackupPath>(800);
+    protected static final String SYSTEM_KEYSPACE = "system";
+    // Files queued per download thread, listing blocks beyond that.
+    private static final int QUEUED_PER_THREAD = 4;
     private AtomicInteger count = new AtomicInteger();
     protected final IBackupFileSystem fs;
     
     protected final IConfiguration config;
+    // Files already restored, shared by the snapshot and incremental restore.
+    protected final RestoreTracker tracker;
     protected final ThreadPoolExecutor executor;
+    // Downloads which are done, in the order they finished.
+    private final BlockingQueue<Future<Void>> completed = new LinkedBlockingQueue<Future<Void>>();
+    // Downloads scheduled since the last waitToComplete, only touched by the scheduling thread.
+    private final List<Future<Void>> downloads = Lists.newArrayList();
+    private final Set<String> scheduled = new HashSet<String>();
+    private volatile Throwable failure;
+    protected final RestoreProgress progress = new RestoreProgress();
 
     public static BigInteger restoreToken;
     
     protected final Sleeper sleeper;
     
-    public AbstractRestore(IConfiguration config, IBackupFileSystem fs, String name, Sleeper sleeper)
+    public AbstractRestore(IConfiguration config, IBackupFileSystem fs, String name, Sleeper sleeper, RestoreTracker tracker)
     {
         super(config);
         this.config = config;
         this.fs = fs;
         this.sleeper = sleeper;
-        executor = new NamedThreadPoolExecutor(config.getMaxBackupDownloadThreads(), name);
+        this.tracker = tracker;
+        int threads = config.getMaxBackupDownloadThreads();
+        executor = new NamedThreadPoolExecutor(threads, name, new LinkedBlockingQueue<Runnable>(threads * QUEUED_PER_THREAD));
         executor.allowCoreThreadTimeOut(true);
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(progress, new ObjectName("com.priam.backup:type=RestoreProgress,name=" + name));
+        }
+        catch (Exception e)
+        {
+            logger.warn("Unable to register restore progress of " + name, e);
+        }
     }
 
+    public RestoreProgress getProgress()
+    {
+        return progress;
+    }
+
+    /**
+     * Schedule the files of the given type, call waitToComplete() to wait for
+     * them.
+     */
     protected void download(Iterator<AbstractBackupPath> fsIterator, BackupFileType filter) throws Exception
     {
         while (fsIterator.hasNext())
@@ -71,14 +110,23 @@ public abstract class AbstractRestore extends Task
             
             if (temp.getType() == filter)
             {   
+                if (defer(temp))
+                    continue;
             	File localFileHandler = temp.newRestoreFile();
             	logger.debug("Created local file name: %s", localFileHandler.getAbsolutePath() + File.pathSeparator + localFileHandler.getName());
                 download(temp, localFileHandler);
             }   
         }
-        waitToComplete();
     }
     
+    /**
+     * Returns true if the file is to be restored later rather than now.
+     */
+    protected boolean defer(AbstractBackupPath path)
+    {
+        return false;
+    }
+
     private class BoundedList<E> extends LinkedList<E> {
 
         private final int limit;
@@ -120,40 +168,114 @@ public abstract class AbstractRestore extends Task
     }
 
     /**
-     * Download to specific location
+     * Schedule the download to specific location. Files already scheduled
+     * are skipped, throws the failure of an earlier download.
      */
     public void download(final AbstractBackupPath path, final File restoreLocation) throws Exception
     {
         if (config.getRestoreKeySpaces().size() != 0 && (!config.getRestoreKeySpaces().contains(path.keyspace) || path.keyspace.equals(SYSTEM_KEYSPACE)))
             return;
-        count.incrementAndGet();
-        executor.submit(new RetryableCallable<Integer>()
+        if (failure != null)
+            waitToComplete();
+        // Snapshots and incrementals can list the same SSTable.
+        if (!scheduled.add(restoreLocation.getAbsolutePath()))
+            return;
+        final long plannedSize = path.getSize();
+        progress.planned(path);
+        final RetryableCallable<Void> retryable = new RetryableCallable<Void>()
         {
             @Override
-            public Integer retriableCall() throws Exception
+            public Void retriableCall() throws Exception
             {
                 logger.info("Downloading file: " + path + " to: " + restoreLocation);
                 fs.download(path, new FileOutputStream(restoreLocation),restoreLocation.getAbsolutePath());
-                tracker.adjustAndAdd(path);
-                // TODO: fix me -> if there is exception the why hang?
-                return count.decrementAndGet();
+                tracker.add(path);
+                progress.completed(path, plannedSize);
+                return null;
             }
-        });
+        };
+        Download download = new Download(path, retryable);
+        count.incrementAndGet();
+        downloads.add(download);
+        executor.execute(download);
     }
     
-    protected void waitToComplete()
+    /**
+     * Wait for the scheduled downloads. The first download failing after all
+     * its retries cancels the others and is thrown.
+     */
+    protected void waitToComplete() throws BackupRestoreException
     {
-        while (count.get() != 0)
+        try
         {
-            try
+            for (int i = 0; i < downloads.size(); i++)
             {
-                sleeper.sleep(1000);
+                try
+                {
+                    completed.take().get();
+                }
+                catch (ExecutionException e)
+                {
+                    cancelAll();
+                    Throwable cause = e.getCause();
+                    throw new BackupRestoreException("Restore failed: " + cause.getMessage(), cause instanceof Exception ? (Exception) cause : e);
+                }
+                catch (InterruptedException e)
+                {
+                    cancelAll();
+                    Thread.currentThread().interrupt();
+                    throw new BackupRestoreException("Interrupted while restoring", e);
+                }
             }
-            catch (InterruptedException e)
+        }
+        finally
+        {
+            downloads.clear();
+            scheduled.clear();
+            failure = null;
+            progress.finish();
+        }
+    }
+
+    private void cancelAll()
+    {
+        for (Future<Void> download : downloads)
+            download.cancel(true);
+        // Cancelled downloads are queued as completed, drop them before the next batch.
+        completed.clear();
+    }
+
+    /**
+     * Counts itself out and queues itself once done, however it ended.
+     */
+    private class Download extends FutureTask<Void>
+    {
+        private final AbstractBackupPath path;
+
+        Download(AbstractBackupPath path, Callable<Void> callable)
+        {
+            super(callable);
+            this.path = path;
+        }
+
+        @Override
+        protected void setException(Throwable t)
+        {
+            // Cancelled downloads fail too, they are not what went wrong.
+            if (!isCancelled())
             {
-                logger.error("Interrupted: ", e);
-                Thread.currentThread().interrupt();
+                logger.error("Failed to download " + path.getRemotePath(), t);
+                progress.failed(path);
+                failure = t;
             }
+            super.setException(t);
+        }
+
+        @Override
+        protected void done()
+        {
+            count.decrementAndGet();
+            completed.add(this);
         }
     }
     
@@ -0,0 +1,384 @@
+/**
+ * Copyright 2013 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.priam.backup;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.netflix.priam.IConfiguration;
+import com.netflix.priam.backup.AbstractBackupPath.BackupFileType;
+
+/**
+ * Persistent catalog of the backup objects uploaded by this node, so its
+ * backups are listed from memory instead of paging through the bucket.
+ *
+ * Objects are keyed by bucket and remote path. A node prefix (bucket up to
+ * the token) is only served from the catalog once it was rebuilt from a
+ * listing of the bucket by this process, objects may have been uploaded
+ * without the catalog before. Uploads are appended to the file as they
+ * complete, so what is known of the stored objects survives a restart.
+ * Objects past the retention period expire in S3 and are dropped when the
+ * catalog is compacted, without a retention period the catalog holds the
+ * configured number of days.
+ */
+@Singleton
+public class BackupCatalog
+{
+    private static final Logger logger = LoggerFactory.getLogger(BackupCatalog.class);
+    private static final String SEP = "\t";
+    private static final String NODE = "node";
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private final IConfiguration config;
+    private final Provider<AbstractBackupPath> pathProvider;
+    private final TreeMap<String, Entry> entries = new TreeMap<String, Entry>();
+    // Node prefixes the catalog holds every object of, from the time mapped to.
+    private final Map<String, Long> complete = Maps.newHashMap();
+    private long added = 0;
+    private boolean loaded = false;
+
+    @Inject
+    public BackupCatalog(IConfiguration config, Provider<AbstractBackupPath> pathProvider)
+    {
+        this.config = config;
+        this.pathProvider = pathProvider;
+    }
+
+    public boolean isEnabled()
+    {
+        return StringUtils.isNotBlank(config.getBackupCatalogLocation());
+    }
+
+    /**
+     * Record an uploaded object.
+     * 
+     * @param size
+     *            Size of the object as stored
+     * @param codec
+     *            Compression tag of the object
+     * @param checksum
+     *            ETag of the object
+     */
+    public synchronized void add(String bucket, AbstractBackupPath path, long size, String codec, String checksum) throws IOException
+    {
+        if (!isEnabled())
+            return;
+        load();
+        Entry entry = new Entry(bucket + AbstractBackupPath.PATH_SEP + path.getRemotePath(), path.getType(), path.getKeyspace(), path.getColumnFamily(),
+                path.getTime().getTime(), size, codec, checksum);
+        entry.added = ++added;
+        append(entry.toLine());
+        entries.put(entry.location, entry);
+    }
+
+    /**
+     * @return true if every object under the node prefix from the start on is
+     *         in the catalog
+     */
+    public synchronized boolean isComplete(String node, Date start) throws IOException
+    {
+        if (!isEnabled())
+            return false;
+        load();
+        Long from = complete.get(node);
+        return from != null && start.getTime() >= from;
+    }
+
+    /**
+     * @return Time of the oldest objects the catalog holds
+     */
+    public Date getHorizon()
+    {
+        int days = config.getBackupRetentionDays() > 0 ? config.getBackupRetentionDays() : config.getBackupCatalogHorizonDays();
+        return new Date(System.currentTimeMillis() - days * DAY);
+    }
+
+    /**
+     * Objects of the node in the time range, in the order they are listed by
+     * S3.
+     */
+    public List<AbstractBackupPath> list(String node, Date start, Date till) throws IOException
+    {
+        return list(node, start, till, null);
+    }
+
+    /**
+     * Objects of the node in the time range and of the type, all types if
+     * null.
+     */
+    public List<AbstractBackupPath> list(String node, Date start, Date till, BackupFileType type) throws IOException
+    {
+        AbstractBackupPath factory = pathProvider.get();
+        List<Entry> matched = Lists.newArrayList();
+        if (till.before(start))
+            return Lists.newArrayList();
+        synchronized (this)
+        {
+            load();
+            // Remote paths start with the time, the range only has to be cut at its ends.
+            for (Entry entry : entries.subMap(node + factory.formatDate(start), node + factory.formatDate(till) + Character.MAX_VALUE).values())
+            {
+                if ((type == null || entry.type == type) && isInRange(entry.time, start, till))
+                    matched.add(entry);
+            }
+        }
+        List<AbstractBackupPath> paths = Lists.newArrayListWithCapacity(matched.size());
+        for (Entry entry : matched)
+        {
+            AbstractBackupPath path = factory.newPath();
+            path.parseRemote(entry.location.substring(entry.location.indexOf(AbstractBackupPath.PATH_SEP) + 1));
+            path.setSize(entry.size);
+            // Uploaded entries know how the object is stored, no need to ask S3 before downloading it.
+            if (StringUtils.isNotEmpty(entry.codec))
+                path.setStored(entry.size, entry.codec, StringUtils.trimToNull(entry.checksum));
+            paths.add(path);
+        }
+        return paths;
+    }
+
+    /**
+     * Same range as a listing of the bucket, the start is included and the
+     * end is not.
+     */
+    private static boolean isInRange(long time, Date start, Date till)
+    {
+        return (time > start.getTime() && time < till.getTime()) || time == start.getTime();
+    }
+
+    /**
+     * Replace the objects of the node with a listing of the bucket, objects
+     * added while listing are kept. The node is served from the catalog from
+     * then on.
+     * 
+     * @param from
+     *            Time the listing starts at
+     */
+    public void rebuild(String node, Date from, Iterator<AbstractBackupPath> listing) throws IOException
+    {
+        if (!isEnabled())
+            return;
+        long since;
+        synchronized (this)
+        {
+            load();
+            since = added;
+        }
+        logger.info("Rebuilding backup catalog of " + node);
+        String bucket = node.substring(0, node.indexOf(AbstractBackupPath.PATH_SEP));
+        List<Entry> listed = Lists.newArrayList();
+        while (listing.hasNext())
+        {
+            AbstractBackupPath path = listing.next();
+            // Codec and ETag are not part of a listing.
+            listed.add(new Entry(bucket + AbstractBackupPath.PATH_SEP + path.getRemotePath(), path.getType(), path.getKeyspace(), path.getColumnFamily(),
+                    path.getTime().getTime(), path.getSize(), "", ""));
+        }
+        synchronized (this)
+        {
+            Set<String> locations = Sets.newHashSet();
+            for (Entry entry : listed)
+                locations.add(entry.location);
+            Iterator<Entry> it = entries.subMap(node, node + Character.MAX_VALUE).values().iterator();
+            while (it.hasNext())
+            {
+                Entry entry = it.next();
+                if (entry.added <= since && !locations.contains(entry.location))
+                    it.remove();
+            }
+            // Uploaded entries know more than listed ones.
+            for (Entry entry : listed)
+            {
+                if (!entries.containsKey(entry.location))
+                    entries.put(entry.location, entry);
+            }
+            complete.put(node, from.getTime());
+            write();
+        }
+        logger.info("Backup catalog of " + node + " rebuilt with " + listed.size() + " objects");
+    }
+
+    /**
+     * Forget the objects past the horizon and compact the catalog file.
+     */
+    public synchronized void compact() throws IOException
+    {
+        if (!isEnabled())
+            return;
+        load();
+        long cutoff = getHorizon().getTime();
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext())
+        {
+            if (it.next().time < cutoff)
+                it.remove();
+        }
+        for (Map.Entry<String, Long> node : complete.entrySet())
+            node.setValue(Math.max(node.getValue(), cutoff));
+        write();
+    }
+
+    /**
+     * @return Number of objects in the catalog
+     */
+    public synchronized int size() throws IOException
+    {
+        load();
+        return entries.size();
+    }
+
+    private File getFile()
+    {
+        return new File(config.getBackupCatalogLocation());
+    }
+
+    private void append(String line) throws IOException
+    {
+        Writer writer = new FileWriter(getFile(), true);
+        try
+        {
+            writer.write(line);
+        }
+        finally
+        {
+            IOUtils.closeQuietly(writer);
+        }
+    }
+
+    private void write() throws IOException
+    {
+        File file = getFile();
+        File tmp = new File(file.getPath() + ".tmp");
+        Writer writer = new FileWriter(tmp);
+        try
+        {
+            for (Entry entry : entries.values())
+                writer.write(entry.toLine());
+        }
+        finally
+        {
+            IOUtils.closeQuietly(writer);
+        }
+        FileUtils.deleteQuietly(file);
+        if (!tmp.renameTo(file))
+            throw new IOException("Unable to replace " + file);
+    }
+
+    private void load() throws IOException
+    {
+        if (loaded)
+            return;
+        loaded = true;
+        File file = getFile();
+        if (!file.exists())
+        {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (!parent.exists() && !parent.mkdirs())
+                throw new IOException("Unable to create " + parent);
+            return;
+        }
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                // Nodes were marked complete across restarts before.
+                if (line.startsWith(NODE + SEP))
+                    continue;
+                Entry entry = Entry.parse(line);
+                if (entry != null)
+                    entries.put(entry.location, entry);
+            }
+        }
+        finally
+        {
+            IOUtils.closeQuietly(reader);
+        }
+        logger.info("Loaded {} backup objects from {}", entries.size(), file);
+    }
+
+    private static class Entry
+    {
+        private final String location;
+        private final BackupFileType type;
+        private final String keyspace;
+        private final String columnFamily;
+        private final long time;
+        private final long size;
+        private final String codec;
+        private final String checksum;
+        // Order the entry was added in since the catalog was loaded, 0 if loaded or listed.
+        private long added;
+
+        Entry(String location, BackupFileType type, String keyspace, String columnFamily, long time, long size, String codec, String checksum)
+        {
+            this.location = location;
+            this.type = type;
+            this.keyspace = StringUtils.defaultString(keyspace);
+            this.columnFamily = StringUtils.defaultString(columnFamily);
+            this.time = time;
+            this.size = size;
+            this.codec = StringUtils.defaultString(codec);
+            this.checksum = StringUtils.defaultString(checksum);
+        }
+
+        String toLine()
+        {
+            return time + SEP + type + SEP + keyspace + SEP + columnFamily + SEP + size + SEP + codec + SEP + checksum + SEP + location + "\n";
+        }
+
+        /**
+         * @return null for a line which was cut short
+         */
+        static Entry parse(String line)
+        {
+            String[] fields = line.split(SEP);
+            if (fields.length != 8)
+                return null;
+            try
+            {
+                return new Entry(fields[7], BackupFileType.valueOf(fields[1]), fields[2], fields[3], Long.parseLong(fields[0]), Long.parseLong(fields[4]), fields[5], fields[6]);
+            }
+            catch (IllegalArgumentException e)
+            {
+                return null;
+            }
+        }
+    }
+}
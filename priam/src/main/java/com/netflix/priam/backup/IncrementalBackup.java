@@ -17,11 +17,13 @@ package com.netflix.priam.backup;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.Singleton;
@@ -44,9 +46,10 @@ public class IncrementalBackup extends AbstractBackup
     static List<IMessageObserver> observers = new ArrayList<IMessageObserver>();
 
     @Inject
-    public IncrementalBackup(IConfiguration config, @Named("backup")IBackupFileSystem fs, Provider<AbstractBackupPath> pathFactory)
+    public IncrementalBackup(IConfiguration config, @Named("backup")IBackupFileSystem fs, Provider<AbstractBackupPath> pathFactory, TransferScheduler scheduler,
+                             UploadedFileIndex uploadedFiles)
     {
-        super(config, fs, pathFactory);
+        super(config, fs, pathFactory, scheduler, uploadedFiles);
     }
     
     @Override
@@ -61,6 +64,8 @@ public class IncrementalBackup extends AbstractBackup
                     + config.getDataFileLocation());
         }
         logger.debug("Scanning for backup in: {}", dataDir.getAbsolutePath());
+        // Files of all column families are uploaded together, so a busy one does not hold up the rest.
+        List<File> files = Lists.newArrayList();
         for (File keyspaceDir : dataDir.listFiles())
         {
             if (keyspaceDir.isFile())
@@ -70,9 +75,10 @@ public class IncrementalBackup extends AbstractBackup
                 File backupDir = new File(columnFamilyDir, "backups");
                 if (!isValidBackupDir(keyspaceDir, columnFamilyDir, backupDir))
                     continue;
-                upload(backupDir, BackupFileType.SST);
+                files.addAll(Arrays.asList(backupDir.listFiles()));
             }
         }
+        upload(files, BackupFileType.SST);
      		
         	if(incrementalRemotePaths.size() > 0)
         	{
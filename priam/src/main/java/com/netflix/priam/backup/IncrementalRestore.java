@@ -69,9 +69,9 @@ public class IncrementalRestore extends AbstractRestore
     private PriamServer priamServer;
     
     @Inject
-    public IncrementalRestore(IConfiguration config, @Named("incr_restore")IBackupFileSystem fs, Sleeper sleeper)
+    public IncrementalRestore(IConfiguration config, @Named("incr_restore")IBackupFileSystem fs, Sleeper sleeper, RestoreTracker tracker)
     {
-        super(config, fs,JOBNAME, sleeper);
+        super(config, fs,JOBNAME, sleeper, tracker);
         this.restoreDir = new File(config.getDataFileLocation(), "restore_incremental");
     }
 
@@ -90,14 +90,23 @@ public class IncrementalRestore extends AbstractRestore
             priamServer.getId().getInstance().setToken(restoreToken.toString());
         }
 
-        Date start = tracker.first().time;
+        Date start = tracker.getWatermark();
+        if (start == null)
+        {
+            logger.info("Nothing restored yet, waiting for the snapshot restore");
+            return;
+        }
+        progress.start();
+        Date latest = start;
         Iterator<AbstractBackupPath> incrementals = fs.list(prefix, start, Calendar.getInstance().getTime());
         FileUtils.createDirectory(restoreDir); // create restore dir.
         while (incrementals.hasNext())
         {
             AbstractBackupPath temp = incrementals.next();
-            if (tracker.contains(temp) || start.compareTo(temp.time) >= 0)
+            if (temp.time.before(start) || tracker.contains(temp))
                 continue; // ignore the ones which where already downloaded.
+            if (temp.time.after(latest))
+                latest = temp.time;
             if (temp.getType() != BackupFileType.SST)
                 continue; // download SST's only.
             // skip System Keyspace, else you will run into concurrent schema issues.
@@ -115,12 +124,16 @@ public class IncrementalRestore extends AbstractRestore
             File columnFamilyDir = config.getTargetCFName() == null ? new File(keyspaceDir, temp.columnFamily) : new File(tokenDir, config.getTargetCFName());
             FileUtils.createDirectory(columnFamilyDir);
             logger.debug("*** Keyspace = "+keyspaceDir.getAbsolutePath()+ " Column Family = "+columnFamilyDir.getAbsolutePath()+" File = "+temp.getRemotePath());
+            // Only the local file is renamed, the remote path is what gets downloaded and tracked.
+            String fileName = temp.fileName;
             if(config.getTargetKSName() != null || config.getTargetCFName() != null)
-            	 	temp.fileName = renameIncrementalRestoreFile(temp.fileName);
-            download(temp, new File(columnFamilyDir, temp.fileName));
+            	 	fileName = renameIncrementalRestoreFile(fileName);
+            download(temp, new File(columnFamilyDir, fileName));
         }
         // wait for all the downloads in this batch to complete.
         waitToComplete();
+        // Files uploaded later in the same minute as the latest are listed again.
+        tracker.advance(latest);
         // stream the SST's in the dir
         for (File tokenDir : restoreDir.listFiles())
         {
@@ -15,18 +15,26 @@
  */
 package com.netflix.priam.backup;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,10 +49,23 @@ import com.netflix.priam.utils.RetryableCallable;
 /**
  * Class to create a meta data file with a list of snapshot files. Also list the
  * contents of a meta data file.
+ *
+ * The meta file is a JSON array with a line per snapshot file, so it is
+ * written and read a file at a time. Each file has its path below the token,
+ * its size, the size, compression and ETag of the object and the SSTable
+ * generation, a restore needs no request to S3 to plan and download it. Meta files
+ * written before are a single line array of remote paths.
  */
 public class MetaData
 {
     private static final Logger logger = LoggerFactory.getLogger(MetaData.class);
+    private static final String PATH = "path";
+    private static final String REMOTE_PATH = "remotePath";
+    private static final String SIZE = "size";
+    private static final String STORED_SIZE = "storedSize";
+    private static final String COMPRESSION = "compression";
+    private static final String CHECKSUM = "checksum";
+    private static final String GENERATION = "generation";
     private final Provider<AbstractBackupPath> pathFactory;
     static List<IMessageObserver> observers = new ArrayList<IMessageObserver>();
     private final List<String> metaRemotePaths = new ArrayList<String>();
@@ -58,25 +79,29 @@ public class MetaData
         this.fs = fs;
     }
 
-    @SuppressWarnings("unchecked")
     public void set(List<AbstractBackupPath> bps, String snapshotName) throws Exception
     {
         File metafile = createTmpMetaFile();
-        FileWriter fr = new FileWriter(metafile);
+        AbstractBackupPath backupfile = pathFactory.get();
+        backupfile.parseLocal(metafile, BackupFileType.META);
+        backupfile.time = backupfile.parseDate(snapshotName);
+        Writer writer = new BufferedWriter(new FileWriter(metafile));
         try
         {
-            JSONArray jsonObj = new JSONArray();
-            for (AbstractBackupPath filePath : bps)
-                jsonObj.add(filePath.getRemotePath());
-            fr.write(jsonObj.toJSONString());
+            String prefix = tokenPrefix(backupfile);
+            writer.write("[\n");
+            for (int i = 0; i < bps.size(); i++)
+            {
+                writer.write(toJSON(bps.get(i), prefix).toJSONString());
+                writer.write(i < bps.size() - 1 ? ",\n" : "\n");
+            }
+            writer.write("]\n");
         }
         finally
         {
-            IOUtils.closeQuietly(fr);
+            IOUtils.closeQuietly(writer);
         }
-        AbstractBackupPath backupfile = pathFactory.get();
-        backupfile.parseLocal(metafile, BackupFileType.META);
-        backupfile.time = backupfile.parseDate(snapshotName);
+        backupfile.setSize(metafile.length());
         try
         {
 			upload(backupfile);
@@ -97,24 +122,10 @@ public class MetaData
         List<AbstractBackupPath> files = Lists.newArrayList();
         try
         {
-            new RetryableCallable<Void>()
-            {
-                @Override
-                public Void retriableCall() throws Exception
-                {
-                    fs.download(meta, new FileOutputStream(meta.newRestoreFile()));
-                    return null;
-                }
-            }.call();
-
-            File file = meta.newRestoreFile();
-            JSONArray jsonObj = (JSONArray) new JSONParser().parse(new FileReader(file));
-            for (int i = 0; i < jsonObj.size(); i++)
-            {
-                AbstractBackupPath p = pathFactory.get();
-                p.parseRemote((String) jsonObj.get(i));
-                files.add(p);
-            }
+            fetch(meta);
+            Iterator<AbstractBackupPath> it = read(meta);
+            while (it.hasNext())
+                files.add(it.next());
         }
         catch (Exception ex)
         {
@@ -123,6 +134,84 @@ public class MetaData
         return files;
     }
 
+    /**
+     * Download the meta file to its restore location.
+     */
+    public void fetch(AbstractBackupPath meta) throws Exception
+    {
+        fetch(meta, meta.newRestoreFile());
+    }
+
+    /**
+     * Download the meta file to the given file.
+     */
+    public void fetch(final AbstractBackupPath meta, final File file) throws Exception
+    {
+        new RetryableCallable<Void>()
+        {
+            @Override
+            public Void retriableCall() throws Exception
+            {
+                fs.download(meta, new FileOutputStream(file));
+                return null;
+            }
+        }.call();
+    }
+
+    /**
+     * Files of a fetched meta file, read as they are iterated. The file is
+     * closed once the last one is returned.
+     */
+    public MetaFileIterator read(AbstractBackupPath meta) throws IOException
+    {
+        return read(meta, meta.newRestoreFile());
+    }
+
+    /**
+     * Files of the meta file fetched to the given file.
+     */
+    public MetaFileIterator read(AbstractBackupPath meta, File file) throws IOException
+    {
+        return new MetaFileIterator(meta, file);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject toJSON(AbstractBackupPath bp, String prefix)
+    {
+        JSONObject entry = new JSONObject();
+        String remotePath = bp.getRemotePath();
+        if (remotePath.startsWith(prefix))
+            entry.put(PATH, remotePath.substring(prefix.length()));
+        else
+            entry.put(REMOTE_PATH, remotePath);
+        if (bp.getSize() > 0)
+            entry.put(SIZE, bp.getSize());
+        if (bp.getStoredSize() >= 0)
+            entry.put(STORED_SIZE, bp.getStoredSize());
+        if (bp.getCompression() != null)
+            entry.put(COMPRESSION, bp.getCompression());
+        if (bp.getChecksum() != null)
+            entry.put(CHECKSUM, bp.getChecksum());
+        int generation = StagedSSTables.generation(bp.getFileName().split("-"));
+        if (generation >= 0)
+            entry.put(GENERATION, generation);
+        return entry;
+    }
+
+    /**
+     * Remote path up to and including the token, files of the meta file are
+     * listed below it.
+     */
+    private static String tokenPrefix(AbstractBackupPath meta)
+    {
+        StringBuilder buff = new StringBuilder();
+        buff.append(meta.getBaseDir()).append(AbstractBackupPath.PATH_SEP);
+        buff.append(meta.getRegion()).append(AbstractBackupPath.PATH_SEP);
+        buff.append(meta.getClusterName()).append(AbstractBackupPath.PATH_SEP);
+        buff.append(meta.getToken()).append(AbstractBackupPath.PATH_SEP);
+        return buff.toString();
+    }
+
     private void upload(final AbstractBackupPath bp) throws Exception
     {
         new RetryableCallable<Void>()
@@ -167,4 +256,113 @@ public class MetaData
 		metaRemotePaths.add(remotePath);
 	}
 
+    /**
+     * Reads a meta file a line (file) at a time, an old meta file is read
+     * whole.
+     */
+    public static class MetaFileIterator implements Iterator<AbstractBackupPath>, Closeable
+    {
+        private final AbstractBackupPath meta;
+        private final String prefix;
+        private final BufferedReader reader;
+        private Iterator<?> legacy;
+        private AbstractBackupPath next;
+
+        MetaFileIterator(AbstractBackupPath meta, File file) throws IOException
+        {
+            this.meta = meta;
+            this.prefix = tokenPrefix(meta);
+            this.reader = new BufferedReader(new FileReader(file));
+            try
+            {
+                String first = reader.readLine();
+                if (first != null && !first.trim().equals("["))
+                {
+                    // Written before a file got a line of its own.
+                    legacy = ((JSONArray) new JSONParser().parse(first + IOUtils.toString(reader))).iterator();
+                    reader.close();
+                }
+            }
+            catch (ParseException e)
+            {
+                reader.close();
+                throw new IOException("Invalid meta file " + file, e);
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            if (next == null)
+                next = readNext();
+            return next != null;
+        }
+
+        @Override
+        public AbstractBackupPath next()
+        {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            AbstractBackupPath path = next;
+            next = null;
+            return path;
+        }
+
+        private AbstractBackupPath readNext()
+        {
+            AbstractBackupPath path = meta.newPath();
+            if (legacy != null)
+            {
+                if (!legacy.hasNext())
+                    return null;
+                path.parseRemote((String) legacy.next());
+                return path;
+            }
+            try
+            {
+                String line = reader.readLine();
+                if (line != null)
+                    line = line.trim();
+                if (line == null || line.equals("]"))
+                {
+                    close();
+                    return null;
+                }
+                if (line.endsWith(","))
+                    line = line.substring(0, line.length() - 1);
+                JSONObject entry = (JSONObject) new JSONParser().parse(line);
+                // Only objects outside the token keep their full path.
+                path.parseRemote(entry.containsKey(PATH) ? prefix + entry.get(PATH) : (String) entry.get(REMOTE_PATH));
+                Long size = (Long) entry.get(SIZE);
+                if (size != null)
+                    path.setSize(size);
+                Long storedSize = (Long) entry.get(STORED_SIZE);
+                path.setStored(storedSize == null ? -1 : storedSize, (String) entry.get(COMPRESSION), (String) entry.get(CHECKSUM));
+                return path;
+            }
+            catch (IOException e)
+            {
+                close();
+                throw new RuntimeException("Unable to read meta file " + meta.getRemotePath(), e);
+            }
+            catch (ParseException e)
+            {
+                close();
+                throw new RuntimeException("Invalid meta file " + meta.getRemotePath(), e);
+            }
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close()
+        {
+            IOUtils.closeQuietly(reader);
+        }
+    }
+
 }
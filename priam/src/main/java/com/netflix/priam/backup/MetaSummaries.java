@@ -0,0 +1,168 @@
+/**
+ * Copyright 2013 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.priam.backup;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.priam.IConfiguration;
+import com.netflix.priam.scheduler.NamedThreadPoolExecutor;
+
+/**
+ * Number of files and bytes of meta files, as reported when listing
+ * snapshots. A meta file never changes once uploaded, so its summary is
+ * cached by its key and only the meta files not seen before are downloaded,
+ * several at a time.
+ */
+@Singleton
+public class MetaSummaries
+{
+    private static final Logger logger = LoggerFactory.getLogger(MetaSummaries.class);
+    private static final int MAX_SUMMARIES = 10000;
+
+    private final IConfiguration config;
+    private final MetaData metaData;
+    private final Cache<String, Summary> summaries = CacheBuilder.newBuilder().maximumSize(MAX_SUMMARIES).build();
+    private ExecutorService executor;
+
+    @Inject
+    public MetaSummaries(IConfiguration config, MetaData metaData)
+    {
+        this.config = config;
+        this.metaData = metaData;
+    }
+
+    /**
+     * Summaries of the meta files, a meta file that can not be read has none.
+     */
+    public Map<AbstractBackupPath, Summary> get(List<AbstractBackupPath> metas)
+    {
+        Map<AbstractBackupPath, Summary> result = Maps.newHashMap();
+        Map<AbstractBackupPath, Future<Summary>> pending = Maps.newHashMap();
+        for (final AbstractBackupPath meta : metas)
+        {
+            Summary summary = summaries.getIfPresent(key(meta));
+            if (summary != null)
+            {
+                result.put(meta, summary);
+                continue;
+            }
+            pending.put(meta, executor().submit(new Callable<Summary>()
+            {
+                @Override
+                public Summary call() throws Exception
+                {
+                    return summarize(meta);
+                }
+            }));
+        }
+        for (Map.Entry<AbstractBackupPath, Future<Summary>> entry : pending.entrySet())
+        {
+            try
+            {
+                Summary summary = entry.getValue().get();
+                summaries.put(key(entry.getKey()), summary);
+                result.put(entry.getKey(), summary);
+            }
+            catch (ExecutionException e)
+            {
+                logger.error("Unable to read meta file " + entry.getKey().getRemotePath(), e.getCause());
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return result;
+    }
+
+    private Summary summarize(AbstractBackupPath meta) throws Exception
+    {
+        File file = File.createTempFile("meta", ".json");
+        try
+        {
+            metaData.fetch(meta, file);
+            Summary summary = new Summary();
+            Iterator<AbstractBackupPath> it = metaData.read(meta, file);
+            while (it.hasNext())
+            {
+                long size = it.next().getSize();
+                summary.files++;
+                // Older meta files do not list sizes, a partial total would mislead.
+                if (size <= 0 || summary.bytes < 0)
+                    summary.bytes = -1;
+                else
+                    summary.bytes += size;
+            }
+            return summary;
+        }
+        finally
+        {
+            FileUtils.deleteQuietly(file);
+        }
+    }
+
+    private String key(AbstractBackupPath meta)
+    {
+        return config.getBackupPrefix() + AbstractBackupPath.PATH_SEP + meta.getRemotePath();
+    }
+
+    private synchronized ExecutorService executor()
+    {
+        if (executor == null)
+            executor = new NamedThreadPoolExecutor(config.getBackupListThreads(), "MetaSummaries");
+        return executor;
+    }
+
+    /**
+     * Files listed in a meta file and their total size before compression.
+     */
+    public static class Summary
+    {
+        private long files;
+        private long bytes;
+
+        public long getFiles()
+        {
+            return files;
+        }
+
+        /**
+         * Total size of the files as on disk, before compression, or -1 if
+         * the size of any of them is unknown.
+         */
+        public long getBytes()
+        {
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright 2013 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.priam.backup;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOUtils;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.netflix.priam.utils.RetryableCallable;
+
+/**
+ * Reads an object by fetching several byte ranges of it at the same time and
+ * handing them out in order. Each range is retried on its own, a failed read
+ * only costs that range.
+ *
+ * At most the given number of ranges is in flight or waiting to be read, which
+ * bounds the memory used to ranges * rangeSize.
+ */
+public class ParallelRangeInputStream extends InputStream
+{
+    private final AmazonS3 s3Client;
+    private final String bucketName;
+    private final AbstractBackupPath path;
+    private final ExecutorService executor;
+    private final int ranges;
+    private final long rangeSize;
+    private final LinkedList<Future<byte[]>> pending = new LinkedList<Future<byte[]>>();
+    private long nextOffset;
+    private byte[] current;
+    private int position;
+
+    /**
+     * @param path
+     *            path of the object, its size has to be set
+     */
+    public ParallelRangeInputStream(AmazonS3 s3Client, String bucketName, AbstractBackupPath path, ExecutorService executor, int ranges, long rangeSize)
+    {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.path = path;
+        this.executor = executor;
+        this.ranges = ranges;
+        this.rangeSize = rangeSize;
+        fill();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (len == 0)
+            return 0;
+        if (!next())
+            return -1;
+        int count = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if (!next())
+            return -1;
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        for (Future<byte[]> future : pending)
+            future.cancel(true);
+        pending.clear();
+        current = null;
+    }
+
+    /**
+     * @return false at the end of the object
+     */
+    private boolean next() throws IOException
+    {
+        while (current == null || position == current.length)
+        {
+            if (pending.isEmpty())
+                return false;
+            try
+            {
+                current = pending.removeFirst().get();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading " + path.getRemotePath(), e);
+            }
+            catch (ExecutionException e)
+            {
+                close();
+                throw new IOException(e.getCause().getMessage(), e.getCause());
+            }
+            position = 0;
+            fill();
+        }
+        return true;
+    }
+
+    private void fill()
+    {
+        while (pending.size() < ranges && nextOffset < path.getStoredSize())
+        {
+            long end = Math.min(nextOffset + rangeSize, path.getStoredSize());
+            pending.add(executor.submit(new RangeRead(nextOffset, end)));
+            nextOffset = end;
+        }
+    }
+
+    private class RangeRead extends RetryableCallable<byte[]>
+    {
+        private final long start;
+        private final long end;
+
+        RangeRead(long start, long end)
+        {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public byte[] retriableCall() throws Exception
+        {
+            GetObjectRequest req = new GetObjectRequest(bucketName, path.getRemotePath());
+            // The range is inclusive
+            req.setRange(start, end - 1);
+            byte[] data = new byte[(int) (end - start)];
+            S3ObjectInputStream is = null;
+            try
+            {
+                is = s3Client.getObject(req).getObjectContent();
+                int read = 0;
+                while (read < data.length)
+                {
+                    int count = is.read(data, read, data.length - read);
+                    if (count < 0)
+                        throw new EOFException(String.format("Range %d-%d of %s ended after %d bytes", start, end - 1, path.getRemotePath(), read));
+                    read += count;
+                }
+                return data;
+            }
+            catch (Exception e)
+            {
+                throw new IOException(String.format("failed to read offset range %d-%d of file %s whose size is %d", start, end - 1,
+                        path.getRemotePath(), path.getStoredSize()), e);
+            }
+            finally
+            {
+                IOUtils.closeQuietly(is);
+            }
+        }
+    }
+}
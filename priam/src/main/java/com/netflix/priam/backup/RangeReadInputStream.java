@@ -15,6 +15,7 @@
  */
 package com.netflix.priam.backup;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -28,9 +29,10 @@ import com.amazonaws.services.s3.model.S3ObjectInputStream;
 import com.netflix.priam.utils.RetryableCallable;
 
 /**
- * An implementation of InputStream that will request explicit byte ranges of the target file.
- * This will make it easier to retry a failed read - which is important if we don't want to \
- * throw away a 100Gb file and restart after reading 99Gb and failing.
+ * An implementation of InputStream that streams the target file from a single
+ * GET and reopens it at the current offset when the read fails. This will
+ * make it easier to retry a failed read - which is important if we don't want
+ * to throw away a 100Gb file and restart after reading 99Gb and failing.
  */
 public class RangeReadInputStream extends InputStream
 {
@@ -40,6 +42,7 @@ public class RangeReadInputStream extends InputStream
     private final String bucketName;
     private final AbstractBackupPath path;
     private long offset;
+    private S3ObjectInputStream is;
 
     public RangeReadInputStream(AmazonS3 s3Client, String bucketName, AbstractBackupPath path)
     {
@@ -50,69 +53,88 @@ public class RangeReadInputStream extends InputStream
 
     public int read(final byte b[], final int off, final int len) throws IOException
     {
-//        logger.info(String.format("incoming buf req's size = %d, off = %d, len to read = %d, on file size %d, cur offset = %d path = %s",
-//                b.length, off, len, path.getSize(), offset, path.getRemotePath()));
-        final long fileSize = path.getSize();
-        if(fileSize > 0 && offset >= fileSize)
+        final long fileSize = path.getStoredSize();
+        if (offset >= fileSize)
             return -1;
-        final long firstByte = offset;
-        long curEndByte = firstByte + len;
-        curEndByte = curEndByte <= fileSize ? curEndByte : fileSize;
-
-        //need to subtract one as the call to getRange is inclusive
-        //meaning if you want to download the first 10 bytes of a file, request bytes 0..9
-        final long endByte = curEndByte - 1;
-//        logger.info(String.format("start byte = %d, end byte = %d", firstByte, endByte));
+        if (len == 0)
+            return 0;
         try
         {
             Integer cnt = new RetryableCallable<Integer>()
             {
                 public Integer retriableCall() throws IOException
                 {
-                    GetObjectRequest req = new GetObjectRequest(bucketName, path.getRemotePath());
-                    req.setRange(firstByte, endByte);
-                    S3ObjectInputStream is = null;
                     try
                     {
-                        is = s3Client.getObject(req).getObjectContent();
-
-                        byte[] readBuf = new byte[4092];
-                        int rCnt;
-                        int readTotal = 0;
-                        int incomingOffet = off;
-                        while ((rCnt = is.read(readBuf, 0, readBuf.length)) >= 0)
+                        if (is == null)
                         {
-                            System.arraycopy(readBuf, 0, b, incomingOffet, rCnt);
-                            readTotal += rCnt;
-                            incomingOffet += rCnt;
-//                            logger.info("    local read cnt = " + rCnt + "Current Thread Name = "+Thread.currentThread().getName());
+                            GetObjectRequest req = new GetObjectRequest(bucketName, path.getRemotePath());
+                            // getRange is inclusive
+                            req.setRange(offset, fileSize - 1);
+                            is = s3Client.getObject(req).getObjectContent();
                         }
-                        if(readTotal == 0 && rCnt == -1)
-                        		return -1;
-                        offset += readTotal;
-                        return Integer.valueOf(readTotal);
+                        int rCnt = is.read(b, off, len);
+                        if (rCnt < 0)
+                            throw new EOFException(String.format("stream ended at offset %d of %d", offset, fileSize));
+                        offset += rCnt;
+                        return Integer.valueOf(rCnt);
                     }
-                    finally
+                    catch (IOException e)
                     {
-                        IOUtils.closeQuietly(is);
+                        // The next attempt reopens the object at the current offset
+                        abort();
+                        throw e;
                     }
                 }
             }.call();
-//            logger.info("read cnt = " + cnt);
+            if (offset >= fileSize)
+                close();
             return cnt.intValue();
         }
         catch(Exception e)
         {
-            String msg = String.format("failed to read offset range %d-%d of file %s whose size is %d",
-                    firstByte, endByte, path.getRemotePath(), path.getSize());
+            String msg = String.format("failed to read from offset %d of file %s whose size is %d",
+                    offset, path.getRemotePath(), path.getStoredSize());
             throw new IOException(msg, e);
         }
     }
 
     public int read() throws IOException
     {
-        logger.warn("read() called RangeReadInputStream");
-        return -1;
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    /**
+     * Drops the connection if the object was not read to the end, instead of
+     * draining the rest of it.
+     */
+    public void close() throws IOException
+    {
+        if (is == null)
+            return;
+        if (offset < path.getStoredSize())
+            abort();
+        else
+        {
+            IOUtils.closeQuietly(is);
+            is = null;
+        }
     }
-}
 
+    private void abort()
+    {
+        if (is == null)
+            return;
+        try
+        {
+            is.abort();
+        }
+        catch (Exception e)
+        {
+            logger.debug("Failed to abort read of " + path.getRemotePath(), e);
+        }
+        IOUtils.closeQuietly(is);
+        is = null;
+    }
+}
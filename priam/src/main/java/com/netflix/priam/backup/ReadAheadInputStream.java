@@ -0,0 +1,184 @@
+/**
+ * Copyright 2013 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.priam.backup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Reads the wrapped stream ahead on a thread of its own, so the reader of
+ * this stream doesn't wait for the network. Data is passed on in a bounded
+ * number of reused buffers.
+ */
+public class ReadAheadInputStream extends InputStream
+{
+    // Marks the end of the stream, or a failure if error is set.
+    private static final byte[] END = new byte[0];
+
+    private final InputStream in;
+    private final int bufferSize;
+    private final int buffers;
+    private final BlockingQueue<byte[]> free;
+    private final BlockingQueue<byte[]> full;
+    private final BlockingQueue<Integer> lengths;
+    private final Future<?> reader;
+    private volatile IOException error;
+    private byte[] current;
+    private int length;
+    private int position;
+    private boolean closed;
+
+    public ReadAheadInputStream(InputStream in, ExecutorService executor, int bufferSize, int buffers)
+    {
+        this.in = in;
+        this.bufferSize = bufferSize;
+        this.buffers = buffers;
+        this.free = new ArrayBlockingQueue<byte[]>(buffers);
+        this.full = new ArrayBlockingQueue<byte[]>(buffers + 1);
+        this.lengths = new ArrayBlockingQueue<Integer>(buffers + 1);
+        this.reader = executor.submit(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                readAhead();
+            }
+        });
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (len == 0)
+            return 0;
+        if (!next())
+            return -1;
+        int count = Math.min(len, length - position);
+        System.arraycopy(current, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if (!next())
+            return -1;
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (closed)
+            return;
+        closed = true;
+        reader.cancel(true);
+        IOUtils.closeQuietly(in);
+    }
+
+    /**
+     * @return false at the end of the stream
+     */
+    private boolean next() throws IOException
+    {
+        if (closed)
+            throw new IOException("Stream closed");
+        while (current == null || position == length)
+        {
+            if (current == END)
+                return false;
+            if (current != null)
+                free.offer(current);
+            try
+            {
+                current = full.take();
+                length = lengths.take();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading ahead");
+            }
+            position = 0;
+            if (current == END && error != null)
+                throw error;
+        }
+        return true;
+    }
+
+    private void readAhead()
+    {
+        int allocated = 0;
+        try
+        {
+            while (true)
+            {
+                byte[] buf = free.poll();
+                if (buf == null && allocated < buffers)
+                {
+                    buf = new byte[bufferSize];
+                    allocated++;
+                }
+                else if (buf == null)
+                    buf = free.take();
+                int read = 0;
+                int count = 0;
+                while (read < buf.length && (count = in.read(buf, read, buf.length - read)) >= 0)
+                    read += count;
+                if (read > 0)
+                    hand(buf, read);
+                if (count < 0)
+                    break;
+            }
+        }
+        catch (InterruptedException e)
+        {
+            // Closed by the reader
+            return;
+        }
+        catch (IOException e)
+        {
+            error = e;
+        }
+        catch (RuntimeException e)
+        {
+            error = new IOException(e);
+        }
+        try
+        {
+            hand(END, 0);
+        }
+        catch (InterruptedException e)
+        {
+            // Closed by the reader
+        }
+    }
+
+    private void hand(byte[] buf, int len) throws InterruptedException
+    {
+        // Lengths first, the reader takes the buffer before its length.
+        lengths.put(len);
+        full.put(buf);
+    }
+}
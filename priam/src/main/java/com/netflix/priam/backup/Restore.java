@@ -15,11 +15,14 @@
  */
 package com.netflix.priam.backup;
 
+import java.io.File;
 import java.math.BigInteger;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.StringUtils;
@@ -38,6 +41,8 @@ import com.netflix.priam.backup.AbstractBackupPath.BackupFileType;
 import com.netflix.priam.identity.InstanceIdentity;
 import com.netflix.priam.scheduler.SimpleTimer;
 import com.netflix.priam.scheduler.TaskTimer;
+import com.netflix.priam.utils.CassandraMonitor;
+import com.netflix.priam.utils.JMXNodeTool;
 import com.netflix.priam.utils.RetryableCallable;
 import com.netflix.priam.utils.Sleeper;
 import com.netflix.priam.utils.SystemUtils;
@@ -51,6 +56,9 @@ public class Restore extends AbstractRestore
 {
     public static final String JOBNAME = "AUTO_RESTORE_JOB";
     private static final Logger logger = LoggerFactory.getLogger(Restore.class);
+    // Under the data directory, like the incremental restore location.
+    private static final String STAGING_DIR = "restore_staging";
+    private static final long WAIT_TIME_MS = 10 * 1000;
     private final ICassandraProcess cassProcess;
     @Inject
     private Provider<AbstractBackupPath> pathProvider;
@@ -60,17 +68,20 @@ public class Restore extends AbstractRestore
     private MetaData metaData;
     @Inject
     private InstanceIdentity id;
+    // Files left for after Cassandra is started, only set while restoring.
+    private List<AbstractBackupPath> deferTo;
 
     @Inject
-    public Restore(IConfiguration config, @Named("backup")IBackupFileSystem fs,Sleeper sleeper, ICassandraProcess cassProcess)
+    public Restore(IConfiguration config, @Named("backup")IBackupFileSystem fs,Sleeper sleeper, ICassandraProcess cassProcess, RestoreTracker tracker)
     {
-        super(config, fs, JOBNAME, sleeper);
+        super(config, fs, JOBNAME, sleeper, tracker);
         this.cassProcess = cassProcess;
     }
 
     @Override
     public void execute() throws Exception
     {
+        final List<AbstractBackupPath> deferred = Lists.newArrayList();
         if (isRestoreEnabled(config))
         {
             logger.info("Starting restore for " + config.getRestoreSnapshot());
@@ -91,7 +102,8 @@ public class Restore extends AbstractRestore
                     public Void retriableCall() throws Exception
                     {
                         logger.info("Attempting restore");
-                        restore(startTime, endTime);
+                        deferred.clear();
+                        restore(startTime, endTime, isStagedRestore(config) ? deferred : null);
                         logger.info("Restore completed");
                         // Wait for other server init to complete
                         sleeper.sleep(30000);
@@ -102,9 +114,83 @@ public class Restore extends AbstractRestore
             finally
             {
                 id.getInstance().setToken(origToken);
+                tokenSelector.clear();
             }
         }
         cassProcess.start(true);
+        if (!deferred.isEmpty())
+            restoreDeferred(deferred);
+    }
+
+    /**
+     * Restore backup data for the specified time range. If a list is given
+     * only system and the priority keyspaces are downloaded, the files of the
+     * other keyspaces are added to it.
+     */
+    private void restore(Date startTime, Date endTime, List<AbstractBackupPath> deferred) throws Exception
+    {
+        this.deferTo = deferred;
+        try
+        {
+            restore(startTime, endTime);
+        }
+        finally
+        {
+            this.deferTo = null;
+        }
+    }
+
+    @Override
+    protected boolean defer(AbstractBackupPath path)
+    {
+        if (deferTo == null || (path.type != BackupFileType.SNAP && path.type != BackupFileType.SST))
+            return false;
+        if (path.keyspace.startsWith(SYSTEM_KEYSPACE) || config.getRestorePriorityKeySpaces().contains(path.keyspace))
+            return false;
+        deferTo.add(path);
+        return true;
+    }
+
+    /**
+     * Download the deferred files keyspace by keyspace into the staging
+     * directory, and load each keyspace into the running Cassandra once it is
+     * complete.
+     */
+    private void restoreDeferred(List<AbstractBackupPath> deferred) throws Exception
+    {
+        Map<String, List<AbstractBackupPath>> keyspaces = new TreeMap<String, List<AbstractBackupPath>>();
+        for (AbstractBackupPath path : deferred)
+        {
+            if (!keyspaces.containsKey(path.keyspace))
+                keyspaces.put(path.keyspace, Lists.<AbstractBackupPath> newArrayList());
+            keyspaces.get(path.keyspace).add(path);
+        }
+        logger.info("Restoring keyspaces " + keyspaces.keySet() + " while Cassandra runs");
+        StagedSSTables staging = new StagedSSTables(new File(config.getDataFileLocation()), new File(config.getDataFileLocation(), STAGING_DIR));
+        for (Map.Entry<String, List<AbstractBackupPath>> entry : keyspaces.entrySet())
+        {
+            final String keyspace = entry.getKey();
+            progress.start();
+            for (AbstractBackupPath path : entry.getValue())
+                download(path, staging.stagingFile(path));
+            waitToComplete();
+
+            while (!CassandraMonitor.isCassadraStarted())
+            {
+                logger.debug("Cassandra is not yet started, keyspace " + keyspace + " will be loaded after [" + WAIT_TIME_MS / 1000 + "] secs ...");
+                sleeper.sleep(WAIT_TIME_MS);
+            }
+            staging.moveKeyspace(keyspace);
+            new RetryableCallable<Void>()
+            {
+                public Void retriableCall() throws Exception
+                {
+                    JMXNodeTool.instance(config).refresh(Lists.newArrayList(keyspace));
+                    return null;
+                }
+            }.call();
+            logger.info("Keyspace " + keyspace + " restored");
+        }
     }
 
     /**
@@ -112,12 +198,14 @@ public class Restore extends AbstractRestore
      */
     public void restore(Date startTime, Date endTime) throws Exception
     {
+        progress.start();
         // Stop cassandra if its running and restoring all keyspaces
         if (config.getRestoreKeySpaces().size() == 0)
             cassProcess.stop();
 
         // Cleanup local data
         SystemUtils.cleanupDir(config.getDataFileLocation(), config.getRestoreKeySpaces());
+        tracker.clear();
 
         // Try and read the Meta file.
         List<AbstractBackupPath> metas = Lists.newArrayList();
@@ -147,9 +235,29 @@ public class Restore extends AbstractRestore
         AbstractBackupPath meta = Iterators.getLast(metas.iterator());
         logger.info("Meta file for restore " + meta.getRemotePath());
 
-        // Download snapshot which is listed in the meta file.
-        List<AbstractBackupPath> snapshots = metaData.get(meta);
-        download(snapshots.iterator(), BackupFileType.SNAP);
+        // All files are scheduled on the same download pool, incrementals and
+        // commit logs are fetched while the snapshot is still downloading.
+        // Download snapshot which is listed in the meta file, sizes are known up front.
+        metaData.fetch(meta);
+        MetaData.MetaFileIterator snapshots = metaData.read(meta);
+        try
+        {
+            download(snapshots, BackupFileType.SNAP);
+        }
+        finally
+        {
+            snapshots.close();
+        }
+        // SSTables the snapshot shares with incremental backups are listed with their SST path.
+        snapshots = metaData.read(meta);
+        try
+        {
+            download(snapshots, BackupFileType.SST);
+        }
+        finally
+        {
+            snapshots.close();
+        }
 
         logger.info("Downloading incrementals");
         // Download incrementals (SST).
@@ -168,6 +276,10 @@ public class Restore extends AbstractRestore
         	Iterator<AbstractBackupPath> commitLogPathIterator = fs.list(prefix, meta.time, endTime); 
         	download(commitLogPathIterator, BackupFileType.CL, config.maxCommitLogsRestore());       	
         }
+
+        waitToComplete();
+        // Incrementals from the snapshot on are restored, later ones are left to the incremental restore.
+        tracker.advance(meta.time);
     }
 
     public static TaskTimer getTimer()
@@ -186,6 +298,15 @@ public class Restore extends AbstractRestore
         return (executor == null) ? 0 : executor.getActiveCount();
     }
 
+    /**
+     * Staged restores start Cassandra once the priority keyspaces are
+     * restored, only when restoring all keyspaces.
+     */
+    public static boolean isStagedRestore(IConfiguration conf)
+    {
+        return conf.getRestoreKeySpaces().isEmpty() && !conf.getRestorePriorityKeySpaces().isEmpty();
+    }
+
     public static boolean isRestoreEnabled(IConfiguration conf)
     {
         boolean isRestoreMode = StringUtils.isNotBlank(conf.getRestoreSnapshot());
@@ -0,0 +1,301 @@
+/**
+ * Copyright 2013 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.priam.backup;
+
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Files and bytes planned and downloaded by a restore, in total, per file
+ * type and per keyspace.
+ *
+ * Snapshot files listed in the meta file have no size until they are
+ * downloaded, the ETA counts them at the average size of the files done so
+ * far.
+ */
+public class RestoreProgress implements RestoreProgressMBean
+{
+    private static final long RATE_WINDOW = 60 * 1000L;
+    private static final double MB = 1024 * 1024;
+
+    private final Counter total = new Counter();
+    private final Map<String, Counter> phases = new TreeMap<String, Counter>();
+    private final Map<String, Counter> keyspaces = new TreeMap<String, Counter>();
+    // Completed bytes over time, to work out the current throughput.
+    private final LinkedList<long[]> samples = new LinkedList<long[]>();
+    private boolean running;
+    private long started;
+
+    /**
+     * Forget the previous restore.
+     */
+    public synchronized void start()
+    {
+        total.reset();
+        phases.clear();
+        keyspaces.clear();
+        samples.clear();
+        started = currentTimeMillis();
+        running = true;
+    }
+
+    public synchronized void finish()
+    {
+        running = false;
+    }
+
+    public synchronized void planned(AbstractBackupPath path)
+    {
+        for (Counter counter : counters(path))
+        {
+            counter.plannedFiles++;
+            counter.plannedBytes += path.getSize();
+            if (path.getSize() <= 0)
+                counter.unsizedFiles++;
+        }
+    }
+
+    /**
+     * @param plannedSize
+     *            size of the file when it was planned
+     */
+    public synchronized void completed(AbstractBackupPath path, long plannedSize)
+    {
+        for (Counter counter : counters(path))
+        {
+            counter.completedFiles++;
+            counter.completedBytes += path.getSize();
+            if (plannedSize <= 0)
+            {
+                counter.unsizedFiles--;
+                counter.plannedBytes += path.getSize();
+            }
+        }
+        long now = currentTimeMillis();
+        samples.add(new long[] { now, total.completedBytes });
+        // Keep the last sample from before the window as the baseline.
+        while (samples.size() > 1 && samples.get(1)[0] <= now - RATE_WINDOW)
+            samples.removeFirst();
+    }
+
+    public synchronized void failed(AbstractBackupPath path)
+    {
+        for (Counter counter : counters(path))
+            counter.failedFiles++;
+    }
+
+    @Override
+    public synchronized boolean isRunning()
+    {
+        return running;
+    }
+
+    @Override
+    public synchronized int getPlannedFiles()
+    {
+        return total.plannedFiles;
+    }
+
+    @Override
+    public synchronized int getCompletedFiles()
+    {
+        return total.completedFiles;
+    }
+
+    @Override
+    public synchronized int getFailedFiles()
+    {
+        return total.failedFiles;
+    }
+
+    @Override
+    public synchronized long getPlannedBytes()
+    {
+        return total.plannedBytes;
+    }
+
+    @Override
+    public synchronized long getCompletedBytes()
+    {
+        return total.completedBytes;
+    }
+
+    @Override
+    public synchronized double getThroughputMBps()
+    {
+        long now = currentTimeMillis();
+        long since = started;
+        long bytes = total.completedBytes;
+        // Until there is a sample from before the window, measure from the start.
+        if (!samples.isEmpty() && samples.getFirst()[0] <= now - RATE_WINDOW)
+        {
+            since = samples.getFirst()[0];
+            bytes -= samples.getFirst()[1];
+        }
+        if (now <= since)
+            return 0;
+        return bytes / MB / ((now - since) / 1000.0);
+    }
+
+    @Override
+    public synchronized long getEtaSeconds()
+    {
+        double rate = getThroughputMBps() * MB;
+        if (!running || rate <= 0)
+            return -1;
+        return (long) (total.remainingBytes() / rate);
+    }
+
+    @Override
+    public synchronized String[] getPhases()
+    {
+        return describe(phases);
+    }
+
+    @Override
+    public synchronized String[] getKeyspaces()
+    {
+        return describe(keyspaces);
+    }
+
+    /**
+     * @return copies of the counters of each file type
+     */
+    public synchronized Map<String, Counter> getPhaseCounters()
+    {
+        return copy(phases);
+    }
+
+    /**
+     * @return copies of the counters of each keyspace
+     */
+    public synchronized Map<String, Counter> getKeyspaceCounters()
+    {
+        return copy(keyspaces);
+    }
+
+    protected long currentTimeMillis()
+    {
+        return System.currentTimeMillis();
+    }
+
+    private Counter[] counters(AbstractBackupPath path)
+    {
+        Counter phase = get(phases, path.getType().name());
+        if (path.getKeyspace() == null)
+            return new Counter[] { total, phase };
+        return new Counter[] { total, phase, get(keyspaces, path.getKeyspace()) };
+    }
+
+    private static Counter get(Map<String, Counter> counters, String key)
+    {
+        Counter counter = counters.get(key);
+        if (counter == null)
+        {
+            counter = new Counter();
+            counters.put(key, counter);
+        }
+        return counter;
+    }
+
+    private static String[] describe(Map<String, Counter> counters)
+    {
+        String[] lines = new String[counters.size()];
+        int i = 0;
+        for (Map.Entry<String, Counter> entry : counters.entrySet())
+            lines[i++] = entry.getKey() + ": " + entry.getValue();
+        return lines;
+    }
+
+    private static Map<String, Counter> copy(Map<String, Counter> counters)
+    {
+        Map<String, Counter> copy = new TreeMap<String, Counter>();
+        for (Map.Entry<String, Counter> entry : counters.entrySet())
+            copy.put(entry.getKey(), entry.getValue().copy());
+        return copy;
+    }
+
+    public static class Counter
+    {
+        private int plannedFiles;
+        private int completedFiles;
+        private int failedFiles;
+        private int unsizedFiles;
+        private long plannedBytes;
+        private long completedBytes;
+
+        public int getPlannedFiles()
+        {
+            return plannedFiles;
+        }
+
+        public int getCompletedFiles()
+        {
+            return completedFiles;
+        }
+
+        public int getFailedFiles()
+        {
+            return failedFiles;
+        }
+
+        public long getPlannedBytes()
+        {
+            return plannedBytes;
+        }
+
+        public long getCompletedBytes()
+        {
+            return completedBytes;
+        }
+
+        /**
+         * Files of unknown size count at the average size of the completed ones.
+         */
+        long remainingBytes()
+        {
+            long remaining = plannedBytes - completedBytes;
+            if (unsizedFiles > 0 && completedFiles > 0)
+                remaining += unsizedFiles * (completedBytes / completedFiles);
+            return Math.max(0, remaining);
+        }
+
+        void reset()
+        {
+            plannedFiles = completedFiles = failedFiles = unsizedFiles = 0;
+            plannedBytes = completedBytes = 0;
+        }
+
+        Counter copy()
+        {
+            Counter copy = new Counter();
+            copy.plannedFiles = plannedFiles;
+            copy.completedFiles = completedFiles;
+            copy.failedFiles = failedFiles;
+            copy.unsizedFiles = unsizedFiles;
+            copy.plannedBytes = plannedBytes;
+            copy.completedBytes = completedBytes;
+            return copy;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%d/%d files, %d/%d MB, %d failed", completedFiles, plannedFiles, completedBytes >> 20, plannedBytes >> 20, failedFiles);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright 2013 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.priam.backup;
+
+/**
+ * MBean to follow a restore.
+ */
+public interface RestoreProgressMBean
+{
+    public boolean isRunning();
+
+    public int getPlannedFiles();
+
+    public int getCompletedFiles();
+
+    public int getFailedFiles();
+
+    public long getPlannedBytes();
+
+    public long getCompletedBytes();
+
+    /**
+     * @return MB per second downloaded over the last minute
+     */
+    public double getThroughputMBps();
+
+    /**
+     * @return seconds until the restore is done at the current throughput, -1
+     *         if not known
+     */
+    public long getEtaSeconds();
+
+    /**
+     * @return progress of each file type
+     */
+    public String[] getPhases();
+
+    /**
+     * @return progress of each keyspace
+     */
+    public String[] getKeyspaces();
+}
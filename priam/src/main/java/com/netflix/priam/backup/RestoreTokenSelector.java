@@ -20,18 +20,25 @@ import com.google.inject.name.Named;
 import com.netflix.priam.utils.ITokenManager;
 
 import java.math.BigInteger;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Runs algorithms as finding closest token from a list of token (in a backup)
+ *
+ * The tokens with backups on a date are kept until cleared, listing them
+ * takes a request per token of the cluster.
  */
 public class RestoreTokenSelector
 {
     private final ITokenManager tokenManager;
     private final IBackupFileSystem fs;
+    private final Map<String, List<BigInteger>> tokens = new HashMap<String, List<BigInteger>>();
 
     @Inject
 
@@ -54,10 +61,32 @@ public class RestoreTokenSelector
      */
     public BigInteger getClosestToken(BigInteger tokenToSearch, Date startDate)
     {
-        List<BigInteger> tokenList = new ArrayList<BigInteger>();
-        Iterator<AbstractBackupPath> iter = fs.listPrefixes(startDate);
-        while (iter.hasNext())
-            tokenList.add(new BigInteger(iter.next().getToken()));
-        return tokenManager.findClosestToken(tokenToSearch, tokenList);
+        return tokenManager.findClosestToken(tokenToSearch, getTokens(startDate));
+    }
+
+    /**
+     * Tokens with backups on the date of the given time
+     */
+    public synchronized List<BigInteger> getTokens(Date date)
+    {
+        String day = new SimpleDateFormat("yyyyMMdd").format(date);
+        List<BigInteger> tokenList = tokens.get(day);
+        if (tokenList == null)
+        {
+            tokenList = new ArrayList<BigInteger>();
+            Iterator<AbstractBackupPath> iter = fs.listPrefixes(date);
+            while (iter.hasNext())
+                tokenList.add(new BigInteger(iter.next().getToken()));
+            tokens.put(day, tokenList);
+        }
+        return tokenList;
+    }
+
+    /**
+     * Forget the listed tokens, called when a restore is done.
+     */
+    public synchronized void clear()
+    {
+        tokens.clear();
     }
 }
@@ -0,0 +1,230 @@
+/**
+ * Copyright 2013 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.priam.backup;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.priam.IConfiguration;
+
+/**
+ * Backup files restored so far, looked up by remote path.
+ *
+ * Everything older than the watermark is known to be restored, so only files
+ * from the watermark on are kept and listed again. The tracker is appended to
+ * a file as downloads complete, an incremental restore resumes where it
+ * stopped after a restart.
+ */
+@Singleton
+public class RestoreTracker
+{
+    private static final Logger logger = LoggerFactory.getLogger(RestoreTracker.class);
+    private static final String SEP = "\t";
+    private static final String WATERMARK = "watermark";
+
+    private final IConfiguration config;
+    // Time of each restored file by remote path.
+    private final Map<String, Long> restored = new HashMap<String, Long>();
+    private long watermark = -1;
+    private Writer writer;
+    private boolean loaded = false;
+
+    @Inject
+    public RestoreTracker(IConfiguration config)
+    {
+        this.config = config;
+    }
+
+    public boolean isPersistent()
+    {
+        return StringUtils.isNotBlank(config.getRestoreTrackerLocation());
+    }
+
+    public synchronized boolean contains(AbstractBackupPath path) throws IOException
+    {
+        load();
+        return restored.containsKey(path.getRemotePath());
+    }
+
+    /**
+     * Record the file as restored.
+     */
+    public synchronized void add(AbstractBackupPath path) throws IOException
+    {
+        load();
+        String key = path.getRemotePath();
+        long time = path.getTime().getTime();
+        if (time < watermark || restored.put(key, time) != null)
+            return;
+        if (writer != null)
+        {
+            writer.write(time + SEP + key + "\n");
+            writer.flush();
+        }
+    }
+
+    /**
+     * @return time from which backup files still have to be looked at, the
+     *         oldest restored file if no watermark was set. Null if nothing
+     *         was restored.
+     */
+    public synchronized Date getWatermark() throws IOException
+    {
+        load();
+        if (watermark >= 0)
+            return new Date(watermark);
+        long oldest = Long.MAX_VALUE;
+        for (long time : restored.values())
+            oldest = Math.min(oldest, time);
+        return restored.isEmpty() ? null : new Date(oldest);
+    }
+
+    /**
+     * All files older than the given time are restored, forget them.
+     */
+    public synchronized void advance(Date time) throws IOException
+    {
+        load();
+        if (time.getTime() <= watermark)
+            return;
+        watermark = time.getTime();
+        Iterator<Long> it = restored.values().iterator();
+        while (it.hasNext())
+        {
+            if (it.next() < watermark)
+                it.remove();
+        }
+        rewrite();
+    }
+
+    /**
+     * Forget everything, for a restore starting from scratch.
+     */
+    public synchronized void clear() throws IOException
+    {
+        load();
+        restored.clear();
+        watermark = -1;
+        rewrite();
+    }
+
+    public synchronized int size()
+    {
+        return restored.size();
+    }
+
+    /**
+     * Replace the file with the current state, appending resumes after it.
+     */
+    private void rewrite() throws IOException
+    {
+        if (!isPersistent())
+            return;
+        IOUtils.closeQuietly(writer);
+        writer = null;
+        File file = getFile();
+        File tmp = new File(file.getPath() + ".tmp");
+        Writer out = new FileWriter(tmp);
+        try
+        {
+            if (watermark >= 0)
+                out.write(WATERMARK + SEP + watermark + "\n");
+            for (Map.Entry<String, Long> entry : restored.entrySet())
+                out.write(entry.getValue() + SEP + entry.getKey() + "\n");
+        }
+        finally
+        {
+            IOUtils.closeQuietly(out);
+        }
+        FileUtils.deleteQuietly(file);
+        if (!tmp.renameTo(file))
+            throw new IOException("Unable to replace " + file);
+        writer = new FileWriter(file, true);
+    }
+
+    private File getFile()
+    {
+        return new File(config.getRestoreTrackerLocation());
+    }
+
+    private void load() throws IOException
+    {
+        if (loaded)
+            return;
+        loaded = true;
+        if (!isPersistent())
+            return;
+        File file = getFile();
+        if (!file.exists())
+        {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (!parent.exists() && !parent.mkdirs())
+                throw new IOException("Unable to create " + parent);
+            writer = new FileWriter(file, true);
+            return;
+        }
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+                parse(line);
+        }
+        finally
+        {
+            IOUtils.closeQuietly(reader);
+        }
+        logger.info("Loaded {} restored files from {}", restored.size(), file);
+        writer = new FileWriter(file, true);
+    }
+
+    /**
+     * Lines cut short by a crash are skipped.
+     */
+    private void parse(String line)
+    {
+        String[] fields = line.split(SEP);
+        if (fields.length != 2)
+            return;
+        try
+        {
+            if (WATERMARK.equals(fields[0]))
+                watermark = Long.parseLong(fields[1]);
+            else
+                restored.put(fields[1], Long.parseLong(fields[0]));
+        }
+        catch (NumberFormatException e)
+        {
+            logger.warn("Skipping restore tracker line " + line);
+        }
+    }
+}
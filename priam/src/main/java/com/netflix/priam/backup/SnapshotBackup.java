@@ -18,8 +18,11 @@ package com.netflix.priam.backup;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,6 +35,7 @@ import com.google.inject.name.Named;
 import com.netflix.priam.IConfiguration;
 import com.netflix.priam.backup.AbstractBackupPath.BackupFileType;
 import com.netflix.priam.backup.IMessageObserver.BACKUP_MESSAGE_TYPE;
+import com.netflix.priam.compress.CompressionCodecs;
 import com.netflix.priam.scheduler.CronTimer;
 import com.netflix.priam.scheduler.TaskTimer;
 import com.netflix.priam.utils.CassandraMonitor;
@@ -54,15 +58,18 @@ public class SnapshotBackup extends AbstractBackup
     private final ThreadSleeper sleeper = new ThreadSleeper();
     private final long WAIT_TIME_MS = 60 * 1000 * 10;
     private final CommitLogBackup clBackup;
+    private final BackupCatalog catalog;
     
 
     @Inject
     public SnapshotBackup(IConfiguration config, @Named("backup")IBackupFileSystem fs, Provider<AbstractBackupPath> pathFactory, 
-    		              MetaData metaData, CommitLogBackup clBackup)
+    		              MetaData metaData, CommitLogBackup clBackup, TransferScheduler scheduler,
+    		              UploadedFileIndex uploadedFiles, BackupCatalog catalog)
     {
-        super(config, fs, pathFactory);
+        super(config, fs, pathFactory, scheduler, uploadedFiles);
         this.metaData = metaData;
         this.clBackup = clBackup;
+        this.catalog = catalog;
     }
 
     
@@ -84,30 +91,45 @@ public class SnapshotBackup extends AbstractBackup
             //Clearing remotePath List
             snapshotRemotePaths.clear();
             takeSnapshot(snapshotName);
-            // Collect all snapshot dir's under keyspace dir's
-            List<AbstractBackupPath> bps = Lists.newArrayList();
+            uploadedFiles.prune();
+            catalog.compact();
+            // Upload the files of each snapshot dir as it is found, the
+            // meta file lists them as their uploads complete
+            List<AbstractBackupPath> bps = Collections.synchronizedList(Lists.<AbstractBackupPath> newArrayList());
+            List<File> files = Lists.newArrayList();
+            List<Future<AbstractBackupPath>> futures = Lists.newArrayList();
             File dataDir = new File(config.getDataFileLocation());
-            for (File keyspaceDir : dataDir.listFiles())
+            for (File keyspaceDir : listFiles(dataDir))
             {
                 if (keyspaceDir.isFile())
                 		continue;
                 logger.debug("Entering {} keyspace..", keyspaceDir.getName());
-                for (File columnFamilyDir : keyspaceDir.listFiles())
+                for (File columnFamilyDir : listFiles(keyspaceDir))
                 {
                     logger.debug("Entering {} columnFamily..", columnFamilyDir.getName());
                     File snpDir = new File(columnFamilyDir, "snapshots");
                     if (!isValidBackupDir(keyspaceDir, columnFamilyDir, snpDir))
                         continue;
-                    File snapshotDir = getValidSnapshot(columnFamilyDir, snpDir, snapshotName);
-                    // Add files to this dir
-                    if (null != snapshotDir)
-                        bps.addAll(upload(snapshotDir, BackupFileType.SNAP));
-                    else
+                    File snapshotDir = new File(snpDir, snapshotName);
+                    if (!snapshotDir.isDirectory())
+                    {
                         logger.warn("{} folder does not contain {} snapshots", snpDir, snapshotName);
+                        continue;
+                    }
+                    // Largest first within the snapshot dir
+                    List<File> snapshotFiles = Lists.newArrayList(listFiles(snapshotDir));
+                    Collections.sort(snapshotFiles, LARGEST_FIRST);
+                    Set<File> compressed = CompressionCodecs.compressedDataFiles(snapshotFiles);
+                    for (File file : snapshotFiles)
+                    {
+                        files.add(file);
+                        futures.add(submit(file, BackupFileType.SNAP, compressed.contains(file), bps));
+                    }
                 }
             }
+            await(files, futures);
             // Upload meta file
-            metaData.set(bps, snapshotName);
+            metaData.set(Lists.newArrayList(bps), snapshotName);
             logger.info("Snapshot upload complete for " + snapshotName);
             
             if(snapshotRemotePaths.size() > 0)
@@ -129,12 +151,18 @@ public class SnapshotBackup extends AbstractBackup
         }
     }
 
-    private File getValidSnapshot(File columnFamilyDir, File snpDir, String snapshotName)
+    /**
+     * Files of the dir, none if it can not be read.
+     */
+    private static File[] listFiles(File dir)
     {
-        for (File snapshotDir : snpDir.listFiles())
-            if (snapshotDir.getName().matches(snapshotName))
-                return snapshotDir;
-        return null;
+        File[] files = dir.listFiles();
+        if (files == null)
+        {
+            logger.warn("Unable to list {}", dir);
+            return new File[0];
+        }
+        return files;
     }
 
     private void takeSnapshot(final String snapshotName) throws Exception
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2013 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.priam.backup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.HashMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * SSTables downloaded while Cassandra is running. They are staged in a
+ * directory of their own, mirroring the data directory, so a refresh never
+ * sees a partial download, and are moved into the data directory once the
+ * keyspace is complete.
+ */
+public class StagedSSTables
+{
+    private static final Logger logger = LoggerFactory.getLogger(StagedSSTables.class);
+    // Cassandra renumbers loaded SSTables on refresh, the gap keeps its flushes
+    // until then from picking the generations of moved files.
+    static final int GENERATION_GAP = 100000;
+
+    private final File dataDir;
+    private final File stagingDir;
+
+    public StagedSSTables(File dataDir, File stagingDir)
+    {
+        this.dataDir = dataDir;
+        this.stagingDir = stagingDir;
+    }
+
+    /**
+     * Staging location of the file newRestoreFile() would restore to.
+     */
+    public File stagingFile(AbstractBackupPath path)
+    {
+        String live = path.newRestoreFile().getAbsolutePath();
+        String data = dataDir.getAbsolutePath();
+        if (!live.startsWith(data + File.separator))
+            throw new IllegalArgumentException(live + " is not in " + data);
+        File file = new File(stagingDir, live.substring(data.length() + 1));
+        file.getParentFile().mkdirs();
+        return file;
+    }
+
+    /**
+     * Move the staged files of the keyspace into the data directory,
+     * SSTables are given generations above the ones already there.
+     */
+    public void moveKeyspace(String keyspace) throws IOException
+    {
+        File staged = new File(stagingDir, keyspace);
+        if (staged.isDirectory())
+            moveDir(staged, new File(dataDir, keyspace));
+        FileUtils.deleteQuietly(staged);
+    }
+
+    private void moveDir(File from, File to) throws IOException
+    {
+        to.mkdirs();
+        int generation = maxGeneration(to) + GENERATION_GAP;
+        Map<Integer, Integer> renumbered = new HashMap<Integer, Integer>();
+        for (File file : from.listFiles())
+        {
+            if (file.isDirectory())
+            {
+                moveDir(file, new File(to, file.getName()));
+                continue;
+            }
+            String[] parts = file.getName().split("-");
+            int staged = generation(parts);
+            if (staged >= 0)
+            {
+                if (!renumbered.containsKey(staged))
+                    renumbered.put(staged, ++generation);
+                parts[parts.length - 2] = String.valueOf(renumbered.get(staged));
+            }
+            File target = new File(to, StringUtils.join(parts, "-"));
+            logger.debug("Moving staged file " + file + " to " + target);
+            FileUtils.moveFile(file, target);
+        }
+    }
+
+    private static int maxGeneration(File dir)
+    {
+        int max = 0;
+        for (String name : dir.list())
+            max = Math.max(max, generation(name.split("-")));
+        return max;
+    }
+
+    /**
+     * Generation of a Cassandra file name (ks-cf-version-generation-component),
+     * -1 if it isn't one.
+     */
+    static int generation(String[] parts)
+    {
+        if (parts.length < 5)
+            return -1;
+        try
+        {
+            return Integer.parseInt(parts[parts.length - 2]);
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright 2013 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.priam.backup;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Takes a permit per byte read from the limiter, which may be shared and
+ * have its rate changed at any time.
+ */
+public class ThrottledInputStream extends FilterInputStream
+{
+    private final RateLimiter limiter;
+
+    public ThrottledInputStream(InputStream in, RateLimiter limiter)
+    {
+        super(in);
+        this.limiter = limiter;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        int b = super.read();
+        if (b >= 0)
+            limiter.acquire(1);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        int count = super.read(b, off, len);
+        if (count > 0)
+            limiter.acquire(count);
+        return count;
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2013 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.priam.backup;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Takes a permit per byte written from the limiter, which may be shared and
+ * have its rate changed at any time.
+ */
+public class ThrottledOutputStream extends FilterOutputStream
+{
+    private final RateLimiter limiter;
+
+    public ThrottledOutputStream(OutputStream out, RateLimiter limiter)
+    {
+        super(out);
+        this.limiter = limiter;
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        limiter.acquire(1);
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        if (len > 0)
+            limiter.acquire(len);
+        out.write(b, off, len);
+    }
+}
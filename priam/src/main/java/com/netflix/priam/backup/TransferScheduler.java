@@ -0,0 +1,114 @@
+/**
+ * Copyright 2013 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.priam.backup;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.priam.IConfiguration;
+import com.netflix.priam.scheduler.NamedThreadPoolExecutor;
+
+/**
+ * Runs file transfers on a shared pool of threads. Besides the number of
+ * threads, the total size of the files in flight is capped: a transfer
+ * reserves its size (at most the whole budget) before it is queued, so a
+ * caller submitting many files blocks once the budget is used up. Parts of
+ * the files still go through the file system's own part executor.
+ */
+@Singleton
+public class TransferScheduler
+{
+    private static final int KB = 1024;
+
+    private final ThreadPoolExecutor executor;
+    private final Semaphore budget;
+    private final int budgetKB;
+
+    @Inject
+    public TransferScheduler(IConfiguration config)
+    {
+        this(config.getBackupFileThreads(), config.getBackupInflightBytes());
+    }
+
+    public TransferScheduler(int threads, long inflightBytes)
+    {
+        this.executor = new NamedThreadPoolExecutor(Math.max(1, threads), "FileTransfer");
+        this.executor.allowCoreThreadTimeOut(true);
+        this.budgetKB = (int) Math.max(1, Math.min(Integer.MAX_VALUE, inflightBytes / KB));
+        this.budget = new Semaphore(budgetKB, true);
+    }
+
+    /**
+     * Queue a transfer of the given number of bytes, blocks while the
+     * in-flight budget is exhausted.
+     */
+    public <T> Future<T> submit(long bytes, final Callable<T> transfer) throws InterruptedException
+    {
+        final int permits = permits(bytes);
+        budget.acquire(permits);
+        try
+        {
+            return executor.submit(new Callable<T>()
+            {
+                @Override
+                public T call() throws Exception
+                {
+                    try
+                    {
+                        return transfer.call();
+                    }
+                    finally
+                    {
+                        budget.release(permits);
+                    }
+                }
+            });
+        }
+        catch (RuntimeException e)
+        {
+            budget.release(permits);
+            throw e;
+        }
+    }
+
+    private int permits(long bytes)
+    {
+        long kb = (bytes + KB - 1) / KB;
+        return (int) Math.max(1, Math.min(budgetKB, kb));
+    }
+
+    /**
+     * @return bytes which can be submitted without blocking
+     */
+    public long getAvailableBytes()
+    {
+        return (long) budget.availablePermits() * KB;
+    }
+
+    public int getActiveCount()
+    {
+        return executor.getActiveCount();
+    }
+
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2013 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.priam.backup;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.priam.IConfiguration;
+
+/**
+ * Rate (bytes per second) backups are uploaded at. Starts at the configured
+ * upload throttle, {@link UploadThrottleController} moves it with the load
+ * on Cassandra.
+ */
+@Singleton
+public class UploadThrottle
+{
+    private final RateLimiter rateLimiter;
+    private volatile String reason = "Configured upload throttle";
+
+    @Inject
+    public UploadThrottle(IConfiguration config)
+    {
+        this.rateLimiter = RateLimiter.create(toRate(config.getUploadThrottle()));
+    }
+
+    /**
+     * Blocks until the bytes can be uploaded.
+     */
+    public void acquire(int bytes)
+    {
+        rateLimiter.acquire(bytes);
+    }
+
+    public double getRate()
+    {
+        return rateLimiter.getRate();
+    }
+
+    /**
+     * @return why the rate was last changed
+     */
+    public String getReason()
+    {
+        return reason;
+    }
+
+    public void setRate(double rate, String reason)
+    {
+        rateLimiter.setRate(toRate(rate));
+        this.reason = reason;
+    }
+
+    private static double toRate(double throttle)
+    {
+        return throttle < 1 ? Double.MAX_VALUE : throttle;
+    }
+}
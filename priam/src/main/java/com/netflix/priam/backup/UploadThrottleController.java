@@ -0,0 +1,170 @@
+/**
+ * Copyright 2013 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.priam.backup;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+
+import org.apache.cassandra.concurrent.JMXEnabledThreadPoolExecutorMBean;
+import org.apache.cassandra.db.compaction.CompactionManagerMBean;
+import org.apache.cassandra.service.StorageProxyMBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.priam.IConfiguration;
+import com.netflix.priam.scheduler.SimpleTimer;
+import com.netflix.priam.scheduler.Task;
+import com.netflix.priam.scheduler.TaskTimer;
+import com.netflix.priam.utils.CassandraMonitor;
+import com.netflix.priam.utils.JMXNodeTool;
+
+/**
+ * Moves the upload rate between priam.upload.throttle.min and
+ * priam.upload.throttle with the load on Cassandra. The rate is halved as
+ * soon as one signal is over its threshold and raised by a tenth of the
+ * range again while all of them are below. Both bounds have to be set, from
+ * no limit at all the rate would take minutes to come down to anything that
+ * relieves Cassandra.
+ */
+@Singleton
+public class UploadThrottleController extends Task
+{
+    public static final String JOBNAME = "UPLOAD_THROTTLE_THREAD";
+    private static final Logger logger = LoggerFactory.getLogger(UploadThrottleController.class);
+    private static final long INTERVAL = 30L * 1000;
+    private static final double INCREASE = 0.1;
+    private static final String STORAGE_PROXY = "org.apache.cassandra.db:type=StorageProxy";
+    private static final String COMPACTION_MANAGER = "org.apache.cassandra.db:type=CompactionManager";
+    private static final String READ_STAGE = "org.apache.cassandra.request:type=ReadStage";
+
+    private final UploadThrottle throttle;
+
+    @Inject
+    public UploadThrottleController(IConfiguration config, UploadThrottle throttle)
+    {
+        this(config, throttle, ManagementFactory.getPlatformMBeanServer());
+    }
+
+    UploadThrottleController(IConfiguration config, UploadThrottle throttle, MBeanServer mBeanServer)
+    {
+        super(config, mBeanServer);
+        this.throttle = throttle;
+    }
+
+    @Override
+    public void execute() throws Exception
+    {
+        if (!isEnabled(config) || !CassandraMonitor.isCassadraStarted())
+            return;
+        update(sample());
+    }
+
+    /**
+     * Adjust the rate to the sampled load.
+     */
+    void update(LoadSample sample)
+    {
+        if (!isEnabled(config))
+            return;
+        double max = config.getUploadThrottle();
+        double min = Math.min(config.getUploadThrottleMin(), max);
+        double rate = Math.min(throttle.getRate(), max);
+        String overload = overload(sample);
+        double next;
+        String reason;
+        if (overload != null)
+        {
+            next = Math.max(min, rate / 2);
+            reason = overload;
+        }
+        else
+        {
+            next = Math.min(max, rate + (max - min) * INCREASE);
+            reason = "Cassandra load below thresholds";
+        }
+        if (next != throttle.getRate())
+        {
+            logger.info(String.format("Upload rate %.0f -> %.0f bytes/sec: %s", throttle.getRate(), next, reason));
+            throttle.setRate(next, reason);
+        }
+    }
+
+    /**
+     * @return the first signal over its threshold, null if there is none
+     */
+    private String overload(LoadSample sample)
+    {
+        if (sample.readLatencyMicros > config.getThrottleReadLatencyMicros())
+            return String.format("Read latency %.0f us over %d", sample.readLatencyMicros, config.getThrottleReadLatencyMicros());
+        if (sample.writeLatencyMicros > config.getThrottleWriteLatencyMicros())
+            return String.format("Write latency %.0f us over %d", sample.writeLatencyMicros, config.getThrottleWriteLatencyMicros());
+        if (sample.pendingCompactions > config.getThrottlePendingCompactions())
+            return String.format("%d pending compactions over %d", sample.pendingCompactions, config.getThrottlePendingCompactions());
+        if (sample.pendingReads > config.getThrottlePendingReads())
+            return String.format("%d pending reads over %d", sample.pendingReads, config.getThrottlePendingReads());
+        return null;
+    }
+
+    /**
+     * Signals which could not be read are left at -1 and don't count.
+     */
+    // The "recent" getters are deprecated for the metrics MBeans, which 1.1 nodes don't have
+    @SuppressWarnings("deprecation")
+    private LoadSample sample()
+    {
+        LoadSample sample = new LoadSample();
+        StorageProxyMBean storageProxy = JMXNodeTool.getRemoteBean(StorageProxyMBean.class, STORAGE_PROXY, config, false);
+        if (storageProxy != null)
+        {
+            sample.readLatencyMicros = storageProxy.getRecentReadLatencyMicros();
+            sample.writeLatencyMicros = storageProxy.getRecentWriteLatencyMicros();
+        }
+        CompactionManagerMBean compactionManager = JMXNodeTool.getRemoteBean(CompactionManagerMBean.class, COMPACTION_MANAGER, config, false);
+        if (compactionManager != null)
+            sample.pendingCompactions = compactionManager.getPendingTasks();
+        JMXEnabledThreadPoolExecutorMBean readStage = JMXNodeTool.getRemoteBean(JMXEnabledThreadPoolExecutorMBean.class, READ_STAGE, config, false);
+        if (readStage != null)
+            sample.pendingReads = readStage.getPendingTasks();
+        return sample;
+    }
+
+    public static boolean isEnabled(IConfiguration config)
+    {
+        return config.getUploadThrottleMin() > 0 && config.getUploadThrottle() > 0;
+    }
+
+    public static TaskTimer getTimer()
+    {
+        return new SimpleTimer(JOBNAME, INTERVAL);
+    }
+
+    @Override
+    public String getName()
+    {
+        return JOBNAME;
+    }
+
+    static class LoadSample
+    {
+        double readLatencyMicros = -1;
+        double writeLatencyMicros = -1;
+        long pendingCompactions = -1;
+        long pendingReads = -1;
+    }
+}
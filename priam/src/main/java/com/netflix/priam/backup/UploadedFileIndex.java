@@ -0,0 +1,300 @@
+/**
+ * Copyright 2013 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.priam.backup;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.priam.IConfiguration;
+import com.netflix.priam.backup.AbstractBackupPath.BackupFileType;
+import com.netflix.priam.utils.SystemUtils;
+
+/**
+ * Persistent index of the SSTable files already uploaded by this node.
+ * SSTables never change once written, so a snapshot can point at the object
+ * uploaded for the same file by an earlier snapshot or incremental backup
+ * instead of uploading it again.
+ *
+ * A file matches on keyspace, column family, name, size and the MD5 of its
+ * whole content. A reused object expires with the snapshot it was uploaded
+ * for, so a snapshot pointing at one is restorable for the retention period
+ * minus the age of the object. Reuse is off unless a maximum age is
+ * configured.
+ */
+@Singleton
+public class UploadedFileIndex
+{
+    private static final Logger logger = LoggerFactory.getLogger(UploadedFileIndex.class);
+    private static final String SEP = "\t";
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private final IConfiguration config;
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    private boolean loaded = false;
+
+    @Inject
+    public UploadedFileIndex(IConfiguration config)
+    {
+        this.config = config;
+    }
+
+    public boolean isEnabled()
+    {
+        return StringUtils.isNotBlank(config.getBackupIndexLocation()) && getMaxAge() > 0;
+    }
+
+    /**
+     * MD5 of the local file of the path, to find it with and record it once
+     * uploaded. The file is read whole, once per upload.
+     * 
+     * @return null if the file is not indexed
+     */
+    public String digest(AbstractBackupPath bp) throws IOException
+    {
+        if (!isIndexed(bp))
+            return null;
+        return SystemUtils.md5(bp.getBackupFile());
+    }
+
+    /**
+     * What is known of the stored object is set on the path.
+     * 
+     * @param digest
+     *            of the file, see {@link #digest(AbstractBackupPath)}
+     * @return remote path of an object holding the same file, null if it has
+     *         to be uploaded
+     */
+    public synchronized String find(AbstractBackupPath bp, String digest) throws IOException
+    {
+        if (!isIndexed(bp) || digest == null)
+            return null;
+        load();
+        Entry entry = entries.get(key(bp));
+        if (entry == null || entry.size != bp.getSize() || !entry.node.equals(node(bp)))
+            return null;
+        if (System.currentTimeMillis() - entry.uploaded > getMaxAge())
+            return null;
+        if (!entry.digest.equals(digest))
+            return null;
+        bp.setStored(entry.storedSize, entry.compression, entry.checksum);
+        return entry.remotePath;
+    }
+
+    /**
+     * Record the file as uploaded, must be called before the local file is
+     * deleted. The stored object is as set on the path by the upload.
+     * 
+     * @param digest
+     *            of the file, see {@link #digest(AbstractBackupPath)}
+     */
+    public void add(AbstractBackupPath bp, String digest) throws IOException
+    {
+        add(bp, digest, System.currentTimeMillis());
+    }
+
+    synchronized void add(AbstractBackupPath bp, String digest, long uploaded) throws IOException
+    {
+        if (!isIndexed(bp) || digest == null)
+            return;
+        load();
+        Entry entry = new Entry(key(bp), bp.getSize(), digest, uploaded, node(bp), bp.getRemotePath(), bp.getStoredSize(),
+                bp.getCompression(), bp.getChecksum());
+        Writer writer = new FileWriter(getFile(), true);
+        try
+        {
+            writer.write(entry.toLine());
+        }
+        finally
+        {
+            IOUtils.closeQuietly(writer);
+        }
+        entries.put(entry.key, entry);
+    }
+
+    /**
+     * Forget the objects too old to be reused and compact the index file.
+     */
+    public synchronized void prune() throws IOException
+    {
+        if (!isEnabled())
+            return;
+        load();
+        long cutoff = System.currentTimeMillis() - getMaxAge();
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext())
+        {
+            if (it.next().uploaded < cutoff)
+                it.remove();
+        }
+        File file = getFile();
+        File tmp = new File(file.getPath() + ".tmp");
+        Writer writer = new FileWriter(tmp);
+        try
+        {
+            for (Entry entry : entries.values())
+                writer.write(entry.toLine());
+        }
+        finally
+        {
+            IOUtils.closeQuietly(writer);
+        }
+        FileUtils.deleteQuietly(file);
+        if (!tmp.renameTo(file))
+            throw new IOException("Unable to replace " + file);
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Reusing an object only pays off for SSTables, and only those have a
+     * local file to compare.
+     */
+    private boolean isIndexed(AbstractBackupPath bp)
+    {
+        return isEnabled() && (bp.getType() == BackupFileType.SNAP || bp.getType() == BackupFileType.SST) && bp.getBackupFile() != null;
+    }
+
+    private long getMaxAge()
+    {
+        long maxAge = config.getBackupDedupMaxAgeDays() * DAY;
+        // An object has to outlive the snapshots pointing at it by at least a day.
+        if (config.getBackupRetentionDays() > 0)
+            maxAge = Math.min(maxAge, (config.getBackupRetentionDays() - 1) * DAY);
+        return maxAge;
+    }
+
+    private File getFile()
+    {
+        return new File(config.getBackupIndexLocation());
+    }
+
+    private void load() throws IOException
+    {
+        if (loaded)
+            return;
+        loaded = true;
+        File file = getFile();
+        if (!file.exists())
+        {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (!parent.exists() && !parent.mkdirs())
+                throw new IOException("Unable to create " + parent);
+            return;
+        }
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                Entry entry = Entry.parse(line);
+                if (entry != null)
+                    entries.put(entry.key, entry);
+            }
+        }
+        finally
+        {
+            IOUtils.closeQuietly(reader);
+        }
+        logger.info("Loaded {} uploaded files from {}", entries.size(), file);
+    }
+
+    private static String key(AbstractBackupPath bp)
+    {
+        return bp.getKeyspace() + "/" + bp.getColumnFamily() + "/" + bp.getFileName();
+    }
+
+    /**
+     * Objects of another node or cluster are never reused.
+     */
+    private static String node(AbstractBackupPath bp)
+    {
+        return bp.getBaseDir() + "/" + bp.getRegion() + "/" + bp.getClusterName() + "/" + bp.getToken();
+    }
+
+    private static class Entry
+    {
+        private final String key;
+        private final long size;
+        private final String digest;
+        private final long uploaded;
+        private final String node;
+        private final String remotePath;
+        private final long storedSize;
+        private final String compression;
+        private final String checksum;
+
+        Entry(String key, long size, String digest, long uploaded, String node, String remotePath, long storedSize, String compression, String checksum)
+        {
+            this.key = key;
+            this.size = size;
+            this.digest = digest;
+            this.uploaded = uploaded;
+            this.node = node;
+            this.remotePath = remotePath;
+            this.storedSize = storedSize;
+            this.compression = compression;
+            this.checksum = checksum;
+        }
+
+        String toLine()
+        {
+            return key + SEP + size + SEP + digest + SEP + uploaded + SEP + node + SEP + remotePath + SEP + storedSize + SEP
+                    + StringUtils.defaultString(compression) + SEP + StringUtils.defaultString(checksum) + "\n";
+        }
+
+        /**
+         * Lines written before the stored object was recorded have 6 fields.
+         * 
+         * @return null for a line which was cut short
+         */
+        static Entry parse(String line)
+        {
+            String[] fields = line.split(SEP, -1);
+            if (fields.length != 6 && fields.length != 9)
+                return null;
+            try
+            {
+                if (fields.length == 6)
+                    return new Entry(fields[0], Long.parseLong(fields[1]), fields[2], Long.parseLong(fields[3]), fields[4], fields[5], -1, null, null);
+                return new Entry(fields[0], Long.parseLong(fields[1]), fields[2], Long.parseLong(fields[3]), fields[4], fields[5], Long.parseLong(fields[6]),
+                        StringUtils.trimToNull(fields[7]), StringUtils.trimToNull(fields[8]));
+            }
+            catch (NumberFormatException e)
+            {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright 2013 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.priam.backup;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Writes to the wrapped stream on a thread of its own, so the writer of this
+ * stream doesn't wait for the disk. Data is collected in a bounded number of
+ * large reused buffers, each written out in one go - through the file
+ * channel if the wrapped stream is a file.
+ *
+ * Errors of the write thread are thrown by a later write or by close(), which
+ * also waits for all data to be written.
+ */
+public class WriteBehindOutputStream extends OutputStream
+{
+    // Tells the write thread there is nothing more to come.
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final OutputStream out;
+    private final FileChannel channel;
+    private final int bufferSize;
+    private final int buffers;
+    private final BlockingQueue<ByteBuffer> free;
+    private final BlockingQueue<ByteBuffer> full;
+    private final Future<?> writer;
+    private volatile IOException error;
+    private int allocated;
+    private ByteBuffer current;
+    private boolean closed;
+
+    public WriteBehindOutputStream(OutputStream out, ExecutorService executor, int bufferSize, int buffers)
+    {
+        this.out = out;
+        this.channel = out instanceof FileOutputStream ? ((FileOutputStream) out).getChannel() : null;
+        this.bufferSize = bufferSize;
+        this.buffers = buffers;
+        this.free = new ArrayBlockingQueue<ByteBuffer>(buffers);
+        this.full = new ArrayBlockingQueue<ByteBuffer>(buffers + 1);
+        this.writer = executor.submit(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                writeBehind();
+            }
+        });
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        checkOpen();
+        while (len > 0)
+        {
+            if (current == null)
+                current = take();
+            int count = Math.min(len, current.remaining());
+            current.put(b, off, count);
+            off += count;
+            len -= count;
+            if (!current.hasRemaining())
+                handCurrent();
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (closed)
+            return;
+        closed = true;
+        try
+        {
+            if (current != null && error == null)
+                handCurrent();
+            put(END);
+            writer.get();
+        }
+        catch (InterruptedException e)
+        {
+            writer.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing behind");
+        }
+        catch (ExecutionException e)
+        {
+            throw new IOException(e.getCause());
+        }
+        finally
+        {
+            IOUtils.closeQuietly(out);
+        }
+        if (error != null)
+            throw error;
+    }
+
+    private void checkOpen() throws IOException
+    {
+        if (closed)
+            throw new IOException("Stream closed");
+        if (error != null)
+            throw error;
+    }
+
+    private void handCurrent() throws IOException
+    {
+        current.flip();
+        put(current);
+        current = null;
+    }
+
+    private ByteBuffer take() throws IOException
+    {
+        ByteBuffer buf = free.poll();
+        if (buf != null)
+            return buf;
+        if (allocated < buffers)
+        {
+            allocated++;
+            return ByteBuffer.allocate(bufferSize);
+        }
+        try
+        {
+            return free.take();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing behind");
+        }
+    }
+
+    private void put(ByteBuffer buf) throws IOException
+    {
+        try
+        {
+            full.put(buf);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing behind");
+        }
+    }
+
+    private void writeBehind()
+    {
+        try
+        {
+            ByteBuffer buf;
+            while ((buf = full.take()) != END)
+            {
+                // After a failure buffers are only recycled, the writer finds out on its next call.
+                if (error == null)
+                {
+                    try
+                    {
+                        if (channel != null)
+                            while (buf.hasRemaining())
+                                channel.write(buf);
+                        else
+                            out.write(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+                    }
+                    catch (IOException e)
+                    {
+                        error = e;
+                    }
+                }
+                buf.clear();
+                free.put(buf);
+            }
+            if (error == null)
+                out.flush();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (IOException e)
+        {
+            error = e;
+        }
+    }
+}
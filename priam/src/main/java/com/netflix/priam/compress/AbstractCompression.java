@@ -0,0 +1,94 @@
+/**
+ * Copyright 2013 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.priam.compress;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+import org.apache.commons.io.IOUtils;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
+
+/**
+ * Chunking and decompression shared by the codecs, which only have to
+ * provide the compressing and decompressing streams.
+ */
+public abstract class AbstractCompression implements ICompression
+{
+    private static final int BUFFER = 64 * 1024;
+
+    @Override
+    public Iterator<byte[]> compress(InputStream is, long chunkSize) throws IOException
+    {
+        return Iterators.transform(new ChunkedStream(is, new ChunkBufferPool(2), chunkSize, this), new Function<ChunkBuffer, byte[]>()
+        {
+            @Override
+            public byte[] apply(ChunkBuffer chunk)
+            {
+                byte[] data = chunk.toByteArray();
+                chunk.release();
+                return data;
+            }
+        });
+    }
+
+    @Override
+    public Iterator<ChunkBuffer> compress(InputStream is, ChunkBufferPool pool, long chunkSize) throws IOException
+    {
+        return new ChunkedStream(is, pool, chunkSize, this);
+    }
+
+    @Override
+    public void decompressAndClose(InputStream input, OutputStream output) throws IOException
+    {
+        try
+        {
+            decompress(input, output);
+        }
+        finally
+        {
+            IOUtils.closeQuietly(input);
+            IOUtils.closeQuietly(output);
+        }
+    }
+
+    private void decompress(InputStream input, OutputStream output) throws IOException
+    {
+        InputStream is = newDecompressor(new BufferedInputStream(input));
+        byte data[] = new byte[BUFFER];
+        BufferedOutputStream dest1 = new BufferedOutputStream(output, BUFFER);
+        try
+        {
+            int c;
+            while ((c = is.read(data, 0, BUFFER)) != -1)
+            {
+                dest1.write(data, 0, c);
+            }
+            // Outputs may only report write errors on close
+            dest1.close();
+        }
+        finally
+        {
+            IOUtils.closeQuietly(dest1);
+            IOUtils.closeQuietly(is);
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/**
+ * Copyright 2013 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.priam.compress;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A reusable, pooled buffer holding one chunk (part) of compressed data.
+ * The MD5 of the chunk is computed as the bytes are written, so the data is
+ * never scanned a second time before it is uploaded.
+ *
+ * Chunks are handed out by {@link ChunkBufferPool} and must be released back
+ * to it once the consumer is done with the data.
+ */
+public class ChunkBuffer
+{
+    private final ChunkBufferPool pool;
+    private final MessageDigest digest;
+    private final OutputStream output = new ChunkOutputStream();
+    private ByteBuffer buffer;
+    private byte[] md5;
+    private boolean digestDeferred;
+    private volatile boolean pooled;
+
+    ChunkBuffer(ChunkBufferPool pool, int capacity)
+    {
+        this.pool = pool;
+        this.buffer = ByteBuffer.allocateDirect(capacity);
+        try
+        {
+            this.digest = MessageDigest.getInstance("MD5");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Stream which appends to this chunk, growing it if a write would overflow.
+     */
+    public OutputStream getOutputStream()
+    {
+        return output;
+    }
+
+    public void write(byte[] b, int off, int len)
+    {
+        if (md5 != null)
+            throw new IllegalStateException("Chunk is sealed");
+        ensureCapacity(buffer.position() + len);
+        buffer.put(b, off, len);
+        if (!digestDeferred)
+            digest.update(b, off, len);
+    }
+
+    /**
+     * Appends the data written so far to another chunk.
+     */
+    void append(ChunkBuffer other)
+    {
+        if (md5 != null)
+            throw new IllegalStateException("Chunk is sealed");
+        ByteBuffer src = other.buffer.duplicate();
+        if (!other.isSealed())
+            src.flip();
+        ensureCapacity(buffer.position() + src.remaining());
+        if (!digestDeferred)
+            digest.update(src.duplicate());
+        buffer.put(src);
+    }
+
+    /**
+     * Stop digesting on every write, for chunks whose header is patched after
+     * the body is written. {@link #updateDigest()} catches up in one pass.
+     */
+    void deferDigest()
+    {
+        digestDeferred = true;
+    }
+
+    void putLong(int index, long value)
+    {
+        buffer.putLong(index, value);
+    }
+
+    void updateDigest()
+    {
+        if (!digestDeferred)
+            return;
+        ByteBuffer dup = buffer.duplicate();
+        dup.flip();
+        digest.reset();
+        digest.update(dup);
+        digestDeferred = false;
+    }
+
+    /**
+     * Finish writing, the data can be read and the MD5 is available after this call.
+     */
+    public void seal()
+    {
+        if (md5 != null)
+            return;
+        updateDigest();
+        md5 = digest.digest();
+        buffer.flip();
+    }
+
+    public boolean isSealed()
+    {
+        return md5 != null;
+    }
+
+    /**
+     * Number of bytes written to the chunk
+     */
+    public int length()
+    {
+        return isSealed() ? buffer.limit() : buffer.position();
+    }
+
+    public int capacity()
+    {
+        return buffer.capacity();
+    }
+
+    public byte[] getMd5()
+    {
+        if (md5 == null)
+            throw new IllegalStateException("Chunk is not sealed yet");
+        return md5;
+    }
+
+    /**
+     * Creates a new stream over the sealed data. Every call starts from the
+     * first byte so that a failed upload can be retried.
+     */
+    public InputStream newInputStream()
+    {
+        if (md5 == null)
+            throw new IllegalStateException("Chunk is not sealed yet");
+        return new ChunkInputStream(buffer.duplicate());
+    }
+
+    /**
+     * Copy of the sealed data as a byte array.
+     */
+    public byte[] toByteArray()
+    {
+        ByteBuffer dup = buffer.duplicate();
+        if (!isSealed())
+            dup.flip();
+        byte[] data = new byte[dup.remaining()];
+        dup.get(data);
+        return data;
+    }
+
+    /**
+     * Returns this chunk to the pool it was taken from.
+     */
+    public void release()
+    {
+        if (pooled)
+            return;
+        pooled = true;
+        pool.release(this);
+    }
+
+    void reset(int minCapacity)
+    {
+        if (buffer.capacity() < minCapacity)
+            buffer = ByteBuffer.allocateDirect(minCapacity);
+        buffer.clear();
+        digest.reset();
+        md5 = null;
+        digestDeferred = false;
+        pooled = false;
+    }
+
+    private void ensureCapacity(int required)
+    {
+        if (required <= buffer.capacity())
+            return;
+        // Should be rare, the pool sizes buffers with enough headroom for a chunk.
+        ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(required, buffer.capacity() + (buffer.capacity() >> 1)));
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
+    }
+
+    private class ChunkOutputStream extends OutputStream
+    {
+        @Override
+        public void write(int b)
+        {
+            ChunkBuffer.this.write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+        {
+            ChunkBuffer.this.write(b, off, len);
+        }
+    }
+
+    private static class ChunkInputStream extends InputStream
+    {
+        private final ByteBuffer data;
+        private int markPosition;
+
+        ChunkInputStream(ByteBuffer data)
+        {
+            this.data = data;
+        }
+
+        @Override
+        public int read()
+        {
+            if (!data.hasRemaining())
+                return -1;
+            return data.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len)
+        {
+            if (len == 0)
+                return 0;
+            if (!data.hasRemaining())
+                return -1;
+            int count = Math.min(len, data.remaining());
+            data.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n)
+        {
+            int count = (int) Math.min(Math.max(n, 0), data.remaining());
+            data.position(data.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available()
+        {
+            return data.remaining();
+        }
+
+        @Override
+        public boolean markSupported()
+        {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit)
+        {
+            markPosition = data.position();
+        }
+
+        @Override
+        public synchronized void reset()
+        {
+            data.position(markPosition);
+        }
+    }
+}
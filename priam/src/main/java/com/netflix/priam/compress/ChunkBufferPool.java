@@ -0,0 +1,106 @@
+/**
+ * Copyright 2013 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.priam.compress;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded pool of {@link ChunkBuffer}s. Buffers are allocated lazily up to
+ * maxBuffers, after which {@link #acquire(long)} blocks until a buffer is
+ * released. This caps the memory used by uploads at a fixed number of parts,
+ * no matter how large the file being uploaded is.
+ */
+public class ChunkBufferPool
+{
+    private static final Logger logger = LoggerFactory.getLogger(ChunkBufferPool.class);
+    // Compressed blocks are appended whole, leave room for the last one to spill over the chunk size.
+    public static final int CHUNK_HEADROOM = 256 * 1024;
+    private static final long WAIT_LOG_INTERVAL_SEC = 60;
+
+    private final LinkedBlockingQueue<ChunkBuffer> free = new LinkedBlockingQueue<ChunkBuffer>();
+    private final AtomicInteger allocated = new AtomicInteger();
+    private final int maxBuffers;
+
+    public ChunkBufferPool(int maxBuffers)
+    {
+        if (maxBuffers < 1)
+            throw new IllegalArgumentException("Pool needs at least one buffer");
+        this.maxBuffers = maxBuffers;
+    }
+
+    /**
+     * Get an empty buffer which can hold at least chunkSize bytes (plus
+     * headroom). Blocks while all the buffers are in use.
+     */
+    public ChunkBuffer acquire(long chunkSize)
+    {
+        int capacity = (int) Math.min(Integer.MAX_VALUE, chunkSize + CHUNK_HEADROOM);
+        ChunkBuffer chunk = free.poll();
+        if (chunk == null)
+            chunk = allocate(capacity);
+        try
+        {
+            while (chunk == null)
+            {
+                chunk = free.poll(WAIT_LOG_INTERVAL_SEC, TimeUnit.SECONDS);
+                if (chunk == null)
+                    logger.info("Waiting for a free chunk buffer, all {} are in use", maxBuffers);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        chunk.reset(capacity);
+        return chunk;
+    }
+
+    void release(ChunkBuffer chunk)
+    {
+        free.offer(chunk);
+    }
+
+    private ChunkBuffer allocate(int capacity)
+    {
+        while (true)
+        {
+            int count = allocated.get();
+            if (count >= maxBuffers)
+                return null;
+            if (allocated.compareAndSet(count, count + 1))
+                return new ChunkBuffer(this, capacity);
+        }
+    }
+
+    public int getMaxBuffers()
+    {
+        return maxBuffers;
+    }
+
+    /**
+     * Number of buffers handed out and not yet released
+     */
+    public int getInUseCount()
+    {
+        return allocated.get() - free.size();
+    }
+}
@@ -16,31 +16,40 @@
 package com.netflix.priam.compress;
 
 import org.apache.commons.io.IOUtils;
-import org.xerial.snappy.SnappyOutputStream;
 
-import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 /**
- * Byte iterator representing compressed data.
- * Uses snappy compression
+ * Chunk iterator representing compressed data.
+ * Compresses with the given codec straight into pooled chunk buffers.
  */
-public class ChunkedStream implements Iterator<byte[]>
+public class ChunkedStream implements Iterator<ChunkBuffer>, Closeable
 {
     private boolean hasnext = true;
-    private ByteArrayOutputStream bos;
-    private SnappyOutputStream compress;
-    private InputStream origin;
-    private long chunkSize;
-    private static int BYTES_TO_READ = 2048;
+    private final ChunkBufferPool pool;
+    private final ChunkSink sink = new ChunkSink();
+    private final OutputStream compress;
+    private final InputStream origin;
+    private final long chunkSize;
+    private final byte[] data = new byte[BYTES_TO_READ];
+    private static final int BYTES_TO_READ = 64 * 1024;
 
-    public ChunkedStream(InputStream is, long chunkSize) throws IOException
+    public ChunkedStream(InputStream is, ChunkBufferPool pool, long chunkSize) throws IOException
+    {
+        this(is, pool, chunkSize, new SnappyCompression());
+    }
+
+    public ChunkedStream(InputStream is, ChunkBufferPool pool, long chunkSize, ICompression codec) throws IOException
     {
         this.origin = is;
-        this.bos = new ByteArrayOutputStream();
-        this.compress = new SnappyOutputStream(bos);
+        this.pool = pool;
         this.chunkSize = chunkSize;
+        this.sink.current = pool.acquire(chunkSize);
+        this.compress = codec.newCompressor(sink);
     }
 
     @Override
@@ -50,16 +59,21 @@ public class ChunkedStream implements Iterator<byte[]>
     }
 
     @Override
-    public byte[] next()
+    public ChunkBuffer next()
     {
+        if (!hasnext)
+            throw new NoSuchElementException();
         try
         {
-            byte data[] = new byte[BYTES_TO_READ];
+            // The next buffer is only taken once the consumer asks for it, a
+            // stream waiting on its consumer holds no buffer.
+            if (sink.current == null)
+                sink.current = pool.acquire(chunkSize);
             int count;
             while ((count = origin.read(data, 0, data.length)) != -1)
             {
                 compress.write(data, 0, count);
-                if (bos.size() >= chunkSize)
+                if (sink.current.length() >= chunkSize)
                     return returnSafe();
             }
             // We don't have anything else to read hence set to false.
@@ -67,31 +81,74 @@ public class ChunkedStream implements Iterator<byte[]>
         }
         catch (IOException e)
         {
+            close();
             throw new RuntimeException(e);
         }
+        catch (RuntimeException e)
+        {
+            close();
+            throw e;
+        }
     }
 
-    private byte[] done() throws IOException
+    private ChunkBuffer done() throws IOException
     {
         compress.flush();
-        byte[] return_ = bos.toByteArray();
-        hasnext = false;
         IOUtils.closeQuietly(compress);
-        IOUtils.closeQuietly(bos);
         IOUtils.closeQuietly(origin);
+        ChunkBuffer return_ = sink.current;
+        sink.current = null;
+        hasnext = false;
+        return_.seal();
         return return_;
     }
 
-    private byte[] returnSafe() throws IOException
+    private ChunkBuffer returnSafe() throws IOException
     {
-        byte[] return_ = bos.toByteArray();
-        bos.reset();
+        ChunkBuffer return_ = sink.current;
+        return_.seal();
+        sink.current = null;
         return return_;
     }
 
+    /**
+     * Stop reading and give back the buffer being filled, used when the
+     * consumer bails out before the stream is exhausted.
+     */
+    @Override
+    public void close()
+    {
+        hasnext = false;
+        IOUtils.closeQuietly(origin);
+        if (sink.current != null)
+        {
+            sink.current.release();
+            sink.current = null;
+        }
+    }
+
     @Override
     public void remove()
     {
     }
 
+    /**
+     * Forwards compressed bytes to whichever chunk is currently being filled.
+     */
+    private static class ChunkSink extends OutputStream
+    {
+        private ChunkBuffer current;
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            current.getOutputStream().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            current.write(b, off, len);
+        }
+    }
 }
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2013 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.priam.compress;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.priam.IConfiguration;
+import com.netflix.priam.backup.AbstractBackupPath;
+import com.netflix.priam.backup.AbstractBackupPath.BackupFileType;
+
+/**
+ * Picks the codec to compress each type of backup file with, and the codec
+ * to decompress an object with from the tag recorded at upload.
+ */
+@Singleton
+public class CompressionCodecs
+{
+    private static final Logger logger = LoggerFactory.getLogger(CompressionCodecs.class);
+    private static final String DATA_COMPONENT = "Data.db";
+    private static final String COMPRESSION_INFO_COMPONENT = "CompressionInfo.db";
+    private final IConfiguration config;
+    private final ICompression defaultCodec;
+    private final Map<CompressionType, ICompression> codecs = Maps.newEnumMap(CompressionType.class);
+
+    @Inject
+    public CompressionCodecs(IConfiguration config, ICompression defaultCodec)
+    {
+        this.config = config;
+        this.defaultCodec = defaultCodec;
+        register(new SnappyCompression());
+        register(new LZ4Compression());
+        register(new LZFCompression());
+        register(new NoCompression());
+        // The bound implementation wins for its own type.
+        register(defaultCodec);
+    }
+
+    private void register(ICompression codec)
+    {
+        codecs.put(codec.getType(), codec);
+    }
+
+    public ICompression get(CompressionType type)
+    {
+        return codecs.get(type);
+    }
+
+    /**
+     * Codec to upload a local file with. Data of SSTables which Cassandra
+     * already compressed is stored as is, compressing it again costs CPU and
+     * saves next to nothing.
+     */
+    public ICompression forPath(AbstractBackupPath path)
+    {
+        if (config.isSkipCompressedSSTables() && (path.getType() == BackupFileType.SNAP || path.getType() == BackupFileType.SST)
+                && path.isCassandraCompressed())
+            return get(CompressionType.NONE);
+        return forFileType(path.getType());
+    }
+
+    /**
+     * Data files of the listed SSTables which Cassandra compressed. Compressed
+     * SSTables carry a CompressionInfo component next to the data, eg.
+     * KS1-CF1-ic-100-Data.db and KS1-CF1-ic-100-CompressionInfo.db. Decided
+     * from the listing before any of the files is uploaded, as the components
+     * are deleted once uploaded.
+     */
+    public static Set<File> compressedDataFiles(Collection<File> files)
+    {
+        Set<File> listed = Sets.newHashSet(files);
+        Set<File> compressed = Sets.newHashSet();
+        for (File file : files)
+        {
+            String name = file.getName();
+            if (!name.endsWith("-" + DATA_COMPONENT))
+                continue;
+            String prefix = name.substring(0, name.length() - DATA_COMPONENT.length());
+            if (listed.contains(new File(file.getParentFile(), prefix + COMPRESSION_INFO_COMPONENT)))
+                compressed.add(file);
+        }
+        return compressed;
+    }
+
+    /**
+     * Codec configured for the file type, the bound ICompression if none is.
+     */
+    public ICompression forFileType(BackupFileType type)
+    {
+        String name = config.getBackupCompression(type.name());
+        if (StringUtils.isBlank(name))
+            return defaultCodec;
+        CompressionType codecType = CompressionType.fromTag(name);
+        if (codecType == null)
+        {
+            logger.warn(String.format("Unknown compression %s for %s files, using %s", name, type, defaultCodec.getType().tag()));
+            return defaultCodec;
+        }
+        return get(codecType);
+    }
+
+    /**
+     * Codec an object was written with. Objects uploaded before the codec
+     * was recorded carry no tag and are snappy.
+     */
+    public ICompression forTag(String tag)
+    {
+        if (StringUtils.isBlank(tag))
+            return get(CompressionType.SNAPPY);
+        CompressionType codecType = CompressionType.fromTag(tag);
+        if (codecType == null)
+            throw new IllegalArgumentException("Unknown compression: " + tag);
+        return get(codecType);
+    }
+}
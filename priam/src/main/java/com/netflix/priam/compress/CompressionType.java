@@ -0,0 +1,45 @@
+/**
+ * Copyright 2013 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.priam.compress;
+
+/**
+ * Compression codecs a backup file can be written with.
+ */
+public enum CompressionType
+{
+    SNAPPY, LZ4, LZF, NONE;
+
+    /**
+     * Name recorded with the object and used in the configuration
+     */
+    public String tag()
+    {
+        return name().toLowerCase();
+    }
+
+    /**
+     * @return the type with the given tag, null if there is none
+     */
+    public static CompressionType fromTag(String tag)
+    {
+        for (CompressionType type : values())
+        {
+            if (type.name().equalsIgnoreCase(tag))
+                return type;
+        }
+        return null;
+    }
+}
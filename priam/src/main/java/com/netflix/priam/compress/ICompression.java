@@ -25,6 +25,11 @@ import java.util.Iterator;
 @ImplementedBy(SnappyCompression.class)
 public interface ICompression
 {
+    /**
+     * Codec implemented, recorded with every object it compresses
+     */
+    public CompressionType getType();
+
     /**
      * Uncompress the input stream and write to the output stream.
      * Closes both input and output streams
@@ -35,4 +40,21 @@ public interface ICompression
      * Produces chunks of compressed data.
      */
     public Iterator<byte[]> compress(InputStream is, long chunkSize) throws IOException;
+
+    /**
+     * Produces chunks of compressed data in buffers taken from the pool. The
+     * caller owns each returned chunk and has to release it when done.
+     */
+    public Iterator<ChunkBuffer> compress(InputStream is, ChunkBufferPool pool, long chunkSize) throws IOException;
+
+    /**
+     * Wraps out so that bytes written to the returned stream are compressed.
+     * Closing the returned stream finishes the compressed stream.
+     */
+    public OutputStream newCompressor(OutputStream out) throws IOException;
+
+    /**
+     * Wraps a compressed stream, the returned stream reads the plain bytes.
+     */
+    public InputStream newDecompressor(InputStream in) throws IOException;
 }
@@ -0,0 +1,51 @@
+/**
+ * Copyright 2013 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.priam.compress;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import net.jpountz.lz4.LZ4BlockInputStream;
+import net.jpountz.lz4.LZ4BlockOutputStream;
+import net.jpountz.lz4.LZ4Factory;
+
+/**
+ * LZ4 block streams, compresses about as well as snappy but decompresses
+ * considerably faster which shortens restores.
+ */
+public class LZ4Compression extends AbstractCompression
+{
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private final LZ4Factory factory = LZ4Factory.fastestInstance();
+
+    @Override
+    public CompressionType getType()
+    {
+        return CompressionType.LZ4;
+    }
+
+    @Override
+    public OutputStream newCompressor(OutputStream out)
+    {
+        return new LZ4BlockOutputStream(out, BLOCK_SIZE, factory.fastCompressor());
+    }
+
+    @Override
+    public InputStream newDecompressor(InputStream in)
+    {
+        return new LZ4BlockInputStream(in, factory.decompressor());
+    }
+}
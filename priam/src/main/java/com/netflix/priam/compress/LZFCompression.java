@@ -0,0 +1,47 @@
+/**
+ * Copyright 2013 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.priam.compress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.ning.compress.lzf.LZFInputStream;
+import com.ning.compress.lzf.LZFOutputStream;
+
+/**
+ * LZF streams, pure java so it works where the native snappy library does not load.
+ */
+public class LZFCompression extends AbstractCompression
+{
+    @Override
+    public CompressionType getType()
+    {
+        return CompressionType.LZF;
+    }
+
+    @Override
+    public OutputStream newCompressor(OutputStream out)
+    {
+        return new LZFOutputStream(out);
+    }
+
+    @Override
+    public InputStream newDecompressor(InputStream in) throws IOException
+    {
+        return new LZFInputStream(in);
+    }
+}
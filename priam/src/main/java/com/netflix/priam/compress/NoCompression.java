@@ -0,0 +1,52 @@
+/**
+ * Copyright 2013 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.priam.compress;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Stores the data as is, for files which do not compress any further.
+ */
+public class NoCompression extends AbstractCompression
+{
+    @Override
+    public CompressionType getType()
+    {
+        return CompressionType.NONE;
+    }
+
+    @Override
+    public OutputStream newCompressor(OutputStream out)
+    {
+        return new FilterOutputStream(out)
+        {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException
+            {
+                out.write(b, off, len);
+            }
+        };
+    }
+
+    @Override
+    public InputStream newDecompressor(InputStream in)
+    {
+        return in;
+    }
+}
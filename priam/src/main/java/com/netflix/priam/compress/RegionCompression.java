@@ -0,0 +1,321 @@
+/**
+ * Copyright 2013 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.priam.compress;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compresses a file as independent regions so that several cores can work on
+ * one large file. Each region is read with positional reads and compressed
+ * into a self-contained frame:
+ *
+ * <pre>
+ * [8 byte length of the compressed frame][compressed stream of the region]
+ * </pre>
+ *
+ * Frames are handed out in file order. A frame large enough to be a part is
+ * handed out as is, smaller ones are coalesced so every part (but the last)
+ * is at least chunkSize bytes.
+ */
+public class RegionCompression
+{
+    private static final Logger logger = LoggerFactory.getLogger(RegionCompression.class);
+    /**
+     * Appended to the codec tag of objects written in this format.
+     */
+    public static final String TAG_SUFFIX = "-regions";
+    private static final int HEADER_SIZE = 8;
+    private static final int BYTES_TO_READ = 64 * 1024;
+    private static final int BUFFER = 64 * 1024;
+
+    private final ExecutorService executor;
+    private final ChunkBufferPool pool;
+    private final int parallelism;
+
+    /**
+     * @param parallelism number of regions compressed ahead of the consumer
+     */
+    public RegionCompression(ExecutorService executor, ChunkBufferPool pool, int parallelism)
+    {
+        this.executor = executor;
+        this.pool = pool;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Compress the file in regions of chunkSize bytes. The returned chunks
+     * are sealed and owned by the caller, who has to release them.
+     */
+    public Iterator<ChunkBuffer> compress(File file, long chunkSize, ICompression codec) throws IOException
+    {
+        return new RegionIterator(file, chunkSize, codec);
+    }
+
+    /**
+     * Tag of objects written in this format with the given codec
+     */
+    public static String tag(ICompression codec)
+    {
+        return codec.getType().tag() + TAG_SUFFIX;
+    }
+
+    /**
+     * Uncompress a stream of frames written by {@link #compress(File, long, ICompression)}.
+     * Closes both input and output streams.
+     */
+    public static void decompressAndClose(ICompression codec, InputStream input, OutputStream output) throws IOException
+    {
+        InputStream in = new BufferedInputStream(input);
+        OutputStream out = new BufferedOutputStream(output, BUFFER);
+        try
+        {
+            byte data[] = new byte[BUFFER];
+            long frameLength;
+            while ((frameLength = readFrameLength(in)) >= 0)
+            {
+                BoundedInputStream frame = new BoundedInputStream(in, frameLength);
+                frame.setPropagateClose(false);
+                InputStream is = codec.newDecompressor(frame);
+                int c;
+                while ((c = is.read(data, 0, BUFFER)) != -1)
+                    out.write(data, 0, c);
+                // Drain anything the decompressor left behind so the next header lines up.
+                while (frame.read(data, 0, BUFFER) != -1)
+                {
+                }
+            }
+            // Outputs may only report write errors on close
+            out.close();
+        }
+        finally
+        {
+            IOUtils.closeQuietly(out);
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * @return the length of the next frame, -1 at the end of the stream
+     */
+    private static long readFrameLength(InputStream in) throws IOException
+    {
+        int first = in.read();
+        if (first == -1)
+            return -1;
+        long length = first & 0xFF;
+        for (int i = 1; i < HEADER_SIZE; i++)
+        {
+            int b = in.read();
+            if (b == -1)
+                throw new EOFException("Truncated frame header");
+            length = (length << 8) | (b & 0xFF);
+        }
+        return length;
+    }
+
+    private class RegionIterator implements Iterator<ChunkBuffer>, Closeable
+    {
+        private final RandomAccessFile raf;
+        private final FileChannel channel;
+        private final long chunkSize;
+        private final ICompression codec;
+        private final long regionCount;
+        private final LinkedList<Future<ChunkBuffer>> inflight = new LinkedList<Future<ChunkBuffer>>();
+        private long nextRegion = 0;
+        private boolean closed = false;
+
+        RegionIterator(File file, long chunkSize, ICompression codec) throws IOException
+        {
+            this.raf = new RandomAccessFile(file, "r");
+            this.channel = raf.getChannel();
+            this.chunkSize = chunkSize;
+            this.codec = codec;
+            long length = channel.size();
+            // An empty file still gets one (empty) frame.
+            this.regionCount = Math.max(1, (length + chunkSize - 1) / chunkSize);
+            fill();
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return !closed && (!inflight.isEmpty() || nextRegion < regionCount);
+        }
+
+        @Override
+        public ChunkBuffer next()
+        {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            ChunkBuffer part = null;
+            try
+            {
+                part = take();
+                while (part.length() < chunkSize && hasNext())
+                {
+                    ChunkBuffer frame = take();
+                    try
+                    {
+                        part.append(frame);
+                    }
+                    finally
+                    {
+                        frame.release();
+                    }
+                }
+                part.seal();
+                if (!hasNext())
+                    close();
+                return part;
+            }
+            catch (Exception e)
+            {
+                if (part != null)
+                    part.release();
+                close();
+                if (e instanceof RuntimeException)
+                    throw (RuntimeException) e;
+                throw new RuntimeException(e);
+            }
+        }
+
+        private ChunkBuffer take() throws InterruptedException, ExecutionException
+        {
+            fill();
+            Future<ChunkBuffer> future = inflight.removeFirst();
+            ChunkBuffer frame = future.get();
+            fill();
+            return frame;
+        }
+
+        private void fill()
+        {
+            while (inflight.size() < parallelism && nextRegion < regionCount)
+            {
+                long position = nextRegion * chunkSize;
+                inflight.add(executor.submit(new CompressRegion(channel, position, chunkSize, codec)));
+                nextRegion++;
+            }
+        }
+
+        /**
+         * Waits for the regions still being compressed and hands their
+         * buffers back, the file is closed once nothing reads from it.
+         */
+        @Override
+        public void close()
+        {
+            if (closed)
+                return;
+            closed = true;
+            nextRegion = regionCount;
+            while (!inflight.isEmpty())
+            {
+                try
+                {
+                    inflight.removeFirst().get().release();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                catch (ExecutionException e)
+                {
+                    logger.debug("Region compression failed while closing", e);
+                }
+            }
+            IOUtils.closeQuietly(raf);
+        }
+
+        @Override
+        public void remove()
+        {
+        }
+    }
+
+    private class CompressRegion implements Callable<ChunkBuffer>
+    {
+        private final FileChannel channel;
+        private final long position;
+        private final long length;
+        private final ICompression codec;
+
+        CompressRegion(FileChannel channel, long position, long length, ICompression codec)
+        {
+            this.channel = channel;
+            this.position = position;
+            this.length = length;
+            this.codec = codec;
+        }
+
+        @Override
+        public ChunkBuffer call() throws Exception
+        {
+            ChunkBuffer frame = pool.acquire(length);
+            try
+            {
+                frame.deferDigest();
+                frame.write(new byte[HEADER_SIZE], 0, HEADER_SIZE);
+                OutputStream compress = codec.newCompressor(frame.getOutputStream());
+                byte[] data = new byte[BYTES_TO_READ];
+                ByteBuffer bb = ByteBuffer.wrap(data);
+                long offset = position;
+                long end = position + length;
+                while (offset < end)
+                {
+                    bb.clear();
+                    bb.limit((int) Math.min(data.length, end - offset));
+                    int count = channel.read(bb, offset);
+                    if (count == -1)
+                        break;
+                    compress.write(data, 0, count);
+                    offset += count;
+                }
+                compress.close();
+                frame.putLong(0, frame.length() - HEADER_SIZE);
+                frame.updateDigest();
+                return frame;
+            }
+            catch (Exception e)
+            {
+                frame.release();
+                throw e;
+            }
+        }
+    }
+}
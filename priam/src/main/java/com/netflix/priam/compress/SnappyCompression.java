@@ -15,61 +15,34 @@
  */
 package com.netflix.priam.compress;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.Iterator;
 
-import org.apache.commons.io.IOUtils;
 import org.xerial.snappy.SnappyInputStream;
+import org.xerial.snappy.SnappyOutputStream;
 
 /**
  * Class to generate compressed chunks of data from an input stream using
  * SnappyCompression
  */
-public class SnappyCompression implements ICompression
+public class SnappyCompression extends AbstractCompression
 {
-    private static final int BUFFER = 2 * 1024;
-
     @Override
-    public Iterator<byte[]> compress(InputStream is, long chunkSize) throws IOException
+    public CompressionType getType()
     {
-        return new ChunkedStream(is, chunkSize);
+        return CompressionType.SNAPPY;
     }
 
     @Override
-    public void decompressAndClose(InputStream input, OutputStream output) throws IOException
+    public OutputStream newCompressor(OutputStream out) throws IOException
     {
-        try
-        {
-            decompress(input, output);
-        }
-        finally
-        {
-            IOUtils.closeQuietly(input);
-            IOUtils.closeQuietly(output);
-        }
+        return new SnappyOutputStream(out);
     }
 
-    private void decompress(InputStream input, OutputStream output) throws IOException
+    @Override
+    public InputStream newDecompressor(InputStream in) throws IOException
     {
-        SnappyInputStream is = new SnappyInputStream(new BufferedInputStream(input));
-        byte data[] = new byte[BUFFER];
-        BufferedOutputStream dest1 = new BufferedOutputStream(output, BUFFER);
-        try
-        {
-            int c;
-            while ((c = is.read(data, 0, BUFFER)) != -1)
-            {
-                dest1.write(data, 0, c);
-            }
-        }
-        finally
-        {
-            IOUtils.closeQuietly(dest1);
-            IOUtils.closeQuietly(is);
-        }
+        return new SnappyInputStream(in);
     }
 }
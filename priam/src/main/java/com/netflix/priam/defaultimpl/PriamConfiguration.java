@@ -62,6 +62,13 @@ public class PriamConfiguration implements IConfiguration
     private static final String CONFIG_SSL_STORAGE_LISTERN_PORT_NAME = PRIAM_PRE + ".ssl.storage.port";
     private static final String CONFIG_CL_BK_LOCATION = PRIAM_PRE + ".backup.commitlog.location";
     private static final String CONFIG_THROTTLE_UPLOAD_PER_SECOND = PRIAM_PRE + ".upload.throttle";
+    private static final String CONFIG_THROTTLE_UPLOAD_MIN = PRIAM_PRE + ".upload.throttle.min";
+    private static final String CONFIG_THROTTLE_READ_LATENCY = PRIAM_PRE + ".upload.throttle.readlatency";
+    private static final String CONFIG_THROTTLE_WRITE_LATENCY = PRIAM_PRE + ".upload.throttle.writelatency";
+    private static final String CONFIG_THROTTLE_PENDING_COMPACTIONS = PRIAM_PRE + ".upload.throttle.pendingcompactions";
+    private static final String CONFIG_THROTTLE_PENDING_READS = PRIAM_PRE + ".upload.throttle.pendingreads";
+    private static final String CONFIG_THROTTLE_DOWNLOAD_PER_SECOND = PRIAM_PRE + ".download.throttle";
+    private static final String CONFIG_THROTTLE_RESTORE_WRITE_PER_SECOND = PRIAM_PRE + ".restore.write.throttle";
     private static final String CONFIG_IN_MEMORY_COMPACTION_LIMIT = PRIAM_PRE + ".memory.compaction.limit";
     private static final String CONFIG_COMPACTION_THROUHPUT = PRIAM_PRE + ".compaction.throughput";
     private static final String CONFIG_MAX_HINT_WINDOW_IN_MS = PRIAM_PRE + ".hint.window";
@@ -88,9 +95,25 @@ public class PriamConfiguration implements IConfiguration
     private static final String CONFIG_BACKUP_HOUR = PRIAM_PRE + ".backup.hour";
     private static final String CONFIG_S3_BASE_DIR = PRIAM_PRE + ".s3.base_dir";
     private static final String CONFIG_RESTORE_THREADS = PRIAM_PRE + ".restore.threads";
+    private static final String CONFIG_BACKUP_LIST_THREADS = PRIAM_PRE + ".backup.list.threads";
+    private static final String CONFIG_RESTORE_RANGE_THREADS = PRIAM_PRE + ".restore.range.threads";
+    private static final String CONFIG_RESTORE_RANGE_SIZE = PRIAM_PRE + ".restore.range.sizemb";
     private static final String CONFIG_RESTORE_CLOSEST_TOKEN = PRIAM_PRE + ".restore.closesttoken";
     private static final String CONFIG_RESTORE_KEYSPACES = PRIAM_PRE + ".restore.keyspaces";
+    private static final String CONFIG_RESTORE_PRIORITY_KEYSPACES = PRIAM_PRE + ".restore.priority.keyspaces";
     private static final String CONFIG_BACKUP_CHUNK_SIZE = PRIAM_PRE + ".backup.chunksizemb";
+    private static final String CONFIG_BACKUP_SINGLE_PUT_THRESHOLD = PRIAM_PRE + ".backup.singleput.thresholdkb";
+    private static final String CONFIG_BACKUP_JOURNAL_LOCATION = PRIAM_PRE + ".backup.journal.location";
+    private static final String CONFIG_BACKUP_INDEX_LOCATION = PRIAM_PRE + ".backup.index.location";
+    private static final String CONFIG_RESTORE_TRACKER_LOCATION = PRIAM_PRE + ".restore.tracker.location";
+    private static final String CONFIG_BACKUP_CATALOG_LOCATION = PRIAM_PRE + ".backup.catalog.location";
+    private static final String CONFIG_BACKUP_CATALOG_HORIZON = PRIAM_PRE + ".backup.catalog.horizondays";
+    private static final String CONFIG_BACKUP_DEDUP_MAX_AGE = PRIAM_PRE + ".backup.dedup.maxagedays";
+    private static final String CONFIG_BACKUP_REGION_SPLIT_THRESHOLD = PRIAM_PRE + ".backup.regionsplit.thresholdmb";
+    private static final String CONFIG_BACKUP_COMPRESSION = PRIAM_PRE + ".backup.compression";
+    private static final String CONFIG_BACKUP_SKIP_COMPRESSED = PRIAM_PRE + ".backup.skipcompressed";
+    private static final String CONFIG_BACKUP_FILE_THREADS = PRIAM_PRE + ".backup.file.threads";
+    private static final String CONFIG_BACKUP_INFLIGHT = PRIAM_PRE + ".backup.inflightmb";
     private static final String CONFIG_BACKUP_RETENTION = PRIAM_PRE + ".backup.retention";
     private static final String CONFIG_BACKUP_RACS = PRIAM_PRE + ".backup.racs";
     private static final String CONFIG_MULTITHREADED_COMPACTION = PRIAM_PRE + ".multithreaded.compaction";
@@ -157,6 +180,12 @@ public class PriamConfiguration implements IConfiguration
     private final String DEFAULT_DATA_LOCATION = "/var/lib/cassandra/data";
     private final String DEFAULT_COMMIT_LOG_LOCATION = "/var/lib/cassandra/commitlog";
     private final String DEFAULT_CACHE_LOCATION = "/var/lib/cassandra/saved_caches";
+    private final String DEFAULT_BACKUP_JOURNAL_LOCATION = "/var/lib/cassandra/upload_journal";
+    private final String DEFAULT_BACKUP_INDEX_LOCATION = "/var/lib/cassandra/upload_index";
+    private final String DEFAULT_RESTORE_TRACKER_LOCATION = "/var/lib/cassandra/restore_tracker";
+    private final String DEFAULT_BACKUP_CATALOG_LOCATION = "/var/lib/cassandra/backup_catalog";
+    private final int DEFAULT_BACKUP_CATALOG_HORIZON = 30;
+    private final int DEFAULT_BACKUP_DEDUP_MAX_AGE = 0;
     private final String DEFAULT_ENDPOINT_SNITCH = "org.apache.cassandra.locator.Ec2Snitch";
     private final String DEFAULT_SEED_PROVIDER = "com.netflix.priam.cassandra.extensions.NFSeedProvider";
     private final String DEFAULT_PARTITIONER = "org.apache.cassandra.dht.RandomPartitioner";
@@ -184,11 +213,22 @@ public class PriamConfiguration implements IConfiguration
     private final int DEFAULT_BACKUP_HOUR = 12;
     private final int DEFAULT_BACKUP_THREADS = 2;
     private final int DEFAULT_RESTORE_THREADS = 8;
+    private final int DEFAULT_BACKUP_LIST_THREADS = 8;
+    private final int DEFAULT_RESTORE_RANGE_THREADS = 4;
+    private final int DEFAULT_RESTORE_RANGE_SIZE = 8;
     private final int DEFAULT_BACKUP_CHUNK_SIZE = 10;
+    private final int DEFAULT_BACKUP_SINGLE_PUT_THRESHOLD = 5 * 1024;
+    private final int DEFAULT_BACKUP_REGION_SPLIT_THRESHOLD = 0;
+    private final int DEFAULT_BACKUP_FILE_THREADS = 4;
+    private final int DEFAULT_BACKUP_INFLIGHT = 1024;
     private final int DEFAULT_BACKUP_RETENTION = 0;
     private final int DEFAULT_VNODE_NUM_TOKENS = 1;
     private final int DEFAULT_HINTS_MAX_THREADS = 2; //default value from 1.2 yaml
     private final int DEFAULT_HINTS_THROTTLE_KB = 1024; //default value from 1.2 yaml
+    private final int DEFAULT_THROTTLE_READ_LATENCY = 10000;
+    private final int DEFAULT_THROTTLE_WRITE_LATENCY = 2000;
+    private final int DEFAULT_THROTTLE_PENDING_COMPACTIONS = 20;
+    private final int DEFAULT_THROTTLE_PENDING_READS = 32;
     private final String DEFAULT_INTERNODE_COMPRESSION = "all";  //default value from 1.2 yaml
     
     private static final String DEFAULT_RPC_SERVER_TYPE = "hsha";
@@ -390,6 +430,12 @@ public class PriamConfiguration implements IConfiguration
         return config.getList(CONFIG_RESTORE_KEYSPACES);
     }
 
+    @Override
+    public List<String> getRestorePriorityKeySpaces()
+    {
+        return config.getList(CONFIG_RESTORE_PRIORITY_KEYSPACES);
+    }
+
     @Override
     public String getDataFileLocation()
     {
@@ -421,6 +467,83 @@ public class PriamConfiguration implements IConfiguration
         return size*1024*1024L;
     }
 
+    @Override
+    public long getBackupSinglePutThreshold()
+    {
+        long size = config.get(CONFIG_BACKUP_SINGLE_PUT_THRESHOLD, DEFAULT_BACKUP_SINGLE_PUT_THRESHOLD);
+        return size*1024L;
+    }
+
+    @Override
+    public String getBackupJournalLocation()
+    {
+        return config.get(CONFIG_BACKUP_JOURNAL_LOCATION, DEFAULT_BACKUP_JOURNAL_LOCATION);
+    }
+
+    @Override
+    public String getBackupIndexLocation()
+    {
+        return config.get(CONFIG_BACKUP_INDEX_LOCATION, DEFAULT_BACKUP_INDEX_LOCATION);
+    }
+
+    @Override
+    public String getRestoreTrackerLocation()
+    {
+        return config.get(CONFIG_RESTORE_TRACKER_LOCATION, DEFAULT_RESTORE_TRACKER_LOCATION);
+    }
+
+    @Override
+    public String getBackupCatalogLocation()
+    {
+        return config.get(CONFIG_BACKUP_CATALOG_LOCATION, DEFAULT_BACKUP_CATALOG_LOCATION);
+    }
+
+    @Override
+    public int getBackupCatalogHorizonDays()
+    {
+        return config.get(CONFIG_BACKUP_CATALOG_HORIZON, DEFAULT_BACKUP_CATALOG_HORIZON);
+    }
+
+    @Override
+    public int getBackupDedupMaxAgeDays()
+    {
+        return config.get(CONFIG_BACKUP_DEDUP_MAX_AGE, DEFAULT_BACKUP_DEDUP_MAX_AGE);
+    }
+
+    @Override
+    public long getBackupRegionSplitThreshold()
+    {
+        long size = config.get(CONFIG_BACKUP_REGION_SPLIT_THRESHOLD, DEFAULT_BACKUP_REGION_SPLIT_THRESHOLD);
+        return size*1024*1024L;
+    }
+
+    @Override
+    public String getBackupCompression(String fileType)
+    {
+        // priam.backup.compression.sst overrides priam.backup.compression for SST files
+        String codec = config.get(CONFIG_BACKUP_COMPRESSION, "");
+        return config.get(CONFIG_BACKUP_COMPRESSION + "." + fileType.toLowerCase(), codec);
+    }
+
+    @Override
+    public boolean isSkipCompressedSSTables()
+    {
+        return config.get(CONFIG_BACKUP_SKIP_COMPRESSED, true);
+    }
+
+    @Override
+    public int getBackupFileThreads()
+    {
+        return config.get(CONFIG_BACKUP_FILE_THREADS, DEFAULT_BACKUP_FILE_THREADS);
+    }
+
+    @Override
+    public long getBackupInflightBytes()
+    {
+        long size = config.get(CONFIG_BACKUP_INFLIGHT, DEFAULT_BACKUP_INFLIGHT);
+        return size*1024*1024L;
+    }
+
     @Override
     public boolean isCommitLogBackup()
     {
@@ -554,6 +677,25 @@ public class PriamConfiguration implements IConfiguration
         return config.get(CONFIG_RESTORE_THREADS, DEFAULT_RESTORE_THREADS);
     }
 
+    @Override
+    public int getBackupListThreads()
+    {
+        return config.get(CONFIG_BACKUP_LIST_THREADS, DEFAULT_BACKUP_LIST_THREADS);
+    }
+
+    @Override
+    public int getRestoreRangeThreads()
+    {
+        return config.get(CONFIG_RESTORE_RANGE_THREADS, DEFAULT_RESTORE_RANGE_THREADS);
+    }
+
+    @Override
+    public long getRestoreRangeSize()
+    {
+        long size = config.get(CONFIG_RESTORE_RANGE_SIZE, DEFAULT_RESTORE_RANGE_SIZE);
+        return size*1024*1024L;
+    }
+
     @Override
     public boolean isRestoreClosestToken()
     {
@@ -591,6 +733,48 @@ public class PriamConfiguration implements IConfiguration
         return config.get(CONFIG_THROTTLE_UPLOAD_PER_SECOND, Integer.MAX_VALUE);
     }
 
+    @Override
+    public int getUploadThrottleMin()
+    {
+        return config.get(CONFIG_THROTTLE_UPLOAD_MIN, 0);
+    }
+
+    @Override
+    public int getThrottleReadLatencyMicros()
+    {
+        return config.get(CONFIG_THROTTLE_READ_LATENCY, DEFAULT_THROTTLE_READ_LATENCY);
+    }
+
+    @Override
+    public int getThrottleWriteLatencyMicros()
+    {
+        return config.get(CONFIG_THROTTLE_WRITE_LATENCY, DEFAULT_THROTTLE_WRITE_LATENCY);
+    }
+
+    @Override
+    public int getThrottlePendingCompactions()
+    {
+        return config.get(CONFIG_THROTTLE_PENDING_COMPACTIONS, DEFAULT_THROTTLE_PENDING_COMPACTIONS);
+    }
+
+    @Override
+    public int getThrottlePendingReads()
+    {
+        return config.get(CONFIG_THROTTLE_PENDING_READS, DEFAULT_THROTTLE_PENDING_READS);
+    }
+
+    @Override
+    public int getDownloadThrottle()
+    {
+        return config.get(CONFIG_THROTTLE_DOWNLOAD_PER_SECOND, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int getRestoreWriteThrottle()
+    {
+        return config.get(CONFIG_THROTTLE_RESTORE_WRITE_PER_SECOND, Integer.MAX_VALUE);
+    }
+
     @Override
     public boolean isLocalBootstrapEnabled()
     {
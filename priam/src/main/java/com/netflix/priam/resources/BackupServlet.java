@@ -15,16 +15,22 @@
  */
 package com.netflix.priam.resources;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.math.BigInteger;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
@@ -49,6 +55,7 @@ import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
@@ -88,6 +95,7 @@ public class BackupServlet
     private static final String REST_KEYSPACES = "keyspaces";
     private static final String REST_RESTORE_PREFIX = "restoreprefix";
     private static final String FMT = "yyyyMMddHHmm";
+    private static final int LIST_BATCH_SIZE = 100;
 	private static final String REST_LOCR_ROWKEY = "verifyrowkey";
 	private static final String REST_LOCR_KEYSPACE = "verifyks";
 	private static final String REST_LOCR_COLUMNFAMILY = "verifycf";
@@ -109,7 +117,7 @@ public class BackupServlet
     @Inject
     private PriamScheduler scheduler;
     @Inject
-    private MetaData metaData;
+    private MetaSummaries metaSummaries;
 
     @Inject
 
@@ -217,10 +225,26 @@ public class BackupServlet
         
         logger.info("Parameters: {backupPrefix: [" + config.getBackupPrefix() + "], daterange: [" + daterange + "], filter: [" + filter + "]}");
         
-        Iterator<AbstractBackupPath> it = bkpStatusFs.list(config.getBackupPrefix(), startTime, endTime);
-        JSONObject object = new JSONObject();
-        object = constructJsonResponse(object,it,filter);
-        return Response.ok(object.toString(2), MediaType.APPLICATION_JSON).build();
+        String fileType = filter.contains("?") ? filter.substring(0, filter.indexOf("?")) : filter;
+        final BackupFileType type;
+        try
+        {
+            type = fileType.isEmpty() ? null : BackupFileType.valueOf(fileType);
+        }
+        catch (IllegalArgumentException e)
+        {
+            return Response.status(400).entity("Unknown file type " + fileType).build();
+        }
+        final Iterator<AbstractBackupPath> it = bkpStatusFs.list(config.getBackupPrefix(), startTime, endTime);
+        StreamingOutput stream = new StreamingOutput()
+        {
+            @Override
+            public void write(OutputStream os) throws IOException
+            {
+                writeJsonResponse(new BufferedWriter(new OutputStreamWriter(os, Charsets.UTF_8)), it, type);
+            }
+        };
+        return Response.ok(stream, MediaType.APPLICATION_JSON).build();
     }
 
     @GET
@@ -239,6 +263,46 @@ public class BackupServlet
         return Response.ok(object.toString(), MediaType.APPLICATION_JSON).build();
     }
 
+    /**
+     * Files and bytes planned and restored so far, in total, per file type and
+     * per keyspace, with the current throughput and an ETA.
+     */
+    @GET
+    @Path("/restore_status")
+    public Response restoreStatus() throws Exception
+    {
+        RestoreProgress progress = restoreObj.getProgress();
+        JSONObject object = new JSONObject();
+        object.put("running", progress.isRunning());
+        object.put("plannedFiles", progress.getPlannedFiles());
+        object.put("completedFiles", progress.getCompletedFiles());
+        object.put("failedFiles", progress.getFailedFiles());
+        object.put("plannedBytes", progress.getPlannedBytes());
+        object.put("completedBytes", progress.getCompletedBytes());
+        object.put("throughputMBps", progress.getThroughputMBps());
+        object.put("etaSeconds", progress.getEtaSeconds());
+        object.put("phases", toJson(progress.getPhaseCounters()));
+        object.put("keyspaces", toJson(progress.getKeyspaceCounters()));
+        return Response.ok(object.toString(2), MediaType.APPLICATION_JSON).build();
+    }
+
+    private static JSONObject toJson(Map<String, RestoreProgress.Counter> counters) throws JSONException
+    {
+        JSONObject object = new JSONObject();
+        for (Map.Entry<String, RestoreProgress.Counter> entry : counters.entrySet())
+        {
+            RestoreProgress.Counter counter = entry.getValue();
+            JSONObject json = new JSONObject();
+            json.put("plannedFiles", counter.getPlannedFiles());
+            json.put("completedFiles", counter.getCompletedFiles());
+            json.put("failedFiles", counter.getFailedFiles());
+            json.put("plannedBytes", counter.getPlannedBytes());
+            json.put("completedBytes", counter.getCompletedBytes());
+            object.put(entry.getKey(), json);
+        }
+        return object;
+    }
+
     /**
      * <p>
      * Life_Of_C*Row : With this REST call, mutations/existence of a rowkey can be found.
@@ -409,47 +473,71 @@ public class BackupServlet
         }
     }
     
-    private JSONObject constructJsonResponse(JSONObject object, Iterator<AbstractBackupPath> it,String filter) throws Exception
+    /**
+     * Writes the listed files as they are read, in batches so the meta files
+     * of a batch are summarized at the same time. The status is sent by then,
+     * so a failure part way fails the response rather than ending it early.
+     */
+    private void writeJsonResponse(Writer writer, Iterator<AbstractBackupPath> it, BackupFileType type) throws IOException
     {
-		int fileCnt = 0;
-		filter = filter.contains("?") ? filter.substring(0, filter.indexOf("?")) : filter;
+        int fileCnt = 0;
+        List<AbstractBackupPath> batch = Lists.newArrayList();
+        writer.write("{\"files\": [");
+        try
+        {
+            while (it.hasNext())
+            {
+                AbstractBackupPath p = it.next();
+                if (type != null && type != p.getType())
+                    continue;
+                batch.add(p);
+                if (batch.size() >= LIST_BATCH_SIZE)
+                {
+                    fileCnt = writeFiles(writer, batch, type, fileCnt);
+                    batch.clear();
+                }
+            }
+            fileCnt = writeFiles(writer, batch, type, fileCnt);
+        }
+        catch (JSONException jse)
+        {
+            throw new IOException("Unable to write the backup list", jse);
+        }
+        writer.write("\n],\n\"num_files\": " + fileCnt + "}\n");
+        writer.flush();
+    }
 
-		try {
-			JSONArray jArray = new JSONArray();
-			while (it.hasNext()) {
-				AbstractBackupPath p = it.next();
-				if (!filter.isEmpty() && BackupFileType.valueOf(filter) != p.getType())
-					continue;
-                                JSONObject backupJSON = new JSONObject();
-				backupJSON.put("bucket", config.getBackupPrefix());
-				backupJSON.put("filename", p.getRemotePath());
-				backupJSON.put("app", p.getClusterName());
-				backupJSON.put("region", p.getRegion());
-				backupJSON.put("token", p.getToken());
-				backupJSON.put("ts", new DateTime(p.getTime()).toString(FMT));
-				backupJSON.put("instance_id", p.getInstanceIdentity()
-						.getInstance().getInstanceId());
-				backupJSON.put("uploaded_ts",
-						new DateTime(p.getUploadedTs()).toString(FMT));
-				if ("meta".equalsIgnoreCase(filter)) {
-					List<AbstractBackupPath> allFiles = metaData.get(p);
-					long totalSize = 0;
-					for (AbstractBackupPath abp : allFiles)
-						totalSize = totalSize + abp.getSize();
-					backupJSON.put("num_files", Long.toString(allFiles.size()));
-					// keyValues.put("TOTAL-SIZE", Long.toString(totalSize)); //
-					// Add Later
-				}
-				fileCnt++;
-				jArray.put(backupJSON);
-			}
-			object.put("files", jArray);
-			object.put("num_files", fileCnt);
-		} catch (JSONException jse) {
-			logger.info("Caught JSON Exception --> "+jse.getMessage());
-		}
-		return object;
-	}
+    private int writeFiles(Writer writer, List<AbstractBackupPath> batch, BackupFileType type, int fileCnt) throws IOException, JSONException
+    {
+        Map<AbstractBackupPath, MetaSummaries.Summary> summaries = null;
+        if (type == BackupFileType.META)
+            summaries = metaSummaries.get(batch);
+        for (AbstractBackupPath p : batch)
+        {
+            JSONObject backupJSON = new JSONObject();
+            backupJSON.put("bucket", config.getBackupPrefix());
+            backupJSON.put("filename", p.getRemotePath());
+            backupJSON.put("app", p.getClusterName());
+            backupJSON.put("region", p.getRegion());
+            backupJSON.put("token", p.getToken());
+            backupJSON.put("ts", new DateTime(p.getTime()).toString(FMT));
+            backupJSON.put("instance_id", p.getInstanceIdentity().getInstance().getInstanceId());
+            backupJSON.put("uploaded_ts", new DateTime(p.getUploadedTs()).toString(FMT));
+            if (summaries != null)
+            {
+                MetaSummaries.Summary summary = summaries.get(p);
+                backupJSON.put("num_files", Long.toString(summary == null ? 0 : summary.getFiles()));
+                // Size of the files before compression, left out when not known.
+                if (summary != null && summary.getBytes() >= 0)
+                    backupJSON.put("total_size", Long.toString(summary.getBytes()));
+            }
+            writer.write(fileCnt == 0 ? "\n" : ",\n");
+            writer.write(backupJSON.toString());
+            fileCnt++;
+        }
+        writer.flush();
+        return fileCnt;
+    }
 
     /**
      * Convert SSTable2Json and search for given key
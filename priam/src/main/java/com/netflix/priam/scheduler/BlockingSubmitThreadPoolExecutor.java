@@ -24,20 +24,25 @@ import java.util.concurrent.atomic.AtomicInteger;
 /**
  * {@link ThreadPoolExecutor} that will block in the {@code submit()} method
  * until the task can be successfully added to the queue.
+ *
+ * Submitters wait on a semaphore with one permit per thread and queue slot,
+ * so they wake up as soon as a task finishes. Callers that only care about
+ * their own tasks should wait on the returned futures, {@link #sleepTillEmpty()}
+ * waits for every task of every submitter.
  */
 public class BlockingSubmitThreadPoolExecutor extends ThreadPoolExecutor
 {
-    private static final long DEFAULT_SLEEP = 100;
     private static final long DEFAULT_KEEP_ALIVE = 100;
     private static final Logger logger = LoggerFactory.getLogger(BlockingSubmitThreadPoolExecutor.class);
-    private BlockingQueue<Runnable> queue;
-    private long giveupTime;
-    private AtomicInteger active;
+    private final Semaphore slots;
+    private final long giveupTime;
+    private final AtomicInteger active;
+    private final Object idle = new Object();
 
     public BlockingSubmitThreadPoolExecutor(int maximumPoolSize, BlockingQueue<Runnable> workQueue, long timeoutAdding)
     {
-        super(maximumPoolSize, maximumPoolSize, DEFAULT_KEEP_ALIVE, TimeUnit.SECONDS, workQueue);
-        this.queue = workQueue;
+        super(maximumPoolSize, maximumPoolSize, DEFAULT_KEEP_ALIVE, TimeUnit.SECONDS, workQueue, new WaitForQueuePolicy());
+        this.slots = new Semaphore(maximumPoolSize + workQueue.remainingCapacity());
         this.giveupTime = timeoutAdding;
         this.active = new AtomicInteger(0);
     }
@@ -45,35 +50,30 @@ public class BlockingSubmitThreadPoolExecutor extends ThreadPoolExecutor
     /**
      * This is a thread safe way to avoid rejection exception... this is
      * implemented because we might want to hold the incoming requests till
-     * there is a free thread.
+     * there is a free thread. All the submit() variants go through here.
      */
     @Override
-    public <T> Future<T> submit(Callable<T> task)
+    public void execute(Runnable command)
     {
-        synchronized (this)
+        try
         {
-            active.incrementAndGet();
-            long timeout = 0;
-            while (queue.remainingCapacity() == 0)
-            {
-                try
-                {
-                    if (timeout <= giveupTime)
-                    {
-                        Thread.sleep(DEFAULT_SLEEP);
-                        timeout += DEFAULT_SLEEP;
-                    }
-                    else
-                    {
-                        throw new RuntimeException("Timed out because TPE is too busy...");
-                    }
-                }
-                catch (InterruptedException e)
-                {
-                    throw new RuntimeException(e);
-                }
-            }
-            return super.submit(task);
+            if (!slots.tryAcquire(giveupTime, TimeUnit.MILLISECONDS))
+                throw new RuntimeException("Timed out because TPE is too busy...");
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        active.incrementAndGet();
+        try
+        {
+            super.execute(command);
+        }
+        catch (RuntimeException e)
+        {
+            finished();
+            throw e;
         }
     }
 
@@ -81,7 +81,27 @@ public class BlockingSubmitThreadPoolExecutor extends ThreadPoolExecutor
     protected void afterExecute(Runnable r, Throwable t)
     {
         super.afterExecute(r, t);
-        active.decrementAndGet();
+        finished();
+    }
+
+    private void finished()
+    {
+        slots.release();
+        if (active.decrementAndGet() == 0)
+        {
+            synchronized (idle)
+            {
+                idle.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Number of tasks submitted and not finished yet, queued or running
+     */
+    public int getPendingCount()
+    {
+        return active.get();
     }
 
     /**
@@ -89,28 +109,49 @@ public class BlockingSubmitThreadPoolExecutor extends ThreadPoolExecutor
      */
     public void sleepTillEmpty()
     {
-        long timeout = 0;
-
-        while (!queue.isEmpty() || (active.get() > 0))
+        long deadline = System.currentTimeMillis() + giveupTime;
+        synchronized (idle)
         {
-            try
+            while (active.get() > 0)
             {
-                if (timeout <= giveupTime)
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                    throw new RuntimeException("Timed out because TPE is too busy...");
+                logger.debug("Waiting for empty: {}, Count: {}", getQueue().size(), active.get());
+                try
                 {
-                    Thread.sleep(DEFAULT_SLEEP);
-                    timeout += DEFAULT_SLEEP;
-                    logger.debug("After Sleeping for empty: {}, Count: {}", +queue.size(), active.get());
+                    idle.wait(remaining);
                 }
-                else
+                catch (InterruptedException e)
                 {
-                    throw new RuntimeException("Timed out because TPE is too busy...");
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
                 }
             }
+        }
+    }
+
+    /**
+     * A permit is handed back just before the worker takes the next task off
+     * the queue, so the queue can still be full for a moment. The permits
+     * bound the queue, the wait is short.
+     */
+    private static class WaitForQueuePolicy implements RejectedExecutionHandler
+    {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+        {
+            if (executor.isShutdown())
+                throw new RejectedExecutionException("ThreadPoolExecutor has shut down");
+            try
+            {
+                executor.getQueue().put(r);
+            }
             catch (InterruptedException e)
             {
-                throw new RuntimeException(e);
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException(e);
             }
         }
-
     }
 }
@@ -19,6 +19,15 @@ public class FakeConfiguration implements IConfiguration
     public String zone;
     public String instance_id;
     public String restorePrefix;
+    public long singlePutThreshold;
+    public String journalLocation = "";
+    public String indexLocation = "";
+    public String trackerLocation = "";
+    public String catalogLocation = "";
+    public int uploadThrottle = 0;
+    public int uploadThrottleMin = 0;
+    public int restoreRangeThreads = 1;
+    public List<String> restorePriorityKeySpaces = Lists.newArrayList();
 
     public FakeConfiguration()
     {
@@ -193,6 +202,24 @@ public class FakeConfiguration implements IConfiguration
         return 3;
     }
 
+    @Override
+    public int getBackupListThreads()
+    {
+        return 2;
+    }
+
+    @Override
+    public int getRestoreRangeThreads()
+    {
+        return restoreRangeThreads;
+    }
+
+    @Override
+    public long getRestoreRangeSize()
+    {
+        return 1024 * 1024;
+    }
+
     public void setRestorePrefix(String prefix)
     {
         // TODO Auto-generated method stub
@@ -242,7 +269,48 @@ public class FakeConfiguration implements IConfiguration
     @Override
     public int getUploadThrottle()
     {
-        // TODO Auto-generated method stub
+        return uploadThrottle;
+    }
+
+    @Override
+    public int getUploadThrottleMin()
+    {
+        return uploadThrottleMin;
+    }
+
+    @Override
+    public int getThrottleReadLatencyMicros()
+    {
+        return 10000;
+    }
+
+    @Override
+    public int getThrottleWriteLatencyMicros()
+    {
+        return 2000;
+    }
+
+    @Override
+    public int getThrottlePendingCompactions()
+    {
+        return 20;
+    }
+
+    @Override
+    public int getThrottlePendingReads()
+    {
+        return 32;
+    }
+
+    @Override
+    public int getDownloadThrottle()
+    {
+        return 0;
+    }
+
+    @Override
+    public int getRestoreWriteThrottle()
+    {
         return 0;
     }
 
@@ -297,12 +365,90 @@ public class FakeConfiguration implements IConfiguration
         return Lists.newArrayList();
     }
 
+    @Override
+    public List<String> getRestorePriorityKeySpaces()
+    {
+        return restorePriorityKeySpaces;
+    }
+
     @Override
     public long getBackupChunkSize()
     {        
         return 5L*1024*1024;
     }
 
+    @Override
+    public long getBackupSinglePutThreshold()
+    {
+        return singlePutThreshold;
+    }
+
+    @Override
+    public String getBackupJournalLocation()
+    {
+        return journalLocation;
+    }
+
+    @Override
+    public String getBackupIndexLocation()
+    {
+        return indexLocation;
+    }
+
+    @Override
+    public String getRestoreTrackerLocation()
+    {
+        return trackerLocation;
+    }
+
+    @Override
+    public String getBackupCatalogLocation()
+    {
+        return catalogLocation;
+    }
+
+    @Override
+    public int getBackupCatalogHorizonDays()
+    {
+        return 30;
+    }
+
+    @Override
+    public int getBackupDedupMaxAgeDays()
+    {
+        return 7;
+    }
+
+    @Override
+    public long getBackupRegionSplitThreshold()
+    {
+        return 0;
+    }
+
+    @Override
+    public String getBackupCompression(String fileType)
+    {
+        return "";
+    }
+
+    @Override
+    public boolean isSkipCompressedSSTables()
+    {
+        return true;
+    }
+
+    @Override
+    public int getBackupFileThreads()
+    {
+        return 2;
+    }
+
+    @Override
+    public long getBackupInflightBytes()
+    {
+        return 64L*1024*1024;
+    }
+
     @Override
     public void setDC(String region)
     {
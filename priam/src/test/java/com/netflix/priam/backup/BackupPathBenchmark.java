@@ -0,0 +1,55 @@
+package com.netflix.priam.backup;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.netflix.priam.FakeConfiguration;
+import com.netflix.priam.aws.S3BackupPath;
+
+/**
+ * Cost of parsing, comparing and looking up listed backup paths per million
+ * keys. Not a unit test, run with:
+ *
+ * java -cp ... com.netflix.priam.backup.BackupPathBenchmark [keys] [rounds]
+ */
+public class BackupPathBenchmark
+{
+    public static void main(String[] args)
+    {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        String[] remote = new String[keys];
+        for (int i = 0; i < keys; i++)
+            remote[i] = String.format("casstestbackup/us-east-1/fake-app/%d/2013%02d%02d%02d00/SST/ks%d/cf%d/ks-cf-ic-%d-Data.db", i % 6, i % 12 + 1, i % 28 + 1, i % 24, i % 3, i % 10, i);
+        AbstractBackupPath factory = new S3BackupPath(new FakeConfiguration(), null);
+
+        // The first rounds warm up the JIT.
+        for (int round = 0; round < rounds; round++)
+        {
+            long start = System.nanoTime();
+            AbstractBackupPath[] paths = new AbstractBackupPath[keys];
+            for (int i = 0; i < keys; i++)
+            {
+                paths[i] = factory.newPath();
+                paths[i].parseRemote(remote[i]);
+            }
+            long parsed = System.nanoTime();
+            Arrays.sort(paths);
+            long sorted = System.nanoTime();
+            Set<AbstractBackupPath> set = new HashSet<AbstractBackupPath>(Arrays.asList(paths));
+            int found = 0;
+            for (AbstractBackupPath path : paths)
+                if (set.contains(path))
+                    found++;
+            long looked = System.nanoTime();
+            System.out.println(String.format("round %d: parse %d ms, sort %d ms, hash %d ms per million keys (%d found)", round,
+                    perMillion(parsed - start, keys), perMillion(sorted - parsed, keys), perMillion(looked - sorted, keys), found));
+        }
+    }
+
+    private static long perMillion(long nanos, int keys)
+    {
+        return nanos / 1000000L * 1000000L / keys;
+    }
+}
@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -43,16 +44,16 @@ public class FakeBackupFileSystem implements IBackupFileSystem
             path.parseRemote(file);
             flist.add(path);
         }
-        downloadedFiles = new HashSet<String>();
-        uploadedFiles = new HashSet<String>();
+        downloadedFiles = Collections.synchronizedSet(new HashSet<String>());
+        uploadedFiles = Collections.synchronizedSet(new HashSet<String>());
     }
 
     public void setupTest()
     {
         clearTest();
         flist = new ArrayList<AbstractBackupPath>();
-        downloadedFiles = new HashSet<String>();
-        uploadedFiles = new HashSet<String>();
+        downloadedFiles = Collections.synchronizedSet(new HashSet<String>());
+        uploadedFiles = Collections.synchronizedSet(new HashSet<String>());
     }
 
     public void clearTest()
@@ -0,0 +1,198 @@
+package com.netflix.priam.backup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.inject.Provider;
+import com.netflix.priam.FakeConfiguration;
+import com.netflix.priam.aws.S3BackupPath;
+import com.netflix.priam.backup.AbstractBackupPath.BackupFileType;
+
+public class TestBackupCatalog
+{
+    private static final File FILE = new File("target/backup_catalog/catalog");
+    private static final String BUCKET = "TEST-netflix.platform.S3";
+    private static final String TOKEN_PATH = "casstestbackup/us-east-1/fake-app/1234/";
+    private static final String NODE = BUCKET + "/" + TOKEN_PATH;
+
+    private FakeConfiguration config;
+    private BackupCatalog catalog;
+    private Date from;
+
+    @Before
+    public void setup()
+    {
+        FileUtils.deleteQuietly(FILE.getParentFile());
+        config = new FakeConfiguration();
+        config.catalogLocation = FILE.getPath();
+        catalog = newCatalog();
+        from = date("201108010000");
+    }
+
+    @After
+    public void cleanup()
+    {
+        FileUtils.deleteQuietly(FILE.getParentFile());
+    }
+
+    @Test
+    public void testListByRangeAndType() throws IOException
+    {
+        catalog.rebuild(NODE, from, Lists.<AbstractBackupPath> newArrayList().iterator());
+        catalog.add(BUCKET, path("201108082320/SST/ks/cf/ks-cf-ic-1-Data.db"), 100, "snappy", "etag1");
+        catalog.add(BUCKET, path("201108082320/META/meta.json"), 10, "snappy", "etag2");
+        catalog.add(BUCKET, path("201108090000/SST/ks/cf/ks-cf-ic-2-Data.db"), 200, "snappy", "etag3");
+        catalog.add(BUCKET, path("201108100000/SST/ks/cf/ks-cf-ic-3-Data.db"), 300, "snappy", "etag4");
+        // Another node
+        catalog.add(BUCKET, parse("casstestbackup/us-east-1/fake-app/5678/201108090000/SST/ks/cf/ks-cf-ic-1-Data.db"), 1, "", "");
+
+        List<AbstractBackupPath> paths = catalog.list(NODE, date("201108082320"), date("201108100000"));
+        Assert.assertEquals(3, paths.size());
+        Assert.assertEquals(TOKEN_PATH + "201108082320/META/meta.json", paths.get(0).getRemotePath());
+        Assert.assertEquals(200, paths.get(2).getSize());
+
+        paths = catalog.list(NODE, date("201108080000"), date("201108110000"), BackupFileType.META);
+        Assert.assertEquals(1, paths.size());
+        Assert.assertEquals(BackupFileType.META, paths.get(0).getType());
+        Assert.assertTrue(catalog.list(NODE, date("201108110000"), date("201108100000")).isEmpty());
+    }
+
+    @Test
+    public void testStoredObjectKnown() throws IOException
+    {
+        catalog.rebuild(NODE, from, Lists.newArrayList(path("201108082320/SST/ks/cf/ks-cf-ic-1-Data.db")).iterator());
+        catalog.add(BUCKET, path("201108082320/SST/ks/cf/ks-cf-ic-2-Data.db"), 100, "snappy", "etag2");
+
+        List<AbstractBackupPath> paths = catalog.list(NODE, date("201108080000"), date("201108090000"));
+        Assert.assertEquals(2, paths.size());
+        // Listed only, S3 has to be asked
+        Assert.assertEquals(-1, paths.get(0).getStoredSize());
+        Assert.assertNull(paths.get(0).getCompression());
+        Assert.assertEquals(100, paths.get(1).getStoredSize());
+        Assert.assertEquals("snappy", paths.get(1).getCompression());
+        Assert.assertEquals("etag2", paths.get(1).getChecksum());
+    }
+
+    @Test
+    public void testCompleteOnlyOnceRebuilt() throws IOException
+    {
+        catalog.add(BUCKET, path("201108082320/SST/ks/cf/ks-cf-ic-1-Data.db"), 100, "snappy", "etag1");
+        Assert.assertFalse(catalog.isComplete(NODE, from));
+
+        catalog.rebuild(NODE, from, Lists.newArrayList(path("201108082320/SST/ks/cf/ks-cf-ic-2-Data.db")).iterator());
+        Assert.assertTrue(catalog.isComplete(NODE, from));
+        // Older backups were not listed
+        Assert.assertFalse(catalog.isComplete(NODE, date("201107310000")));
+        // Not in the bucket any more
+        Assert.assertEquals(1, catalog.size());
+
+        // Uploads may have gone by the catalog since, it has to be rebuilt
+        BackupCatalog reloaded = newCatalog();
+        Assert.assertFalse(reloaded.isComplete(NODE, from));
+        Assert.assertEquals(1, reloaded.list(NODE, date("201108080000"), date("201108090000")).size());
+    }
+
+    @Test
+    public void testUploadsWhileRebuildingKept() throws IOException
+    {
+        final AbstractBackupPath listed = path("201108082320/SST/ks/cf/ks-cf-ic-1-Data.db");
+        catalog.rebuild(NODE, from, new Iterator<AbstractBackupPath>()
+        {
+            private boolean done;
+
+            @Override
+            public boolean hasNext()
+            {
+                return !done;
+            }
+
+            @Override
+            public AbstractBackupPath next()
+            {
+                done = true;
+                try
+                {
+                    catalog.add(BUCKET, path("201108082330/SST/ks/cf/ks-cf-ic-2-Data.db"), 100, "snappy", "etag2");
+                }
+                catch (IOException e)
+                {
+                    throw new RuntimeException(e);
+                }
+                return listed;
+            }
+
+            @Override
+            public void remove()
+            {
+            }
+        });
+        Assert.assertEquals(2, catalog.size());
+        Assert.assertEquals(2, newCatalog().size());
+    }
+
+    @Test
+    public void testCompactDropsExpired() throws IOException
+    {
+        S3BackupPath factory = new S3BackupPath(config, null);
+        String now = factory.formatDate(new Date());
+        catalog.rebuild(NODE, from, Lists.<AbstractBackupPath> newArrayList().iterator());
+        catalog.add(BUCKET, path("201108082320/SST/ks/cf/ks-cf-ic-1-Data.db"), 100, "snappy", "etag1");
+        catalog.add(BUCKET, path(now + "/SST/ks/cf/ks-cf-ic-2-Data.db"), 100, "snappy", "etag2");
+        catalog.compact();
+        Assert.assertEquals(1, catalog.size());
+        // Only complete from the horizon on
+        Assert.assertFalse(catalog.isComplete(NODE, from));
+        Assert.assertTrue(catalog.isComplete(NODE, new Date()));
+        Assert.assertEquals(1, FileUtils.readLines(FILE).size());
+        Assert.assertEquals(1, newCatalog().size());
+    }
+
+    @Test
+    public void testDisabled() throws IOException
+    {
+        config.catalogLocation = "";
+        catalog.add(BUCKET, path("201108082320/SST/ks/cf/ks-cf-ic-1-Data.db"), 100, "snappy", "etag1");
+        catalog.rebuild(NODE, from, Lists.<AbstractBackupPath> newArrayList().iterator());
+        Assert.assertFalse(catalog.isComplete(NODE, from));
+        Assert.assertFalse(FILE.exists());
+    }
+
+    private BackupCatalog newCatalog()
+    {
+        return new BackupCatalog(config, new Provider<AbstractBackupPath>()
+        {
+            @Override
+            public AbstractBackupPath get()
+            {
+                return new S3BackupPath(config, null);
+            }
+        });
+    }
+
+    private Date date(String s)
+    {
+        return new S3BackupPath(config, null).parseDate(s);
+    }
+
+    private AbstractBackupPath path(String file)
+    {
+        return parse(TOKEN_PATH + file);
+    }
+
+    private AbstractBackupPath parse(String remotePath)
+    {
+        S3BackupPath path = new S3BackupPath(config, null);
+        path.parseRemote(remotePath);
+        return path;
+    }
+}
@@ -0,0 +1,83 @@
+package com.netflix.priam.backup;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.priam.FakeConfiguration;
+import com.netflix.priam.aws.S3BackupPath;
+import com.netflix.priam.backup.AbstractBackupPath.BackupFileType;
+
+public class TestBackupPath
+{
+    private static final String SST = "casstestbackup/us-east-1/fake-app/1234/201108082320/SST/ks/cf/ks-cf-ic-1-Data.db";
+
+    @Test
+    public void testParse()
+    {
+        AbstractBackupPath path = parse(SST);
+        Assert.assertEquals("casstestbackup", path.getBaseDir());
+        Assert.assertEquals("us-east-1", path.getRegion());
+        Assert.assertEquals("fake-app", path.getClusterName());
+        Assert.assertEquals("1234", path.getToken());
+        Assert.assertEquals(path.parseDate("201108082320"), path.getTime());
+        Assert.assertEquals(BackupFileType.SST, path.getType());
+        Assert.assertEquals("ks", path.getKeyspace());
+        Assert.assertEquals("cf", path.getColumnFamily());
+        Assert.assertEquals("ks-cf-ic-1-Data.db", path.getFileName());
+        Assert.assertFalse(path.isCassandra1_0());
+        Assert.assertSame(SST, path.getRemotePath());
+    }
+
+    @Test
+    public void testParseOtherLayouts()
+    {
+        AbstractBackupPath meta = parse("casstestbackup/us-east-1/fake-app/1234/201108082320/META/meta.json");
+        Assert.assertEquals(BackupFileType.META, meta.getType());
+        Assert.assertEquals("meta.json", meta.getFileName());
+        Assert.assertNull(meta.getKeyspace());
+
+        AbstractBackupPath old = parse("casstestbackup/us-east-1/fake-app/1234/201108082320/SNAP/ks/ks-cf-hc-1-Data.db");
+        Assert.assertTrue(old.isCassandra1_0());
+        Assert.assertEquals("ks", old.getKeyspace());
+        Assert.assertNull(old.getColumnFamily());
+        Assert.assertEquals("casstestbackup/us-east-1/fake-app/1234/201108082320/SNAP/ks/ks-cf-hc-1-Data.db", old.getRemotePath());
+
+        // Empty elements are skipped and not part of the remote path
+        AbstractBackupPath slashes = parse("/casstestbackup//us-east-1/fake-app/1234/201108082320/SST/ks/cf/ks-cf-ic-1-Data.db");
+        Assert.assertEquals(SST, slashes.getRemotePath());
+        Assert.assertEquals(parse(SST), slashes);
+    }
+
+    @Test
+    public void testRemotePathFollowsFields()
+    {
+        AbstractBackupPath path = parse(SST);
+        path.setFileName("ks-cf-ic-2-Data.db");
+        Assert.assertEquals(SST.replace("-1-", "-2-"), path.getRemotePath());
+        path.token = "5678";
+        Assert.assertEquals(SST.replace("-1-", "-2-").replace("1234", "5678"), path.getRemotePath());
+        path.time = path.parseDate("201108090000");
+        Assert.assertTrue(path.getRemotePath().contains("/201108090000/"));
+    }
+
+    @Test
+    public void testEqualsAndHashCode()
+    {
+        AbstractBackupPath path = parse(SST);
+        AbstractBackupPath same = parse(SST);
+        AbstractBackupPath other = parse(SST.replace("-1-", "-2-"));
+        Assert.assertEquals(path, same);
+        Assert.assertEquals(path.hashCode(), same.hashCode());
+        Assert.assertEquals(0, path.compareTo(same));
+        Assert.assertFalse(path.equals(other));
+        Assert.assertTrue(path.compareTo(other) < 0);
+        Assert.assertFalse(path.equals(null));
+    }
+
+    private static AbstractBackupPath parse(String key)
+    {
+        AbstractBackupPath path = new S3BackupPath(new FakeConfiguration(), null).newPath();
+        path.parseRemote(key);
+        return path;
+    }
+}
@@ -0,0 +1,91 @@
+package com.netflix.priam.backup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.priam.compress.ChunkBuffer;
+import com.netflix.priam.compress.ChunkBufferPool;
+import com.netflix.priam.utils.SystemUtils;
+
+public class TestChunkBufferPool
+{
+    @Test
+    public void testMd5AndData() throws IOException
+    {
+        ChunkBufferPool pool = new ChunkBufferPool(1);
+        byte[] data = new byte[3 * ChunkBufferPool.CHUNK_HEADROOM];
+        new Random(0).nextBytes(data);
+        ChunkBuffer chunk = pool.acquire(1024);
+        // larger than the capacity, forces the buffer to grow
+        chunk.write(data, 0, data.length);
+        chunk.seal();
+        Assert.assertEquals(data.length, chunk.length());
+        Assert.assertEquals(SystemUtils.toHex(SystemUtils.md5(data)), SystemUtils.toHex(chunk.getMd5()));
+        // every stream starts from the first byte
+        for (int i = 0; i < 2; i++)
+            Assert.assertArrayEquals(data, readFully(chunk.newInputStream()));
+        chunk.release();
+    }
+
+    @Test
+    public void testReuse()
+    {
+        ChunkBufferPool pool = new ChunkBufferPool(2);
+        ChunkBuffer first = pool.acquire(1024);
+        first.write(new byte[10], 0, 10);
+        first.seal();
+        Assert.assertEquals(1, pool.getInUseCount());
+        first.release();
+        // double release must not hand the same buffer out twice
+        first.release();
+        Assert.assertEquals(0, pool.getInUseCount());
+
+        ChunkBuffer second = pool.acquire(1024);
+        ChunkBuffer third = pool.acquire(1024);
+        Assert.assertSame(first, second);
+        Assert.assertNotSame(second, third);
+        Assert.assertEquals(0, second.length());
+        Assert.assertFalse(second.isSealed());
+    }
+
+    @Test
+    public void testAcquireBlocksWhenExhausted() throws InterruptedException
+    {
+        final ChunkBufferPool pool = new ChunkBufferPool(1);
+        ChunkBuffer only = pool.acquire(1024);
+        final CountDownLatch acquired = new CountDownLatch(1);
+        final AtomicReference<ChunkBuffer> waiter = new AtomicReference<ChunkBuffer>();
+        Thread thread = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                waiter.set(pool.acquire(1024));
+                acquired.countDown();
+            }
+        };
+        thread.start();
+        Assert.assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        only.release();
+        Assert.assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        Assert.assertSame(only, waiter.get());
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int count;
+        while ((count = in.read(buf)) != -1)
+            out.write(buf, 0, count);
+        return out.toByteArray();
+    }
+}
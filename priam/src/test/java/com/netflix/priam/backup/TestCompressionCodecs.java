@@ -0,0 +1,102 @@
+package com.netflix.priam.backup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.priam.FakeConfiguration;
+import com.netflix.priam.aws.S3BackupPath;
+import com.netflix.priam.backup.AbstractBackupPath.BackupFileType;
+import com.netflix.priam.compress.ChunkBuffer;
+import com.netflix.priam.compress.ChunkBufferPool;
+import com.netflix.priam.compress.CompressionCodecs;
+import com.netflix.priam.compress.CompressionType;
+import com.netflix.priam.compress.ICompression;
+import com.netflix.priam.compress.NoCompression;
+import com.netflix.priam.compress.SnappyCompression;
+
+public class TestCompressionCodecs
+{
+    @Test
+    public void testSelection()
+    {
+        CompressionCodecs codecs = new CompressionCodecs(new FakeConfiguration("fake-region", "fake-app", "az1", "fakeInstance1"), new SnappyCompression());
+        // Nothing configured, the bound codec is used
+        Assert.assertEquals(CompressionType.SNAPPY, codecs.forFileType(BackupFileType.SST).getType());
+        // Untagged objects predate tagging and are snappy
+        Assert.assertEquals(CompressionType.SNAPPY, codecs.forTag(null).getType());
+        Assert.assertEquals(CompressionType.LZ4, codecs.forTag("lz4").getType());
+        Assert.assertEquals(CompressionType.NONE, codecs.forTag("none").getType());
+    }
+
+    @Test
+    public void testSkipCassandraCompressed() throws IOException
+    {
+        FakeConfiguration config = new FakeConfiguration("fake-region", "fake-app", "az1", "fakeInstance1");
+        CompressionCodecs codecs = new CompressionCodecs(config, new SnappyCompression());
+        File dir = File.createTempFile("codecs", "");
+        dir.delete();
+        dir.mkdirs();
+        File data = new File(dir, "KS1-CF1-ic-100-Data.db");
+        File compressionInfo = new File(dir, "KS1-CF1-ic-100-CompressionInfo.db");
+        File uncompressed = new File(dir, "KS1-CF1-ic-101-Data.db");
+        try
+        {
+            data.createNewFile();
+            compressionInfo.createNewFile();
+            uncompressed.createNewFile();
+            Set<File> compressed = CompressionCodecs.compressedDataFiles(Arrays.asList(dir.listFiles()));
+            Assert.assertEquals(Collections.singleton(data), compressed);
+
+            // CompressionInfo uploaded and deleted before the data
+            compressionInfo.delete();
+            Assert.assertEquals(CompressionType.NONE, codecs.forPath(path(config, data, compressed)).getType());
+            Assert.assertEquals(CompressionType.SNAPPY, codecs.forPath(path(config, uncompressed, compressed)).getType());
+            // The other components still get compressed
+            Assert.assertEquals(CompressionType.SNAPPY, codecs.forPath(path(config, compressionInfo, compressed)).getType());
+        }
+        finally
+        {
+            FileUtils.deleteQuietly(dir);
+        }
+    }
+
+    private static S3BackupPath path(FakeConfiguration config, File file, Set<File> compressed)
+    {
+        S3BackupPath bp = new S3BackupPath(config, null);
+        bp.type = BackupFileType.SST;
+        bp.backupFile = file;
+        bp.setCassandraCompressed(compressed.contains(file));
+        return bp;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownTag()
+    {
+        new CompressionCodecs(new FakeConfiguration("fake-region", "fake-app", "az1", "fakeInstance1"), new SnappyCompression()).forTag("bzip2");
+    }
+
+    @Test
+    public void testNoCompressionRoundTrip() throws IOException
+    {
+        byte[] data = "The quick brown fox jumps over the lazy dog".getBytes("UTF-8");
+        ICompression codec = new NoCompression();
+        Iterator<ChunkBuffer> it = codec.compress(new ByteArrayInputStream(data), new ChunkBufferPool(2), 1024);
+        ChunkBuffer chunk = it.next();
+        Assert.assertFalse(it.hasNext());
+        Assert.assertArrayEquals(data, chunk.toByteArray());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.decompressAndClose(chunk.newInputStream(), out);
+        chunk.release();
+        Assert.assertArrayEquals(data, out.toByteArray());
+    }
+}
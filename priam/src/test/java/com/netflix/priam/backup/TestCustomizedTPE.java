@@ -2,14 +2,20 @@ package com.netflix.priam.backup;
 
 import static junit.framework.Assert.*;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
 import com.netflix.priam.scheduler.BlockingSubmitThreadPoolExecutor;
 
 public class TestCustomizedTPE
@@ -41,6 +47,58 @@ public class TestCustomizedTPE
         assertEquals(100, count.get());
     }
 
+    @Test
+    public void testWaitOnFutures() throws Exception
+    {
+        final BlockingSubmitThreadPoolExecutor executor = new BlockingSubmitThreadPoolExecutor(2, new LinkedBlockingDeque<Runnable>(2), TIME_OUT);
+        final AtomicInteger count = new AtomicInteger();
+        final CountDownLatch running = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Future<Integer>> futures = Collections.synchronizedList(Lists.<Future<Integer>> newArrayList());
+        final Callable<Integer> task = new Callable<Integer>()
+        {
+            @Override
+            public Integer call() throws Exception
+            {
+                running.countDown();
+                release.await();
+                return count.incrementAndGet();
+            }
+        };
+        // Both threads busy and the queue full
+        for (int i = 0; i < 4; i++)
+            futures.add(executor.submit(task));
+        assertTrue(running.await(TIME_OUT, TimeUnit.MILLISECONDS));
+
+        final CountDownLatch submitted = new CountDownLatch(1);
+        final AtomicInteger doneWhenSubmitted = new AtomicInteger(-1);
+        Thread submitter = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                futures.add(executor.submit(task));
+                doneWhenSubmitted.set(count.get());
+                submitted.countDown();
+            }
+        };
+        submitter.start();
+        assertFalse("Submitted while every slot was taken", submitted.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(4, executor.getPendingCount());
+
+        // The blocked submitter wakes up once a task has finished
+        release.countDown();
+        assertTrue(submitted.await(TIME_OUT, TimeUnit.MILLISECONDS));
+        assertTrue(doneWhenSubmitted.get() >= 1);
+        submitter.join();
+        for (Future<Integer> future : futures)
+            future.get();
+        assertEquals(5, count.get());
+        executor.sleepTillEmpty();
+        assertEquals(0, executor.getPendingCount());
+        executor.shutdown();
+    }
+
     @Test
     public void testException()
     {
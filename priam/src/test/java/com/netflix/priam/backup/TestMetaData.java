@@ -0,0 +1,186 @@
+package com.netflix.priam.backup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONValue;
+import org.json.simple.parser.JSONParser;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.inject.Provider;
+import com.netflix.priam.FakeConfiguration;
+import com.netflix.priam.IConfiguration;
+import com.netflix.priam.aws.S3BackupPath;
+import com.netflix.priam.backup.AbstractBackupPath.BackupFileType;
+
+public class TestMetaData
+{
+    private static final String TOKEN_PATH = "casstestbackup/us-east-1/my_fake_cluster/1234/";
+
+    private FakeConfiguration config;
+    private MetaFileSystem fs;
+    private MetaData metaData;
+    private AbstractBackupPath meta;
+
+    @Before
+    public void setup()
+    {
+        config = new FakeConfiguration();
+        fs = new MetaFileSystem();
+        metaData = new MetaData(new Provider<AbstractBackupPath>()
+        {
+            @Override
+            public AbstractBackupPath get()
+            {
+                return new LocalPath(config);
+            }
+        }, fs);
+        meta = parse(TOKEN_PATH + "201108082320/META/meta.json");
+    }
+
+    @After
+    public void cleanup()
+    {
+        FileUtils.deleteQuietly(meta.newRestoreFile());
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception
+    {
+        AbstractBackupPath sst = parse(TOKEN_PATH + "201108082320/SNAP/ks/cf/ks-cf-ic-5-Data.db");
+        sst.setSize(4096);
+        sst.setStored(1234, "snappy", "0123456789abcdef");
+        AbstractBackupPath unknown = parse(TOKEN_PATH + "201108082320/SNAP/ks/cf/ks-cf-ic-5-Index.db");
+        AbstractBackupPath other = parse("casstestbackup/us-east-1/my_fake_cluster/5678/201108080000/SST/ks/cf/ks-cf-ic-1-Data.db");
+        metaData.set(Lists.newArrayList(sst, unknown, other), "201108082320");
+
+        // Still a JSON array, a file per line
+        String written = new String(fs.meta);
+        Assert.assertEquals(5, written.split("\n").length);
+        Assert.assertEquals(3, ((JSONArray) new JSONParser().parse(written)).size());
+        Assert.assertFalse(written.contains(TOKEN_PATH));
+
+        metaData.fetch(meta);
+        List<AbstractBackupPath> files = Lists.newArrayList(metaData.read(meta));
+        Assert.assertEquals(Lists.newArrayList(sst, unknown, other), files);
+        Assert.assertEquals(4096, files.get(0).getSize());
+        Assert.assertEquals(1234, files.get(0).getStoredSize());
+        Assert.assertEquals("snappy", files.get(0).getCompression());
+        Assert.assertEquals("0123456789abcdef", files.get(0).getChecksum());
+        Assert.assertEquals(BackupFileType.SNAP, files.get(0).getType());
+        Assert.assertEquals(0, files.get(1).getSize());
+        Assert.assertEquals(-1, files.get(1).getStoredSize());
+        Assert.assertNull(files.get(1).getCompression());
+        Assert.assertEquals("5678", files.get(2).getToken());
+    }
+
+    @Test
+    public void testReadsOldMetaFile() throws Exception
+    {
+        List<String> paths = Lists.newArrayList(TOKEN_PATH + "201108082320/SNAP/ks/cf/ks-cf-ic-5-Data.db",
+                TOKEN_PATH + "201108082320/SNAP/ks/cf/ks-cf-ic-5-Index.db");
+        FileUtils.writeStringToFile(meta.newRestoreFile(), JSONValue.toJSONString(paths));
+
+        List<AbstractBackupPath> files = Lists.newArrayList(metaData.read(meta));
+        Assert.assertEquals(2, files.size());
+        Assert.assertEquals(paths.get(1), files.get(1).getRemotePath());
+        Assert.assertEquals(-1, files.get(1).getStoredSize());
+    }
+
+    @Test
+    public void testEmptySnapshot() throws Exception
+    {
+        metaData.set(Lists.<AbstractBackupPath> newArrayList(), "201108082320");
+        metaData.fetch(meta);
+        Assert.assertFalse(metaData.read(meta).hasNext());
+    }
+
+    private AbstractBackupPath parse(String remotePath)
+    {
+        AbstractBackupPath path = new LocalPath(config);
+        path.parseRemote(remotePath);
+        return path;
+    }
+
+    /**
+     * Local files are of token 1234.
+     */
+    private static class LocalPath extends S3BackupPath
+    {
+        LocalPath(IConfiguration config)
+        {
+            super(config, null);
+        }
+
+        @Override
+        public void parseLocal(File file, BackupFileType type)
+        {
+            this.backupFile = file;
+            this.baseDir = "casstestbackup";
+            this.region = "us-east-1";
+            this.clusterName = "my_fake_cluster";
+            this.token = "1234";
+            this.type = type;
+            this.fileName = file.getName();
+            this.size = file.length();
+        }
+
+        @Override
+        public AbstractBackupPath newPath()
+        {
+            return new LocalPath(config);
+        }
+    }
+
+    /**
+     * Keeps the uploaded meta file to download it again.
+     */
+    private static class MetaFileSystem extends FakeBackupFileSystem
+    {
+        private byte[] meta;
+
+        @Override
+        public void upload(AbstractBackupPath path, InputStream in) throws BackupRestoreException
+        {
+            try
+            {
+                meta = IOUtils.toByteArray(in);
+            }
+            catch (IOException e)
+            {
+                throw new BackupRestoreException(e.getMessage(), e);
+            }
+            finally
+            {
+                IOUtils.closeQuietly(in);
+            }
+        }
+
+        @Override
+        public void download(AbstractBackupPath path, OutputStream os) throws BackupRestoreException
+        {
+            try
+            {
+                os.write(meta);
+            }
+            catch (IOException e)
+            {
+                throw new BackupRestoreException(e.getMessage(), e);
+            }
+            finally
+            {
+                IOUtils.closeQuietly(os);
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.netflix.priam.backup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.inject.Provider;
+import com.netflix.priam.FakeConfiguration;
+import com.netflix.priam.aws.S3BackupPath;
+
+public class TestMetaSummaries
+{
+    private static final String TOKEN_PATH = "casstestbackup/us-east-1/my_fake_cluster/1234/";
+
+    private FakeConfiguration config;
+    private MetaFileSystem fs;
+    private MetaSummaries summaries;
+
+    @Before
+    public void setup()
+    {
+        config = new FakeConfiguration();
+        fs = new MetaFileSystem();
+        MetaData metaData = new MetaData(new Provider<AbstractBackupPath>()
+        {
+            @Override
+            public AbstractBackupPath get()
+            {
+                return new S3BackupPath(config, null);
+            }
+        }, fs);
+        summaries = new MetaSummaries(config, metaData);
+    }
+
+    @Test
+    public void testSummariesCached()
+    {
+        AbstractBackupPath day1 = parse(TOKEN_PATH + "201108082320/META/meta.json");
+        AbstractBackupPath day2 = parse(TOKEN_PATH + "201108092320/META/meta.json");
+        Map<AbstractBackupPath, MetaSummaries.Summary> result = summaries.get(Lists.newArrayList(day1, day2));
+        Assert.assertEquals(2, result.size());
+        Assert.assertEquals(2, result.get(day1).getFiles());
+        Assert.assertEquals(300, result.get(day1).getBytes());
+        Assert.assertEquals(2, fs.downloads.get());
+
+        AbstractBackupPath day3 = parse(TOKEN_PATH + "201108102320/META/meta.json");
+        result = summaries.get(Lists.newArrayList(day1, day2, day3));
+        Assert.assertEquals(3, result.size());
+        Assert.assertEquals(300, result.get(day3).getBytes());
+        Assert.assertEquals(3, fs.downloads.get());
+    }
+
+    @Test
+    public void testUnknownSizeNotTotalled()
+    {
+        AbstractBackupPath old = parse(TOKEN_PATH + "201108082320/META/old.json");
+        MetaSummaries.Summary summary = summaries.get(Lists.newArrayList(old)).get(old);
+        Assert.assertEquals(2, summary.getFiles());
+        Assert.assertEquals(-1, summary.getBytes());
+    }
+
+    @Test
+    public void testUnreadableMetaSkipped()
+    {
+        AbstractBackupPath good = parse(TOKEN_PATH + "201108082320/META/meta.json");
+        AbstractBackupPath bad = parse(TOKEN_PATH + "201108092320/META/bad.json");
+        Map<AbstractBackupPath, MetaSummaries.Summary> result = summaries.get(Lists.newArrayList(good, bad));
+        Assert.assertEquals(1, result.size());
+        Assert.assertNull(result.get(bad));
+
+        // Not cached, tried again
+        fs.downloads.set(0);
+        summaries.get(Lists.newArrayList(good, bad));
+        Assert.assertTrue(fs.downloads.get() > 0);
+    }
+
+    private AbstractBackupPath parse(String remotePath)
+    {
+        AbstractBackupPath path = new S3BackupPath(config, null);
+        path.parseRemote(remotePath);
+        return path;
+    }
+
+    /**
+     * Every meta file lists two files of 100 and 200 bytes, the size of the
+     * second is missing from old meta files.
+     */
+    private static class MetaFileSystem extends FakeBackupFileSystem
+    {
+        private final AtomicInteger downloads = new AtomicInteger();
+
+        @Override
+        public void download(AbstractBackupPath path, OutputStream os) throws BackupRestoreException
+        {
+            downloads.incrementAndGet();
+            try
+            {
+                if (path.getFileName().startsWith("bad"))
+                    throw new BackupRestoreException("Unable to download " + path.getFileName());
+                List<String> lines = Lists.newArrayList("[",
+                        "{\"path\":\"201108082320/SNAP/ks/cf/ks-cf-ic-1-Data.db\",\"size\":100},",
+                        path.getFileName().startsWith("old")
+                                ? "{\"path\":\"201108082320/SNAP/ks/cf/ks-cf-ic-1-Index.db\"}"
+                                : "{\"path\":\"201108082320/SNAP/ks/cf/ks-cf-ic-1-Index.db\",\"size\":200}",
+                        "]");
+                IOUtils.writeLines(lines, "\n", os);
+            }
+            catch (IOException e)
+            {
+                throw new BackupRestoreException(e.getMessage(), e);
+            }
+            finally
+            {
+                IOUtils.closeQuietly(os);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.netflix.priam.backup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.netflix.priam.FakeConfiguration;
+import com.netflix.priam.aws.S3BackupPath;
+import com.netflix.priam.scheduler.NamedThreadPoolExecutor;
+
+public class TestParallelRangeInputStream
+{
+    private static final int SIZE = 1000 * 1000 + 17;
+
+    private byte[] data;
+    private ThreadPoolExecutor executor;
+    private S3BackupPath path;
+
+    @Before
+    public void setup()
+    {
+        data = new byte[SIZE];
+        new Random(0).nextBytes(data);
+        executor = new NamedThreadPoolExecutor(4, "TestRangeDownload");
+        path = new S3BackupPath(new FakeConfiguration(), null);
+        path.parseRemote("casstestbackup/us-east-1/my_fake_cluster/1234/201108082320/SNAP/ks/cf/ks-cf-ic-1-Data.db");
+        path.setStored(SIZE, "snappy", null);
+    }
+
+    @After
+    public void cleanup()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testRangesReassembledInOrder() throws IOException
+    {
+        RangeS3Client client = new RangeS3Client(0);
+        ParallelRangeInputStream in = new ParallelRangeInputStream(client, "bucket", path, executor, 4, 64 * 1024);
+        Assert.assertArrayEquals(data, read(in));
+        Assert.assertEquals((SIZE + 64 * 1024 - 1) / (64 * 1024), client.requests.get());
+    }
+
+    @Test
+    public void testFailedRangeRetried() throws IOException
+    {
+        RangeS3Client client = new RangeS3Client(3);
+        ParallelRangeInputStream in = new ParallelRangeInputStream(client, "bucket", path, executor, 3, 100 * 1000);
+        Assert.assertArrayEquals(data, read(in));
+    }
+
+    @Test
+    public void testSingleByteReads() throws IOException
+    {
+        ParallelRangeInputStream in = new ParallelRangeInputStream(new RangeS3Client(0), "bucket", path, executor, 2, 300 * 1000);
+        for (int i = 0; i < 10; i++)
+            Assert.assertEquals(data[i] & 0xff, in.read());
+        byte[] rest = read(in);
+        Assert.assertEquals(SIZE - 10, rest.length);
+        Assert.assertEquals(data[SIZE - 1], rest[rest.length - 1]);
+        Assert.assertEquals(-1, in.read());
+    }
+
+    private static byte[] read(ParallelRangeInputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IOUtils.copy(in, out);
+        in.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * Serves ranges of the test data, failing every nth request.
+     */
+    private class RangeS3Client extends AmazonS3Client
+    {
+        private final int failEvery;
+        private final AtomicInteger attempts = new AtomicInteger();
+        private final AtomicInteger requests = new AtomicInteger();
+
+        RangeS3Client(int failEvery)
+        {
+            this.failEvery = failEvery;
+        }
+
+        @Override
+        public S3Object getObject(GetObjectRequest req)
+        {
+            if (failEvery > 0 && attempts.incrementAndGet() % failEvery == 0)
+                throw new AmazonClientException("Connection reset");
+            requests.incrementAndGet();
+            long[] range = req.getRange();
+            S3Object object = new S3Object();
+            object.setObjectContent(new ByteArrayInputStream(data, (int) range[0], (int) (range[1] - range[0] + 1)));
+            return object;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.netflix.priam.backup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.netflix.priam.FakeConfiguration;
+import com.netflix.priam.aws.S3BackupPath;
+
+public class TestRangeReadInputStream
+{
+    private static final int SIZE = 3 * 1000 * 1000;
+
+    private byte[] data;
+    private S3BackupPath path;
+
+    @Before
+    public void setup()
+    {
+        data = new byte[SIZE];
+        new Random(0).nextBytes(data);
+        path = new S3BackupPath(new FakeConfiguration(), null);
+        path.parseRemote("casstestbackup/us-east-1/my_fake_cluster/1234/201108082320/SNAP/ks/cf/ks-cf-ic-1-Data.db");
+        path.setStored(SIZE, "snappy", null);
+    }
+
+    @Test
+    public void testSingleRequest() throws IOException
+    {
+        StreamingS3Client client = new StreamingS3Client(-1);
+        Assert.assertArrayEquals(data, read(new RangeReadInputStream(client, "bucket", path)));
+        Assert.assertEquals(1, client.requests);
+    }
+
+    @Test
+    public void testResumeAtOffset() throws IOException
+    {
+        StreamingS3Client client = new StreamingS3Client(SIZE / 3);
+        Assert.assertArrayEquals(data, read(new RangeReadInputStream(client, "bucket", path)));
+        Assert.assertEquals(2, client.requests);
+        Assert.assertEquals(SIZE / 3, client.lastStart);
+    }
+
+    private static byte[] read(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IOUtils.copy(in, out);
+        in.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * Streams the requested range, the first stream breaks after the given
+     * number of bytes.
+     */
+    private class StreamingS3Client extends AmazonS3Client
+    {
+        private final int failAt;
+        private int requests;
+        private long lastStart;
+
+        StreamingS3Client(int failAt)
+        {
+            this.failAt = failAt;
+        }
+
+        @Override
+        public S3Object getObject(GetObjectRequest req)
+        {
+            requests++;
+            long[] range = req.getRange();
+            lastStart = range[0];
+            InputStream in = new ByteArrayInputStream(data, (int) range[0], (int) (range[1] - range[0] + 1));
+            if (requests == 1 && failAt >= 0)
+                in = new BrokenInputStream(in, failAt);
+            S3Object object = new S3Object();
+            object.setObjectContent(in);
+            return object;
+        }
+    }
+
+    private static class BrokenInputStream extends InputStream
+    {
+        private final InputStream in;
+        private int remaining;
+
+        BrokenInputStream(InputStream in, int failAt)
+        {
+            this.in = in;
+            this.remaining = failAt;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (remaining == 0)
+                throw new IOException("Connection reset");
+            int cnt = in.read(b, off, Math.min(len, remaining));
+            remaining -= cnt;
+            return cnt;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.netflix.priam.backup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.netflix.priam.compress.ChunkBuffer;
+import com.netflix.priam.compress.ChunkBufferPool;
+import com.netflix.priam.compress.ICompression;
+import com.netflix.priam.compress.NoCompression;
+import com.netflix.priam.compress.RegionCompression;
+import com.netflix.priam.compress.SnappyCompression;
+import com.netflix.priam.utils.SystemUtils;
+
+public class TestRegionCompression
+{
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private ExecutorService executor;
+    private ChunkBufferPool pool;
+    private File file;
+
+    @Before
+    public void setup() throws IOException
+    {
+        executor = Executors.newFixedThreadPool(4);
+        pool = new ChunkBufferPool(9);
+        file = File.createTempFile("regions", ".db");
+    }
+
+    @After
+    public void cleanup()
+    {
+        executor.shutdownNow();
+        file.delete();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        // Mix of compressible and random data, so some frames get coalesced.
+        byte[] data = new byte[10 * CHUNK_SIZE + 123];
+        Random random = new Random(0);
+        for (int i = 0; i < data.length; i += CHUNK_SIZE)
+        {
+            if ((i / CHUNK_SIZE) % 2 == 0)
+            {
+                byte[] region = new byte[Math.min(CHUNK_SIZE, data.length - i)];
+                random.nextBytes(region);
+                System.arraycopy(region, 0, data, i, region.length);
+            }
+        }
+        Assert.assertArrayEquals(data, roundTrip(data, new SnappyCompression()));
+        Assert.assertArrayEquals(data, roundTrip(data, new NoCompression()));
+        Assert.assertEquals(0, pool.getInUseCount());
+    }
+
+    @Test
+    public void testEmptyFile() throws IOException
+    {
+        Assert.assertArrayEquals(new byte[0], roundTrip(new byte[0], new SnappyCompression()));
+    }
+
+    private byte[] roundTrip(byte[] data, ICompression codec) throws IOException
+    {
+        FileOutputStream fos = new FileOutputStream(file);
+        fos.write(data);
+        fos.close();
+
+        RegionCompression compression = new RegionCompression(executor, pool, 4);
+        Iterator<ChunkBuffer> it = compression.compress(file, CHUNK_SIZE, codec);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        while (it.hasNext())
+        {
+            ChunkBuffer chunk = it.next();
+            byte[] part = chunk.toByteArray();
+            if (it.hasNext())
+                Assert.assertTrue(part.length >= CHUNK_SIZE);
+            Assert.assertEquals(SystemUtils.toHex(SystemUtils.md5(part)), SystemUtils.toHex(chunk.getMd5()));
+            compressed.write(part);
+            chunk.release();
+        }
+
+        ByteArrayOutputStream restored = new ByteArrayOutputStream();
+        RegionCompression.decompressAndClose(codec, new ByteArrayInputStream(compressed.toByteArray()), restored);
+        return restored.toByteArray();
+    }
+}
@@ -0,0 +1,129 @@
+package com.netflix.priam.backup;
+
+import java.io.File;
+import java.io.OutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.netflix.priam.FakeConfiguration;
+import com.netflix.priam.aws.S3BackupPath;
+import com.netflix.priam.utils.ThreadSleeper;
+
+public class TestRestoreDownloads
+{
+    private static final File DIR = new File("target/restore_downloads");
+    private static final String PREFIX = "casstestbackup/us-east-1/fake-app/1234/201108082320/SST/ks/cf/";
+
+    private static FailingFileSystem fs;
+    private static DownloadingRestore restore;
+
+    @BeforeClass
+    public static void setup()
+    {
+        fs = new FailingFileSystem();
+        restore = new DownloadingRestore(new FakeConfiguration(), fs);
+        DIR.mkdirs();
+    }
+
+    @AfterClass
+    public static void cleanup()
+    {
+        FileUtils.deleteQuietly(DIR);
+    }
+
+    @Before
+    public void reset()
+    {
+        fs.setupTest();
+        fs.downloads = 0;
+    }
+
+    @Test
+    public void testDownloadsComplete() throws Exception
+    {
+        for (int i = 0; i < 20; i++)
+            restore.download(path("ks-cf-ic-" + i + "-Data.db"), new File(DIR, i + ".db"));
+        restore.waitToComplete();
+        Assert.assertEquals(20, fs.downloadedFiles.size());
+        Assert.assertEquals(0, restore.getFileCount().get());
+    }
+
+    @Test
+    public void testSameFileDownloadedOnce() throws Exception
+    {
+        restore.download(path("ks-cf-ic-1-Data.db"), new File(DIR, "1.db"));
+        restore.download(path("ks-cf-ic-1-Data.db"), new File(DIR, "1.db"));
+        restore.waitToComplete();
+        Assert.assertEquals(1, fs.downloads);
+    }
+
+    @Test
+    public void testFailureThrown() throws Exception
+    {
+        restore.download(path("ks-cf-ic-1-Data.db"), new File(DIR, "1.db"));
+        restore.download(path("bad-Data.db"), new File(DIR, "bad.db"));
+        restore.download(path("ks-cf-ic-2-Data.db"), new File(DIR, "2.db"));
+        try
+        {
+            restore.waitToComplete();
+            Assert.fail("Failed download not reported");
+        }
+        catch (BackupRestoreException e)
+        {
+            Assert.assertTrue(e.getMessage().contains("bad-Data.db"));
+        }
+        Assert.assertEquals(0, restore.getFileCount().get());
+
+        // The next batch starts clean
+        restore.download(path("ks-cf-ic-3-Data.db"), new File(DIR, "3.db"));
+        restore.waitToComplete();
+        Assert.assertTrue(fs.downloadedFiles.contains(PREFIX + "ks-cf-ic-3-Data.db"));
+    }
+
+    private static AbstractBackupPath path(String fileName)
+    {
+        S3BackupPath path = new S3BackupPath(new FakeConfiguration(), null);
+        path.parseRemote(PREFIX + fileName);
+        return path;
+    }
+
+    private static class DownloadingRestore extends AbstractRestore
+    {
+        DownloadingRestore(FakeConfiguration config, IBackupFileSystem fs)
+        {
+            super(config, fs, "TestRestoreDownloads", new ThreadSleeper(), new RestoreTracker(config));
+        }
+
+        @Override
+        public void execute()
+        {
+        }
+
+        @Override
+        public String getName()
+        {
+            return "TestRestoreDownloads";
+        }
+    }
+
+    private static class FailingFileSystem extends FakeBackupFileSystem
+    {
+        private volatile int downloads;
+
+        @Override
+        public void download(AbstractBackupPath path, OutputStream os, String diskPath) throws BackupRestoreException
+        {
+            IOUtils.closeQuietly(os);
+            downloads++;
+            if (path.getFileName().startsWith("bad"))
+                throw new BackupRestoreException("Unable to download " + path.getFileName());
+            downloadedFiles.add(path.getRemotePath());
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.netflix.priam.backup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.netflix.priam.compress.SnappyCompression;
+
+public class TestRestorePipeline
+{
+    private static final File FILE = new File("target/restore_pipeline/Data.db");
+
+    private byte[] data;
+    private ExecutorService executor;
+
+    @Before
+    public void setup()
+    {
+        data = new byte[1000 * 1000 + 3];
+        new Random(0).nextBytes(data);
+        executor = Executors.newCachedThreadPool();
+        FILE.getParentFile().mkdirs();
+    }
+
+    @After
+    public void cleanup()
+    {
+        executor.shutdownNow();
+        FileUtils.deleteQuietly(FILE.getParentFile());
+    }
+
+    @Test
+    public void testReadAhead() throws IOException
+    {
+        InputStream in = new ReadAheadInputStream(new ByteArrayInputStream(data), executor, 64 * 1024, 2);
+        Assert.assertEquals(data[0] & 0xff, in.read());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IOUtils.copy(in, out);
+        in.close();
+        Assert.assertEquals(data.length - 1, out.size());
+        Assert.assertEquals(data[data.length - 1], out.toByteArray()[data.length - 2]);
+    }
+
+    @Test
+    public void testReadAheadError() throws IOException
+    {
+        InputStream in = new ReadAheadInputStream(new InputStream()
+        {
+            @Override
+            public int read() throws IOException
+            {
+                throw new IOException("Connection reset");
+            }
+        }, executor, 1024, 2);
+        try
+        {
+            in.read(new byte[10], 0, 10);
+            Assert.fail("Read error not passed on");
+        }
+        catch (IOException e)
+        {
+            Assert.assertEquals("Connection reset", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testWriteBehindToFile() throws IOException
+    {
+        OutputStream out = new WriteBehindOutputStream(new FileOutputStream(FILE), executor, 100 * 1000, 3);
+        out.write(data[0]);
+        out.write(data, 1, data.length - 1);
+        out.close();
+        Assert.assertArrayEquals(data, FileUtils.readFileToByteArray(FILE));
+    }
+
+    @Test
+    public void testWriteBehindError() throws IOException
+    {
+        OutputStream out = new WriteBehindOutputStream(new OutputStream()
+        {
+            @Override
+            public void write(int b) throws IOException
+            {
+                throw new IOException("Disk full");
+            }
+        }, executor, 1024, 2);
+        out.write(data, 0, 4096);
+        try
+        {
+            out.close();
+            Assert.fail("Write error not passed on");
+        }
+        catch (IOException e)
+        {
+            Assert.assertEquals("Disk full", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testDecompressThroughPipeline() throws IOException
+    {
+        SnappyCompression codec = new SnappyCompression();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        OutputStream compressor = codec.newCompressor(compressed);
+        compressor.write(data);
+        compressor.close();
+
+        InputStream in = new ReadAheadInputStream(new ByteArrayInputStream(compressed.toByteArray()), executor, 32 * 1024, 2);
+        codec.decompressAndClose(in, new WriteBehindOutputStream(new FileOutputStream(FILE), executor, 128 * 1024, 2));
+        Assert.assertArrayEquals(data, FileUtils.readFileToByteArray(FILE));
+    }
+}
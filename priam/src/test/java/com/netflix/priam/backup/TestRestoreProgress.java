@@ -0,0 +1,102 @@
+package com.netflix.priam.backup;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.netflix.priam.FakeConfiguration;
+import com.netflix.priam.aws.S3BackupPath;
+
+public class TestRestoreProgress
+{
+    private static final long MB = 1024 * 1024;
+
+    private long now;
+    private RestoreProgress progress;
+
+    @Before
+    public void setup()
+    {
+        now = 1000000;
+        progress = new RestoreProgress()
+        {
+            @Override
+            protected long currentTimeMillis()
+            {
+                return now;
+            }
+        };
+        progress.start();
+    }
+
+    @Test
+    public void testCountsPerPhaseAndKeyspace()
+    {
+        AbstractBackupPath snap = path("SNAP/ks1/cf/f1.db", 0);
+        AbstractBackupPath sst = path("SST/ks2/cf/f2.db", 10 * MB);
+        progress.planned(snap);
+        progress.planned(sst);
+        progress.planned(path("CL/CommitLog-1.log", MB));
+        Assert.assertEquals(3, progress.getPlannedFiles());
+        Assert.assertEquals(11 * MB, progress.getPlannedBytes());
+
+        // Snapshot files get their size once downloaded
+        snap.setSize(4 * MB);
+        progress.completed(snap, 0);
+        progress.failed(sst);
+        Assert.assertEquals(1, progress.getCompletedFiles());
+        Assert.assertEquals(1, progress.getFailedFiles());
+        Assert.assertEquals(15 * MB, progress.getPlannedBytes());
+        Assert.assertEquals(1, progress.getPhaseCounters().get("SNAP").getCompletedFiles());
+        Assert.assertEquals(1, progress.getKeyspaceCounters().get("ks2").getFailedFiles());
+        Assert.assertEquals(3, progress.getPhases().length);
+        Assert.assertEquals(2, progress.getKeyspaces().length);
+    }
+
+    @Test
+    public void testThroughputAndEta()
+    {
+        for (int i = 0; i < 10; i++)
+            progress.planned(path("SST/ks/cf/f" + i + ".db", 100 * MB));
+        Assert.assertEquals(-1, progress.getEtaSeconds());
+        for (int i = 0; i < 5; i++)
+        {
+            now += 10 * 1000;
+            progress.completed(path("SST/ks/cf/f" + i + ".db", 100 * MB), 100 * MB);
+        }
+        // 500 MB in 50 seconds, 500 MB to go
+        Assert.assertEquals(10, progress.getThroughputMBps(), 0.01);
+        Assert.assertEquals(50, progress.getEtaSeconds());
+
+        // Only the last minute counts
+        for (int i = 5; i < 8; i++)
+        {
+            now += 60 * 1000;
+            progress.completed(path("SST/ks/cf/f" + i + ".db", 100 * MB), 100 * MB);
+        }
+        Assert.assertEquals(100 / 60.0, progress.getThroughputMBps(), 0.01);
+
+        progress.finish();
+        Assert.assertEquals(-1, progress.getEtaSeconds());
+    }
+
+    @Test
+    public void testUnsizedFilesEstimated()
+    {
+        progress.planned(path("SNAP/ks/cf/f1.db", 0));
+        progress.planned(path("SNAP/ks/cf/f2.db", 0));
+        AbstractBackupPath done = path("SNAP/ks/cf/f1.db", 60 * MB);
+        now += 60 * 1000;
+        progress.completed(done, 0);
+        // The other file is taken to be as large as the first one
+        Assert.assertEquals(60, progress.getEtaSeconds());
+    }
+
+    private static AbstractBackupPath path(String file, long size)
+    {
+        S3BackupPath path = new S3BackupPath(new FakeConfiguration(), null);
+        path.parseRemote("casstestbackup/us-east-1/fake-app/1234/201108082320/" + file);
+        path.setSize(size);
+        return path;
+    }
+}
@@ -0,0 +1,104 @@
+package com.netflix.priam.backup;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.netflix.priam.FakeConfiguration;
+import com.netflix.priam.aws.S3BackupPath;
+
+public class TestRestoreTracker
+{
+    private static final String DIR = "target/restore_tracker";
+
+    private FakeConfiguration config;
+    private RestoreTracker tracker;
+
+    @Before
+    public void setup()
+    {
+        config = new FakeConfiguration();
+        config.trackerLocation = DIR + "/tracker";
+        tracker = new RestoreTracker(config);
+    }
+
+    @After
+    public void cleanup()
+    {
+        FileUtils.deleteQuietly(new File(DIR));
+    }
+
+    @Test
+    public void testContains() throws IOException
+    {
+        Assert.assertNull(tracker.getWatermark());
+        tracker.add(path("201301010000", "ks-cf-ic-1-Data.db"));
+        Assert.assertTrue(tracker.contains(path("201301010000", "ks-cf-ic-1-Data.db")));
+        Assert.assertFalse(tracker.contains(path("201301010000", "ks-cf-ic-2-Data.db")));
+        Assert.assertFalse(tracker.contains(path("201301010001", "ks-cf-ic-1-Data.db")));
+    }
+
+    @Test
+    public void testWatermark() throws IOException
+    {
+        AbstractBackupPath first = path("201301010000", "ks-cf-ic-1-Data.db");
+        AbstractBackupPath second = path("201301010100", "ks-cf-ic-2-Data.db");
+        tracker.add(second);
+        tracker.add(first);
+        Assert.assertEquals(first.getTime(), tracker.getWatermark());
+
+        tracker.advance(second.getTime());
+        Assert.assertEquals(second.getTime(), tracker.getWatermark());
+        Assert.assertEquals(1, tracker.size());
+        Assert.assertTrue(tracker.contains(second));
+        // Files older than the watermark are not kept
+        tracker.add(first);
+        Assert.assertEquals(1, tracker.size());
+    }
+
+    @Test
+    public void testResumeFromFile() throws IOException
+    {
+        AbstractBackupPath first = path("201301010000", "ks-cf-ic-1-Data.db");
+        AbstractBackupPath second = path("201301010100", "ks-cf-ic-2-Data.db");
+        tracker.add(first);
+        tracker.advance(first.getTime());
+        tracker.add(second);
+        // A line cut short by a crash
+        FileWriter writer = new FileWriter(config.trackerLocation, true);
+        writer.write("1357");
+        writer.close();
+
+        RestoreTracker loaded = new RestoreTracker(config);
+        Assert.assertEquals(first.getTime(), loaded.getWatermark());
+        Assert.assertEquals(2, loaded.size());
+        Assert.assertTrue(loaded.contains(first));
+        Assert.assertTrue(loaded.contains(second));
+
+        loaded.clear();
+        Assert.assertNull(new RestoreTracker(config).getWatermark());
+    }
+
+    @Test
+    public void testInMemory() throws IOException
+    {
+        config.trackerLocation = "";
+        tracker.add(path("201301010000", "ks-cf-ic-1-Data.db"));
+        tracker.advance(path("201301010000", "ks-cf-ic-1-Data.db").getTime());
+        Assert.assertEquals(1, tracker.size());
+        Assert.assertFalse(new File(DIR).exists());
+    }
+
+    private static AbstractBackupPath path(String time, String fileName)
+    {
+        S3BackupPath path = new S3BackupPath(new FakeConfiguration(), null);
+        path.parseRemote("casstestbackup/us-east-1/fake-app/1234/" + time + "/SST/ks/cf/" + fileName);
+        return path;
+    }
+}
@@ -0,0 +1,147 @@
+package com.netflix.priam.backup;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.google.common.collect.Lists;
+import com.google.inject.Provider;
+import com.netflix.priam.FakeConfiguration;
+import com.netflix.priam.aws.S3BackupPath;
+import com.netflix.priam.aws.S3FileIterator;
+import com.netflix.priam.scheduler.NamedThreadPoolExecutor;
+
+public class TestS3FileIterator
+{
+    private static final String TOKEN_PATH = "casstestbackup/us-east-1/fake-app/1234/";
+    private static final String[] TIMES = { "201112301100", "201112301200", "201112311500", "201202290000", "201207040930", "201212312359",
+            "201301150000", "201301150000", "201302010000", "201302020600", "201302020700" };
+
+    private ThreadPoolExecutor executor;
+    private ListingS3Client client;
+    private S3BackupPath factory;
+
+    @Before
+    public void setup()
+    {
+        executor = new NamedThreadPoolExecutor(3, "TestS3List");
+        client = new ListingS3Client();
+        for (int i = 0; i < TIMES.length; i++)
+            client.keys.add(TOKEN_PATH + TIMES[i] + "/SST/ks/cf/ks-cf-ic-" + i + "-Data.db");
+        factory = new S3BackupPath(new FakeConfiguration(), null);
+    }
+
+    @After
+    public void cleanup()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testListsRangeByDatePrefix()
+    {
+        List<String> keys = list(factory.parseDate("201112301200"), factory.parseDate("201302020700"));
+        Assert.assertEquals(Lists.newArrayList(client.keys).subList(1, TIMES.length - 1), keys);
+        // Partial first and last days, whole years and months in between
+        Assert.assertEquals(Lists.newArrayList("20111230", "20111231", "2012", "201301", "20130201", "201302020"), client.prefixes());
+    }
+
+    @Test
+    public void testRangeWithinDay()
+    {
+        List<String> keys = list(factory.parseDate("201301150000"), factory.parseDate("201301150100"));
+        Assert.assertEquals(2, keys.size());
+        Assert.assertEquals(1, client.prefixes().size());
+    }
+
+    private List<String> list(Date start, Date till)
+    {
+        Provider<AbstractBackupPath> provider = new Provider<AbstractBackupPath>()
+        {
+            @Override
+            public AbstractBackupPath get()
+            {
+                return new S3BackupPath(new FakeConfiguration(), null)
+                {
+                    @Override
+                    public String remotePrefix(Date start, Date end, String location)
+                    {
+                        return TOKEN_PATH + match(start, end);
+                    }
+                };
+            }
+        };
+        Iterator<AbstractBackupPath> it = new S3FileIterator(provider, client, "casstestbackup", start, till, executor, 3);
+        List<String> keys = Lists.newArrayList();
+        while (it.hasNext())
+            keys.add(it.next().getRemotePath());
+        return keys;
+    }
+
+    /**
+     * Lists its keys two at a time.
+     */
+    private static class ListingS3Client extends AmazonS3Client
+    {
+        private final TreeSet<String> keys = new TreeSet<String>();
+        private final List<String> prefixes = Collections.synchronizedList(Lists.<String> newArrayList());
+
+        @Override
+        public ObjectListing listObjects(ListObjectsRequest request)
+        {
+            prefixes.add(request.getPrefix());
+            return page(request.getPrefix(), request.getPrefix());
+        }
+
+        @Override
+        public ObjectListing listNextBatchOfObjects(ObjectListing previous)
+        {
+            return page(previous.getPrefix(), previous.getNextMarker());
+        }
+
+        private ObjectListing page(String prefix, String from)
+        {
+            ObjectListing listing = new ObjectListing();
+            listing.setPrefix(prefix);
+            for (String key : keys.tailSet(from, false))
+            {
+                if (!key.startsWith(prefix))
+                    break;
+                if (listing.getObjectSummaries().size() == 2)
+                {
+                    listing.setTruncated(true);
+                    break;
+                }
+                S3ObjectSummary summary = new S3ObjectSummary();
+                summary.setKey(key);
+                listing.getObjectSummaries().add(summary);
+                listing.setNextMarker(key);
+            }
+            return listing;
+        }
+
+        List<String> prefixes()
+        {
+            List<String> dates = Lists.newArrayList();
+            synchronized (prefixes)
+            {
+                for (String prefix : prefixes)
+                    dates.add(prefix.substring(TOKEN_PATH.length()));
+            }
+            Collections.sort(dates);
+            return dates;
+        }
+    }
+}
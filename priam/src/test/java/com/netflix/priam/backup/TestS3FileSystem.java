@@ -4,12 +4,15 @@ import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import junit.framework.Assert;
 import mockit.Mock;
 import mockit.Mockit;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Ignore;
@@ -21,20 +24,28 @@ import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
 import com.amazonaws.services.s3.model.BucketLifecycleConfiguration;
 import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
 import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ListPartsRequest;
 import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartSummary;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
 import com.google.common.collect.Lists;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.netflix.priam.FakeConfiguration;
+import com.netflix.priam.IConfiguration;
 import com.netflix.priam.aws.DataPart;
 import com.netflix.priam.aws.S3BackupPath;
 import com.netflix.priam.aws.S3FileSystem;
 import com.netflix.priam.aws.S3PartUploader;
 import com.netflix.priam.backup.AbstractBackupPath.BackupFileType;
 import com.netflix.priam.utils.RetryableCallable;
+import com.netflix.priam.utils.SystemUtils;
 
 public class TestS3FileSystem
 {
@@ -125,6 +136,103 @@ public class TestS3FileSystem
         Assert.assertEquals(1, MockS3PartUploader.compattempts);
     }
 
+    @Test
+    public void testSmallFileSinglePut() throws Exception
+    {
+        MockS3PartUploader.setup();
+        MockAmazonS3Client.putAttempts = 0;
+        FakeConfiguration config = (FakeConfiguration) injector.getInstance(IConfiguration.class);
+        config.singlePutThreshold = 1024 * 1024;
+        try
+        {
+            S3FileSystem fs = injector.getInstance(S3FileSystem.class);
+            S3BackupPath backupfile = injector.getInstance(S3BackupPath.class);
+            backupfile.parseLocal(new File(FILE_PATH), BackupFileType.SNAP);
+            fs.upload(backupfile, backupfile.localReader());
+            Assert.assertEquals(1, MockAmazonS3Client.putAttempts);
+            Assert.assertEquals(0, MockS3PartUploader.partAttempts);
+            Assert.assertEquals(0, MockS3PartUploader.compattempts);
+        }
+        finally
+        {
+            config.singlePutThreshold = 0;
+        }
+    }
+
+    @Test
+    public void testResumeAfterPartFailure() throws Exception
+    {
+        MockS3PartUploader.setup();
+        MockS3PartUploader.partFailure = true;
+        MockAmazonS3Client.initAttempts = 0;
+        FakeConfiguration config = (FakeConfiguration) injector.getInstance(IConfiguration.class);
+        config.journalLocation = "target/upload_journal";
+        try
+        {
+            S3FileSystem fs = injector.getInstance(S3FileSystem.class);
+            S3BackupPath backupfile = injector.getInstance(S3BackupPath.class);
+            backupfile.parseLocal(new File(FILE_PATH), BackupFileType.SNAP);
+            try
+            {
+                fs.upload(backupfile, backupfile.localReader());
+                Assert.fail("Expected the upload to fail");
+            }
+            catch (BackupRestoreException e)
+            {
+                // ignore
+            }
+            // The second attempt carries on with the upload left open by the first
+            MockS3PartUploader.partFailure = false;
+            fs.upload(backupfile, backupfile.localReader());
+            Assert.assertEquals(1, MockAmazonS3Client.initAttempts);
+            Assert.assertEquals(1, MockS3PartUploader.compattempts);
+        }
+        finally
+        {
+            config.journalLocation = "";
+            FileUtils.deleteQuietly(new File("target/upload_journal"));
+        }
+    }
+
+    @Test
+    public void testAbortUnresumableUpload() throws Exception
+    {
+        MockS3PartUploader.setup();
+        MockS3PartUploader.partFailure = true;
+        MockAmazonS3Client.abortAttempts = 0;
+        FakeConfiguration config = (FakeConfiguration) injector.getInstance(IConfiguration.class);
+        config.journalLocation = "target/upload_journal";
+        File file = new File("target/data/Keyspace1/Standard1/backups/201108082320/Keyspace1-Standard1-ia-2-Data.db");
+        FileUtils.copyFile(new File(FILE_PATH), file);
+        try
+        {
+            S3FileSystem fs = injector.getInstance(S3FileSystem.class);
+            S3BackupPath backupfile = injector.getInstance(S3BackupPath.class);
+            backupfile.parseLocal(file, BackupFileType.SNAP);
+            try
+            {
+                fs.upload(backupfile, backupfile.localReader());
+                Assert.fail("Expected the upload to fail");
+            }
+            catch (BackupRestoreException e)
+            {
+                // ignore
+            }
+            Assert.assertEquals(0, MockAmazonS3Client.abortAttempts);
+            // Once the snapshot is cleared the upload can't be resumed
+            file.delete();
+            fs.cleanup();
+            Assert.assertEquals(1, MockAmazonS3Client.abortAttempts);
+            Assert.assertEquals(0, new File(config.journalLocation).list().length);
+        }
+        finally
+        {
+            config.journalLocation = "";
+            FileUtils.deleteQuietly(new File("target/upload_journal"));
+            file.delete();
+        }
+    }
+
     @Test
     public void testCleanupAdd() throws Exception
     {
@@ -179,11 +287,12 @@ public class TestS3FileSystem
         }
 
         @Mock
-        public void completeUpload() throws BackupRestoreException
+        public String completeUpload() throws BackupRestoreException
         {
             ++compattempts;
             if (completionFailure)
                 throw new BackupRestoreException("Test exception");
+            return null;
         }
 
         @Mock
@@ -213,6 +322,9 @@ public class TestS3FileSystem
     {
         public static boolean ruleAvailable = false;
         public static BucketLifecycleConfiguration bconf = new BucketLifecycleConfiguration();
+        public static int putAttempts = 0;
+        public static int initAttempts = 0;
+        public static int abortAttempts = 0;
         @Mock
         public void $init()
         {
@@ -221,8 +333,39 @@ public class TestS3FileSystem
         @Mock
         public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest initiateMultipartUploadRequest) throws AmazonClientException, AmazonServiceException
         {
+            ++initAttempts;
             return new InitiateMultipartUploadResult();
         }
+
+        @Mock
+        public void abortMultipartUpload(AbortMultipartUploadRequest abortMultipartUploadRequest) throws AmazonClientException, AmazonServiceException
+        {
+            ++abortAttempts;
+        }
+
+        @Mock
+        public PartListing listParts(ListPartsRequest listPartsRequest) throws AmazonClientException, AmazonServiceException
+        {
+            PartListing listing = new PartListing();
+            listing.setParts(new ArrayList<PartSummary>());
+            return listing;
+        }
+
+        @Mock
+        public PutObjectResult putObject(PutObjectRequest putObjectRequest) throws AmazonClientException, AmazonServiceException
+        {
+            ++putAttempts;
+            PutObjectResult result = new PutObjectResult();
+            try
+            {
+                result.setETag(SystemUtils.toHex(SystemUtils.md5(IOUtils.toByteArray(putObjectRequest.getInputStream()))));
+            }
+            catch (IOException e)
+            {
+                throw new AmazonClientException(e.getMessage(), e);
+            }
+            return result;
+        }
         
         @Mock
         public BucketLifecycleConfiguration getBucketLifecycleConfiguration(String bucketName)
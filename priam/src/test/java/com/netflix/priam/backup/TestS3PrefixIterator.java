@@ -0,0 +1,135 @@
+package com.netflix.priam.backup;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.google.common.collect.Lists;
+import com.google.inject.Provider;
+import com.netflix.priam.FakeConfiguration;
+import com.netflix.priam.aws.S3BackupPath;
+import com.netflix.priam.aws.S3PrefixIterator;
+import com.netflix.priam.scheduler.NamedThreadPoolExecutor;
+import com.netflix.priam.utils.TokenManager;
+
+public class TestS3PrefixIterator
+{
+    private static final String CLUSTER_PATH = "casstestbackup/us-east-1/my_fake_cluster/";
+    private static final int TOKENS = 30;
+
+    private ThreadPoolExecutor executor;
+    private TokenS3Client client;
+    private FakeConfiguration config;
+    private Date date;
+
+    @Before
+    public void setup()
+    {
+        executor = new NamedThreadPoolExecutor(4, "TestS3List");
+        client = new TokenS3Client();
+        config = new FakeConfiguration();
+        date = new S3BackupPath(config, null).parseDate("201108082320");
+    }
+
+    @After
+    public void cleanup()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testTokensWithBackupOnDate()
+    {
+        Iterator<AbstractBackupPath> it = iterator();
+        List<String> tokens = Lists.newArrayList();
+        while (it.hasNext())
+            tokens.add(it.next().getToken());
+        List<String> expected = Lists.newArrayList();
+        for (int i = 0; i < TOKENS; i += 2)
+            expected.add(String.valueOf(i));
+        Assert.assertEquals(expected, tokens);
+        Assert.assertEquals(TOKENS, client.checks.get());
+        Assert.assertEquals(Collections.singletonList(1), client.maxKeys);
+    }
+
+    @Test
+    public void testTokensCachedUntilCleared()
+    {
+        RestoreTokenSelector selector = new RestoreTokenSelector(new TokenManager(), new FakeBackupFileSystem()
+        {
+            @Override
+            public Iterator<AbstractBackupPath> listPrefixes(Date date)
+            {
+                return iterator();
+            }
+        });
+        Assert.assertEquals(BigInteger.TEN, selector.getClosestToken(BigInteger.TEN, date));
+        Assert.assertEquals(BigInteger.valueOf(28), selector.getClosestToken(BigInteger.valueOf(100), date));
+        Assert.assertEquals(1, client.listings.get());
+
+        selector.clear();
+        selector.getClosestToken(BigInteger.ONE, date);
+        Assert.assertEquals(2, client.listings.get());
+    }
+
+    private Iterator<AbstractBackupPath> iterator()
+    {
+        Provider<AbstractBackupPath> provider = new Provider<AbstractBackupPath>()
+        {
+            @Override
+            public AbstractBackupPath get()
+            {
+                return new S3BackupPath(config, null);
+            }
+        };
+        return new S3PrefixIterator(config, provider, client, date, executor);
+    }
+
+    /**
+     * Lists the tokens of the cluster, tokens with an even number have a
+     * backup on every date.
+     */
+    private static class TokenS3Client extends AmazonS3Client
+    {
+        private final AtomicInteger listings = new AtomicInteger();
+        private final AtomicInteger checks = new AtomicInteger();
+        private final List<Integer> maxKeys = Collections.synchronizedList(Lists.<Integer> newArrayList());
+
+        @Override
+        public ObjectListing listObjects(ListObjectsRequest request)
+        {
+            ObjectListing listing = new ObjectListing();
+            if (request.getDelimiter() != null)
+            {
+                listings.incrementAndGet();
+                for (int i = 0; i < TOKENS; i++)
+                    listing.getCommonPrefixes().add(CLUSTER_PATH + i + "/");
+                return listing;
+            }
+            checks.incrementAndGet();
+            if (!maxKeys.contains(request.getMaxKeys()))
+                maxKeys.add(request.getMaxKeys());
+            String token = request.getPrefix().substring(CLUSTER_PATH.length()).split("/")[0];
+            if (Integer.parseInt(token) % 2 == 0)
+            {
+                S3ObjectSummary summary = new S3ObjectSummary();
+                summary.setKey(request.getPrefix() + "2320/SST/ks/cf/ks-cf-ic-1-Data.db");
+                listing.getObjectSummaries().add(summary);
+            }
+            return listing;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.netflix.priam.backup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.netflix.priam.FakeConfiguration;
+import com.netflix.priam.aws.S3BackupPath;
+
+public class TestStagedSSTables
+{
+    private static final File DATA = new File("target/data");
+    private static final File STAGING = new File(DATA, "restore_staging");
+
+    private StagedSSTables staged;
+
+    @Before
+    public void setup()
+    {
+        FileUtils.deleteQuietly(DATA);
+        staged = new StagedSSTables(DATA, STAGING);
+    }
+
+    @After
+    public void cleanup()
+    {
+        FileUtils.deleteQuietly(DATA);
+    }
+
+    @Test
+    public void testStagingFile()
+    {
+        S3BackupPath path = new S3BackupPath(new FakeConfiguration(), null);
+        path.parseRemote("casstestbackup/us-east-1/fake-app/1234/201108082320/SST/ks/cf/ks-cf-ic-1-Data.db");
+        File file = staged.stagingFile(path);
+        Assert.assertEquals(new File(STAGING, "ks/cf/ks-cf-ic-1-Data.db").getAbsolutePath(), file.getAbsolutePath());
+        Assert.assertTrue(file.getParentFile().isDirectory());
+    }
+
+    @Test
+    public void testMoveRenumbersGenerations() throws IOException
+    {
+        File live = new File(DATA, "ks/cf");
+        write(new File(live, "ks-cf-ic-3-Data.db"), "live");
+        write(new File(STAGING, "ks/cf/ks-cf-ic-3-Data.db"), "three");
+        write(new File(STAGING, "ks/cf/ks-cf-ic-3-Index.db"), "three");
+        write(new File(STAGING, "ks/cf/ks-cf-ic-7-Data.db"), "seven");
+
+        staged.moveKeyspace("ks");
+
+        Assert.assertFalse(new File(STAGING, "ks").exists());
+        Assert.assertEquals("live", FileUtils.readFileToString(new File(live, "ks-cf-ic-3-Data.db")));
+        List<String> names = Arrays.asList(live.list());
+        Assert.assertEquals(4, names.size());
+        int three = generation(live, "three", "Data.db");
+        Assert.assertTrue(names.contains("ks-cf-ic-" + three + "-Index.db"));
+        Assert.assertTrue(three > 3 + StagedSSTables.GENERATION_GAP);
+        Assert.assertTrue(generation(live, "seven", "Data.db") > 3 + StagedSSTables.GENERATION_GAP);
+    }
+
+    @Test
+    public void testMoveOtherFiles() throws IOException
+    {
+        write(new File(STAGING, "ks/cf/manifest.json"), "{}");
+        staged.moveKeyspace("ks");
+        Assert.assertTrue(new File(DATA, "ks/cf/manifest.json").exists());
+        // Nothing staged for the keyspace
+        staged.moveKeyspace("other");
+    }
+
+    private static int generation(File dir, String content, String component) throws IOException
+    {
+        for (File file : dir.listFiles())
+            if (file.getName().endsWith(component) && content.equals(FileUtils.readFileToString(file)))
+                return StagedSSTables.generation(file.getName().split("-"));
+        Assert.fail("No " + component + " with " + content);
+        return -1;
+    }
+
+    private static void write(File file, String content) throws IOException
+    {
+        FileUtils.writeStringToFile(file, content);
+    }
+}
@@ -0,0 +1,50 @@
+package com.netflix.priam.backup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+public class TestThrottledStreams
+{
+    private static final int SIZE = 256 * 1024;
+
+    @Test
+    public void testReadThrottled() throws IOException
+    {
+        RateLimiter limiter = RateLimiter.create(SIZE);
+        InputStream in = new ThrottledInputStream(new ByteArrayInputStream(new byte[2 * SIZE]), limiter);
+        long start = System.currentTimeMillis();
+        byte[] buf = new byte[SIZE / 4];
+        int total = 0;
+        int count;
+        while ((count = in.read(buf, 0, buf.length)) != -1)
+            total += count;
+        Assert.assertEquals(2 * SIZE, total);
+        // The first second's worth goes through at once, the rest at the rate.
+        Assert.assertTrue(System.currentTimeMillis() - start >= 1500);
+    }
+
+    @Test
+    public void testWriteRateChanged() throws IOException
+    {
+        RateLimiter limiter = RateLimiter.create(1);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream out = new ThrottledOutputStream(bytes, limiter);
+        // Lifting the limit lets the writer go at full speed
+        limiter.setRate(Double.MAX_VALUE);
+        long start = System.currentTimeMillis();
+        IOUtils.copy(new ByteArrayInputStream(new byte[SIZE]), out);
+        out.write(1);
+        out.close();
+        Assert.assertEquals(SIZE + 1, bytes.size());
+        Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+}
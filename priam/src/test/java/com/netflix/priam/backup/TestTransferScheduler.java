@@ -0,0 +1,134 @@
+package com.netflix.priam.backup;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class TestTransferScheduler
+{
+    private static final long MB = 1024 * 1024L;
+
+    private TransferScheduler scheduler;
+
+    @Before
+    public void setup()
+    {
+        scheduler = new TransferScheduler(4, 10 * MB);
+    }
+
+    @After
+    public void cleanup()
+    {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testConcurrentTransfers() throws Exception
+    {
+        final CountDownLatch started = new CountDownLatch(3);
+        final CountDownLatch release = new CountDownLatch(1);
+        List<Future<Integer>> futures = Lists.newArrayList();
+        for (int i = 0; i < 3; i++)
+            futures.add(scheduler.submit(MB, new Transfer(i, started, release)));
+        // All three run at once, none waits for the others to finish
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(7 * MB, scheduler.getAvailableBytes());
+        release.countDown();
+        for (int i = 0; i < 3; i++)
+            Assert.assertEquals(Integer.valueOf(i), futures.get(i).get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(10 * MB, scheduler.getAvailableBytes());
+    }
+
+    @Test
+    public void testBudgetBlocksSubmit() throws Exception
+    {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        // Larger than the budget, takes all of it
+        Future<Integer> large = scheduler.submit(100 * MB, new Transfer(0, started, release));
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, scheduler.getAvailableBytes());
+
+        final AtomicBoolean submitted = new AtomicBoolean();
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread thread = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    scheduler.submit(1, new Transfer(1, new CountDownLatch(1), new CountDownLatch(0)));
+                    submitted.set(true);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            }
+        };
+        thread.start();
+        Assert.assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+        release.countDown();
+        Assert.assertEquals(Integer.valueOf(0), large.get(5, TimeUnit.SECONDS));
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(submitted.get());
+    }
+
+    @Test
+    public void testFailureReleasesBudget() throws Exception
+    {
+        Future<Void> failed = scheduler.submit(5 * MB, new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                throw new BackupRestoreException("upload failed");
+            }
+        });
+        try
+        {
+            failed.get(5, TimeUnit.SECONDS);
+            Assert.fail("Expected the transfer to fail");
+        }
+        catch (ExecutionException e)
+        {
+            Assert.assertTrue(e.getCause() instanceof BackupRestoreException);
+        }
+        Assert.assertEquals(10 * MB, scheduler.getAvailableBytes());
+    }
+
+    private static class Transfer implements Callable<Integer>
+    {
+        private final int id;
+        private final CountDownLatch started;
+        private final CountDownLatch release;
+
+        Transfer(int id, CountDownLatch started, CountDownLatch release)
+        {
+            this.id = id;
+            this.started = started;
+            this.release = release;
+        }
+
+        @Override
+        public Integer call() throws Exception
+        {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return id;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.netflix.priam.backup;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.netflix.priam.FakeConfiguration;
+import com.netflix.priam.aws.UploadJournal;
+
+public class TestUploadJournal
+{
+    private static final String KEY = "casstestbackup/us-east-1/fake-app/1234/201108082320/SNAP/ks/cf/ks-cf-ia-1-Data.db";
+    private static final String JOURNAL_DIR = "target/upload_journal";
+
+    private FakeConfiguration config;
+    private UploadJournal journal;
+    private File source;
+
+    @Before
+    public void setup() throws IOException
+    {
+        config = new FakeConfiguration();
+        config.journalLocation = JOURNAL_DIR;
+        journal = new UploadJournal(config);
+        source = new File("target/upload_source/ks-cf-ia-1-Data.db");
+        FileUtils.writeStringToFile(source, "data");
+    }
+
+    @After
+    public void cleanup()
+    {
+        FileUtils.deleteQuietly(new File(JOURNAL_DIR));
+        FileUtils.deleteQuietly(source.getParentFile());
+    }
+
+    @Test
+    public void testPartsSurviveReload() throws IOException
+    {
+        UploadJournal.Entry entry = journal.create(KEY, "upload-1", "100:1:10:snappy", source);
+        entry.partDone(1, "etag1");
+        entry.partDone(2, "etag2");
+
+        UploadJournal.Entry found = new UploadJournal(config).find(KEY);
+        Assert.assertNotNull(found);
+        Assert.assertEquals("upload-1", found.getUploadId());
+        Assert.assertEquals("100:1:10:snappy", found.getSignature());
+        Map<Integer, String> parts = found.getParts();
+        Assert.assertEquals(2, parts.size());
+        Assert.assertEquals("etag2", parts.get(2));
+
+        journal.remove(found);
+        Assert.assertNull(journal.find(KEY));
+    }
+
+    @Test
+    public void testTornLineIgnored() throws IOException
+    {
+        UploadJournal.Entry entry = journal.create(KEY, "upload-1", "sig", source);
+        entry.partDone(1, "etag1");
+        File[] files = new File(JOURNAL_DIR).listFiles();
+        Assert.assertEquals(1, files.length);
+        // a crash while the second part was being recorded
+        FileWriter writer = new FileWriter(files[0], true);
+        writer.write("2");
+        writer.close();
+        Assert.assertEquals(1, journal.find(KEY).getParts().size());
+    }
+
+    @Test
+    public void testDisabled() throws IOException
+    {
+        config.journalLocation = "";
+        Assert.assertFalse(journal.isEnabled());
+        Assert.assertNull(journal.find(KEY));
+        Assert.assertTrue(journal.listAbandoned(0).isEmpty());
+    }
+
+    @Test
+    public void testStaleUploadAbandoned() throws IOException
+    {
+        journal.create(KEY, "upload-1", "sig", source);
+        Assert.assertTrue(journal.listAbandoned(60 * 60 * 1000L).isEmpty());
+        File[] files = new File(JOURNAL_DIR).listFiles();
+        files[0].setLastModified(System.currentTimeMillis() - 2 * 60 * 60 * 1000L);
+        List<UploadJournal.Entry> stale = journal.listAbandoned(60 * 60 * 1000L);
+        Assert.assertEquals(1, stale.size());
+        Assert.assertEquals(KEY, stale.get(0).getKey());
+    }
+
+    @Test
+    public void testUploadOfDeletedFileAbandoned() throws IOException
+    {
+        journal.create(KEY, "upload-1", "sig", source);
+        Assert.assertTrue(journal.find(KEY).isResumable());
+        // The snapshot was cleared, the upload can't be finished any more
+        source.delete();
+        Assert.assertFalse(journal.find(KEY).isResumable());
+        List<UploadJournal.Entry> abandoned = journal.listAbandoned(60 * 60 * 1000L);
+        Assert.assertEquals(1, abandoned.size());
+        Assert.assertEquals("upload-1", abandoned.get(0).getUploadId());
+    }
+}
@@ -0,0 +1,92 @@
+package com.netflix.priam.backup;
+
+import javax.management.MBeanServerFactory;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.netflix.priam.FakeConfiguration;
+import com.netflix.priam.backup.UploadThrottleController.LoadSample;
+
+public class TestUploadThrottleController
+{
+    private FakeConfiguration config;
+    private UploadThrottle throttle;
+    private UploadThrottleController controller;
+
+    @Before
+    public void setup()
+    {
+        config = new FakeConfiguration();
+        config.uploadThrottle = 1000;
+        config.uploadThrottleMin = 100;
+        throttle = new UploadThrottle(config);
+        controller = new UploadThrottleController(config, throttle, MBeanServerFactory.newMBeanServer());
+    }
+
+    @Test
+    public void testBackOffToMinimum()
+    {
+        LoadSample sample = new LoadSample();
+        sample.pendingCompactions = 50;
+        controller.update(sample);
+        Assert.assertEquals(500, throttle.getRate(), 0.1);
+        Assert.assertEquals("50 pending compactions over 20", throttle.getReason());
+        controller.update(sample);
+        controller.update(sample);
+        controller.update(sample);
+        Assert.assertEquals(100, throttle.getRate(), 0.1);
+    }
+
+    @Test
+    public void testRecoverToMaximum()
+    {
+        LoadSample busy = new LoadSample();
+        busy.readLatencyMicros = 20000;
+        controller.update(busy);
+        controller.update(busy);
+        Assert.assertEquals(250, throttle.getRate(), 0.1);
+
+        LoadSample idle = new LoadSample();
+        idle.readLatencyMicros = 500;
+        idle.pendingReads = 1;
+        controller.update(idle);
+        Assert.assertEquals(340, throttle.getRate(), 0.1);
+        Assert.assertEquals("Cassandra load below thresholds", throttle.getReason());
+        for (int i = 0; i < 10; i++)
+            controller.update(idle);
+        Assert.assertEquals(1000, throttle.getRate(), 0.1);
+    }
+
+    @Test
+    public void testUnknownSignalsIgnored()
+    {
+        controller.update(new LoadSample());
+        Assert.assertEquals(1000, throttle.getRate(), 0.1);
+        Assert.assertEquals("Configured upload throttle", throttle.getReason());
+    }
+
+    @Test
+    public void testDisabledWithoutMinimum()
+    {
+        Assert.assertTrue(UploadThrottleController.isEnabled(config));
+        config.uploadThrottleMin = 0;
+        Assert.assertFalse(UploadThrottleController.isEnabled(config));
+    }
+
+    @Test
+    public void testDisabledWithoutMaximum()
+    {
+        config.uploadThrottle = 0;
+        throttle = new UploadThrottle(config);
+        controller = new UploadThrottleController(config, throttle, MBeanServerFactory.newMBeanServer());
+        Assert.assertFalse(UploadThrottleController.isEnabled(config));
+        double unlimited = throttle.getRate();
+
+        LoadSample sample = new LoadSample();
+        sample.pendingCompactions = 50;
+        controller.update(sample);
+        Assert.assertEquals(unlimited, throttle.getRate(), 0.1);
+    }
+}
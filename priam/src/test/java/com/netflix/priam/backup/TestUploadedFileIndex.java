@@ -0,0 +1,143 @@
+package com.netflix.priam.backup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Date;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.netflix.priam.FakeConfiguration;
+import com.netflix.priam.aws.S3BackupPath;
+import com.netflix.priam.backup.AbstractBackupPath.BackupFileType;
+
+public class TestUploadedFileIndex
+{
+    private static final String DIR = "target/uploaded_index";
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private FakeConfiguration config;
+    private UploadedFileIndex index;
+    private File file;
+
+    @Before
+    public void setup() throws IOException
+    {
+        config = new FakeConfiguration();
+        config.indexLocation = DIR + "/index";
+        index = new UploadedFileIndex(config);
+        new File(DIR).mkdirs();
+        file = new File(DIR, "ks-cf-ic-1-Data.db");
+        write(file, 0);
+    }
+
+    @After
+    public void cleanup()
+    {
+        FileUtils.deleteQuietly(new File(DIR));
+    }
+
+    @Test
+    public void testFindUploaded() throws IOException
+    {
+        AbstractBackupPath sst = path(BackupFileType.SST, "201301010000");
+        Assert.assertNull(find(index, sst));
+        add(sst);
+        // The snapshot taken later points at the incremental upload
+        AbstractBackupPath snap = path(BackupFileType.SNAP, "201301020000");
+        Assert.assertEquals(sst.getRemotePath(), find(index, snap));
+        // and so does a fresh index loaded from disk
+        Assert.assertEquals(sst.getRemotePath(), find(new UploadedFileIndex(config), snap));
+    }
+
+    @Test
+    public void testChangedFileNotReused() throws IOException
+    {
+        add(path(BackupFileType.SNAP, "201301010000"));
+        write(file, 1);
+        Assert.assertNull(find(index, path(BackupFileType.SNAP, "201301020000")));
+    }
+
+    @Test
+    public void testChangedMiddleNotReused() throws IOException
+    {
+        add(path(BackupFileType.SNAP, "201301010000"));
+        // Same length, first and last bytes
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(file.length() / 2);
+        raf.write(raf.read() + 1);
+        raf.close();
+        Assert.assertNull(find(index, path(BackupFileType.SNAP, "201301020000")));
+    }
+
+    @Test
+    public void testOtherNodeNotReused() throws IOException
+    {
+        add(path(BackupFileType.SNAP, "201301010000"));
+        AbstractBackupPath snap = path(BackupFileType.SNAP, "201301020000");
+        snap.token = "5678";
+        Assert.assertNull(find(index, snap));
+    }
+
+    @Test
+    public void testExpiredNotReused() throws IOException
+    {
+        // FakeConfiguration keeps backups for 5 days, objects are reused for 4
+        AbstractBackupPath old = path(BackupFileType.SNAP, "201301010000");
+        index.add(old, index.digest(old), System.currentTimeMillis() - 5 * DAY);
+        Assert.assertNull(find(index, path(BackupFileType.SNAP, "201301060000")));
+        index.prune();
+        Assert.assertEquals(0, new UploadedFileIndex(config).size());
+    }
+
+    @Test
+    public void testDisabled() throws IOException
+    {
+        config.indexLocation = "";
+        add(path(BackupFileType.SNAP, "201301010000"));
+        Assert.assertNull(find(index, path(BackupFileType.SNAP, "201301020000")));
+        Assert.assertFalse(new File(DIR, "index").exists());
+    }
+
+    private void add(AbstractBackupPath bp) throws IOException
+    {
+        index.add(bp, index.digest(bp));
+    }
+
+    private static String find(UploadedFileIndex index, AbstractBackupPath bp) throws IOException
+    {
+        return index.find(bp, index.digest(bp));
+    }
+
+    private AbstractBackupPath path(BackupFileType type, String time)
+    {
+        S3BackupPath bp = new S3BackupPath(config, null);
+        bp.type = type;
+        bp.baseDir = config.getBackupLocation();
+        bp.region = config.getDC();
+        bp.clusterName = config.getAppName();
+        bp.token = "1234";
+        bp.keyspace = "ks";
+        bp.columnFamily = "cf";
+        bp.fileName = file.getName();
+        bp.time = bp.parseDate(time);
+        bp.backupFile = file;
+        bp.size = file.length();
+        return bp;
+    }
+
+    private static void write(File file, long seed) throws IOException
+    {
+        byte[] data = new byte[200 * 1024];
+        new Random(seed).nextBytes(data);
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(data);
+        out.close();
+    }
+}